@@ -5,6 +5,7 @@ import com.mammb.code.piecetable.examples.Style.*;
 import com.mammb.code.piecetable.Document;
 import com.mammb.code.piecetable.TextEdit;
 import com.mammb.code.piecetable.TextEdit.Pos;
+import com.mammb.code.piecetable.Viewport;
 import javafx.scene.input.DataFormat;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -373,9 +374,18 @@ public interface ScreenText {
         private double maxRowWidth = 0;
         private double xShift = 0;
         private final List<Text> buffer = new ArrayList<>();
+        // the rows around the screen are prefetched, so scrolling reads are served from memory
+        private final Viewport viewport;
 
         public PlainScreenText(Document doc, FontMetrics fm, Syntax syntax) {
             super(TextEdit.of(doc), fm, syntax);
+            viewport = ed.viewport(0, 200);
+        }
+
+        @Override
+        protected Text createRow(int row) {
+            String text = viewport.getText(row);
+            return Text.of(row, text, Text.advances(text, fm), fm.getLineHeight());
         }
 
         @Override
@@ -437,6 +447,7 @@ public interface ScreenText {
             this.width = width;
             this.height = height;
             this.screenLineSize = newScreenLineSize;
+            viewport.resize(newScreenLineSize);
         }
 
         @Override
@@ -468,6 +479,7 @@ public interface ScreenText {
                 return;
             }
 
+            viewport.scrollAt(top + delta);
             int next = buffer.isEmpty() ? 0 : buffer.getLast().row() + 1;
             buffer.subList(0, Math.min(delta, buffer.size())).clear();
             for (int i = next; i < (next + delta) && i < ed.rows(); i++) {
@@ -487,6 +499,7 @@ public interface ScreenText {
                 return;
             }
 
+            viewport.scrollAt(top - delta);
             if (buffer.size() >= screenLineSize) {
                 buffer.subList(Math.max(0, buffer.size() - delta), buffer.size()).clear();
             }
@@ -498,6 +511,7 @@ public interface ScreenText {
         @Override
         public void scrollAt(int row) {
             row = Math.clamp(row, 0, getScrollableMaxLine());
+            viewport.scrollAt(row);
             buffer.clear();
             for (int i = row; i < ed.rows(); i++) {
                 buffer.add(createStyledRow(i));
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+/**
+ * The change of a document, reported to the change listeners.
+ * The changes in a batch are reported in the order applied,
+ * each relative to the document after the changes before it.
+ * @param pos the byte position of the change from the head of the document, including the byte order mark
+ * @param removed the byte length removed
+ * @param inserted the byte length inserted
+ * @param startRow the first row affected(zero origin)
+ * @param endRow the last row affected, inclusive, after the change
+ * @param rowDelta the number of rows added, or removed if negative
+ * @author Naotsugu Kobayashi
+ */
+public record Change(long pos, int removed, int inserted, int startRow, int endRow, int rowDelta) { }
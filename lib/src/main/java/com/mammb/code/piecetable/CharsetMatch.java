@@ -15,6 +15,7 @@
  */
 package com.mammb.code.piecetable;
 
+import com.mammb.code.piecetable.text.CharsetMatches;
 import java.nio.charset.Charset;
 
 /**
@@ -41,6 +42,19 @@ public interface CharsetMatch {
     }
 
 
+    /**
+     * Create a {@link CharsetMatch} which infers the charset from the candidates in a single pass.
+     * The candidates supported are UTF-8, Shift_JIS(windows-31j), EUC-JP, ISO-2022-JP,
+     * GB18030(GBK), windows-1252(ISO-8859-1) and UTF-16 without byte order mark.
+     * @param candidates the candidate charsets
+     * @return a new {@link CharsetMatch}
+     * @throws IllegalArgumentException if a candidate is not supported
+     */
+    static CharsetMatch infer(Charset... candidates) {
+        return CharsetMatches.of(candidates);
+    }
+
+
     /**
      * The {@link CharsetMatch} result.
      * @param charset the charset
@@ -20,6 +20,12 @@ import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * The document.
@@ -50,6 +56,35 @@ public interface Document {
      */
     CharSequence getText(int row);
 
+    /**
+     * Appends the text at the specified row to the destination, without creating a string of the row.
+     * A {@link java.nio.CharBuffer} destination is decoded into directly,
+     * and throws {@link java.nio.BufferOverflowException} if it does not have enough space,
+     * in which case it may have received a part of the row.
+     * @param row the number of row(zero origin)
+     * @param dst the destination, such as {@link StringBuilder} or {@link java.nio.CharBuffer}
+     */
+    void getText(int row, Appendable dst);
+
+    /**
+     * Gets the chars of the specified range within the row.
+     * Only the range is decoded, so a very long row is not decoded as a whole.
+     * The range is clipped to the end of the row.
+     * @param row the number of row(zero origin)
+     * @param col the char position on the row
+     * @param len the char length
+     * @return the char sequence of the range
+     */
+    CharSequence getTextRange(int row, int col, int len);
+
+    /**
+     * Gets the char length of the specified row, including the line ending.
+     * A very long row is not decoded as a whole.
+     * @param row the number of row(zero origin)
+     * @return the char length of the row
+     */
+    int textLength(int row);
+
     /**
      * Usually use {@link Document#insert(int, int, CharSequence)}.
      * Inserts the byte array into this {@code Document}.
@@ -85,6 +120,27 @@ public interface Document {
      */
     byte[] get(int row);
 
+    /**
+     * Gets the byte array of the specified rows.
+     * The range is resolved once, and the bytes are copied from the pieces at a time,
+     * instead of row by row.
+     * The byte length of the rows must not exceed {@code Integer.MAX_VALUE}.
+     * @param startRow the start row(zero origin), inclusive
+     * @param endRow the end row, exclusive
+     * @return the byte array of the specified rows
+     */
+    byte[] get(int startRow, int endRow);
+
+    /**
+     * Gets the char sequence of the specified rows, decoded at a time.
+     * The byte length of the rows must not exceed {@code Integer.MAX_VALUE}.
+     * @param startRow the start row(zero origin), inclusive
+     * @param endRow the end row, exclusive
+     * @return the char sequence of the specified rows
+     * @see #get(int, int)
+     */
+    CharSequence getText(int startRow, int endRow);
+
     /**
      * Usually use {@link Document#getText(int)}.
      * Gets the char sequence at the specified position.
@@ -95,28 +151,191 @@ public interface Document {
      */
     CharSequence getText(int row, int rawCol, int rawLen);
 
+    /**
+     * Replaces the specified ranges with the texts at once.
+     * The pieces and the row index are rebuilt in a pass, rather than edited range by range.
+     * @param founds the ranges to be replaced, in ascending order without overlaps
+     * @param texts the texts to replace the ranges, one for each
+     * @return the ranges of the texts in the replaced document
+     */
+    List<Found> replace(List<Found> founds, List<? extends CharSequence> texts);
+
+    /**
+     * Replaces all occurrences of the specified char sequence at once.
+     * @param cs the specified char sequence
+     * @param replacement the replacement
+     * @param options the options of the search
+     * @return the ranges of the replacements in the replaced document
+     * @see #replace(List, List)
+     */
+    List<Found> replaceAll(CharSequence cs, CharSequence replacement, FindOption... options);
+
     /**
      * Searches for the specified char sequence.
+     * A large document is searched in parallel, on the {@link java.util.concurrent.ForkJoinPool}
+     * of the calling thread, or on the common pool.
+     * @param cs the specified char sequence
+     * @param options the options of the search
+     * @return found list
+     */
+    List<Found> findAll(CharSequence cs, FindOption... options);
+
+    /**
+     * Searches for the specified char sequence asynchronously, on a virtual thread.
+     * The search reads the snapshot of the document at the time this method is called,
+     * so the document can be edited while searching.
+     * The found are passed to the listener in batches, along with the progress of the bytes read.
+     * Cancelling the future stops the search at the next chunk.
      * @param cs the specified char sequence
+     * @param listener the listener of the found since the last call and the progress,
+     *     called on the searching thread(nullable)
+     * @param options the options of the search
+     * @return the future of the found list
+     */
+    CompletableFuture<List<Found>> findAllAsync(CharSequence cs,
+        BiConsumer<List<Found>, Progress> listener, FindOption... options);
+
+    /**
+     * Searches for the specified regular expression.
+     * The document is decoded lazily as the matcher proceeds, and matches can span rows.
+     * A document larger than {@code Integer.MAX_VALUE} bytes is searched in segments of rows,
+     * and matches do not span the segments.
+     * @param pattern the regular expression
      * @return found list
      */
-    List<Found> findAll(CharSequence cs);
+    List<Found> findAll(Pattern pattern);
+
+    /**
+     * Builds the trigram index for searches in the background, and keeps it updated by edits.
+     * Once built, literal searches read only the blocks which may contain the text,
+     * and regular expression searches return immediately if the literal they require is absent.
+     * Until built, searches read the whole document as usual.
+     */
+    void enableSearchIndex();
+
+    /**
+     * Get the char sequence view of the specified rows, which decodes the rows lazily as accessed.
+     * The view is of the snapshot of the document at the time this method is called,
+     * and is not thread-safe.
+     * The byte length of the rows must not exceed {@code Integer.MAX_VALUE}.
+     * @param startRow the start row(zero origin), inclusive
+     * @param endRow the end row, exclusive
+     * @return the char sequence view
+     */
+    CharSequence charSequence(int startRow, int endRow);
+
+    /**
+     * Adds the listener of the changes of this document.
+     * The listener is called synchronously on the thread editing this document,
+     * once for each edit, or once for each batch with the changes of the batch.
+     * @param listener the listener of the changes
+     * @see #batch(Runnable)
+     */
+    void addChangeListener(Consumer<List<Change>> listener);
+
+    /**
+     * Removes the listener of the changes of this document.
+     * @param listener the listener to be removed
+     */
+    void removeChangeListener(Consumer<List<Change>> listener);
+
+    /**
+     * Runs the edits as a batch, whose changes are reported to the listeners at once, when the batch ends.
+     * The edits are not rolled back, if the batch fails.
+     * Batches can be nested, and the changes are reported when the outermost one ends.
+     * @param edits the edits
+     */
+    void batch(Runnable edits);
+
+    /**
+     * Create a new {@link Viewport} of this document, which holds a window of the decoded rows,
+     * and prefetches the rows above and below the window asynchronously.
+     * @param size the number of rows of the window
+     * @param margin the number of rows prefetched above and below the window
+     * @return a new {@link Viewport}
+     */
+    Viewport viewport(int size, int margin);
+
+    /**
+     * Get the markers of this document, such as carets, bookmarks, diagnostics and search hits,
+     * which are adjusted by the edits of this document.
+     * The markers are created on the first call, and the same markers are returned afterward.
+     * @return the markers of this document
+     */
+    Markers markers();
+
+    /**
+     * Searches for the specified char sequence, lazily.
+     * The document is read as the stream is consumed, so the stream can be short-circuited,
+     * such as by {@code findFirst()} or {@code limit()}, without reading the rest.
+     * The stream searches the snapshot of the document at the time this method is called.
+     * @param cs the specified char sequence
+     * @param options the options of the search
+     * @return the stream of found
+     */
+    Stream<Found> find(CharSequence cs, FindOption... options);
+
+    /**
+     * Searches for the specified char sequence, as a {@link Flow.Publisher}.
+     * Each subscription searches only as many matches as requested,
+     * on the thread requesting them, and can be cancelled at any time.
+     * The publisher searches the snapshot of the document at the time this method is called.
+     * @param cs the specified char sequence
+     * @return the publisher of found
+     */
+    Flow.Publisher<Found> findPublisher(CharSequence cs);
 
     /**
      * Searches for the specified char sequence.
      * @param cs the specified char sequence
      * @param row the number of start row(zero origin)
      * @param col the start byte position on the row
+     * @param options the options of the search
      * @return found
      */
-    Optional<Found> findNext(CharSequence cs, int row, int col);
+    Optional<Found> findNext(CharSequence cs, int row, int col, FindOption... options);
+
+    /**
+     * Get the byte length of the specified row, excluding the line ending.
+     * @param row the number of row(zero origin)
+     * @return the byte length of the specified row, excluding the line ending
+     */
+    int rawContentLength(int row);
+
+    /**
+     * Get the line ending of the specified row.
+     * @param row the number of row(zero origin)
+     * @return the line ending of the specified row, {@link LineEnding#NONE} for the last row
+     */
+    LineEnding lineEnding(int row);
+
+    /**
+     * Get the line ending of this document.
+     * @return the line ending of this document, {@link LineEnding#MIXED} if LF and CRLF are mixed
+     */
+    LineEnding lineEnding();
 
     /**
      * Get the row size.
+     * While the row index is being built in the background, the row size grows
+     * up to the whole size of the document.
      * @return the row size
      */
     int rows();
 
+    /**
+     * Get whether the row index has been built up to the end of this document.
+     * It is always {@code true}, unless this document was created by {@link #ofAsync(Path, Consumer)}.
+     * @return {@code true}, if the row index has been built up to the end of this document
+     */
+    boolean indexCompleted();
+
+    /**
+     * Cancels building the row index in the background.
+     * The rest of the rows are indexed on demand, when they are accessed.
+     */
+    void cancelIndexing();
+
     /**
      * Get the bytes length of this document holds.
      * Not the javas UTF-16 encoded memory size.
@@ -159,6 +378,30 @@ public interface Document {
         return DocumentImpl.of(path);
     }
 
+    /**
+     * Create a new {@link Document}, which can be used immediately
+     * while the row index is built in the background.
+     * Rows beyond the indexed ones wait for the index to be built.
+     * @param path the path of the file to read
+     * @param listener the progress listener, called on the background thread(nullable)
+     * @return a new {@link Document}
+     */
+    static Document ofAsync(Path path, Consumer<Progress> listener) {
+        return DocumentImpl.ofAsync(path, listener);
+    }
+
+    /**
+     * Create a new {@link Document}, which reuses the row index cached in the specified directory.
+     * The row index, the byte order mark and the charset are stored in the directory
+     * on the first open, and are loaded instead of scanning the file while it is not modified.
+     * @param path the path of the file to read
+     * @param cacheDir the directory of the row index cache
+     * @return a new {@link Document}
+     */
+    static Document ofCached(Path path, Path cacheDir) {
+        return DocumentImpl.ofCached(path, cacheDir);
+    }
+
     /**
      * Create a new {@link Document}.
      * @param path the path of the file to read
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+/**
+ * The option of searches.
+ * @author Naotsugu Kobayashi
+ */
+public enum FindOption {
+
+    /**
+     * Ignores the case, by the simple case folding of Unicode.
+     * The case variants encoded in a different byte length are not matched,
+     * such as the KELVIN SIGN for {@code k} in UTF-8.
+     */
+    IGNORE_CASE,
+    /** Matches only whole words, which are not adjacent to letters, digits or underscores. */
+    WHOLE_WORD,
+    ;
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+/**
+ * The line ending.
+ * @author Naotsugu Kobayashi
+ */
+public enum LineEnding {
+
+    /** No line ending, such as the last row. */
+    NONE(""),
+    /** The line feed. */
+    LF("\n"),
+    /** The carriage return and the line feed. */
+    CRLF("\r\n"),
+    /** The line endings of LF and CRLF are mixed in the document. */
+    MIXED(""),
+    ;
+
+    /** The string of the line ending. */
+    private final String str;
+
+
+    LineEnding(String str) {
+        this.str = str;
+    }
+
+
+    /**
+     * Get the string of the line ending.
+     * @return the string of the line ending, or an empty string if {@link #NONE} or {@link #MIXED}
+     */
+    public String str() {
+        return str;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+/**
+ * The marker of a position or a range in a document, such as a caret, a bookmark or a diagnostic,
+ * which is adjusted by the edits of the document.
+ * The positions are the byte positions from the head of the document, including the byte order mark.
+ * @see Markers
+ * @author Naotsugu Kobayashi
+ */
+public interface Marker {
+
+    /**
+     * Get the start position of this marker.
+     * @return the start byte position
+     */
+    long start();
+
+    /**
+     * Get the end position of this marker, exclusive.
+     * @return the end byte position
+     */
+    long end();
+
+    /**
+     * Get the stickiness of this marker.
+     * @return the stickiness
+     */
+    Stickiness stickiness();
+
+    /**
+     * Get whether this marker has been removed from the markers.
+     * A removed marker keeps the position at the time removed.
+     * @return {@code true}, if this marker has been removed
+     */
+    boolean removed();
+
+    /**
+     * The stickiness, which decides whether the text inserted just at the edges of the marker
+     * is taken into the marker.
+     * A text deleted around the marker shrinks the marker, whatever the stickiness is.
+     */
+    enum Stickiness {
+        /** The marker grows, when the text is inserted at the start or the end. */
+        GROWS,
+        /** The marker never grows, and an empty marker moves after the text inserted at it, as a caret does. */
+        NEVER_GROWS,
+        /** The marker grows only when the text is inserted at the start, and an empty marker stays. */
+        GROWS_BEFORE,
+        /** The marker grows only when the text is inserted at the end, and an empty marker moves. */
+        GROWS_AFTER;
+
+        /**
+         * Get whether the start moves after the text inserted at the start.
+         * @return {@code true}, if the start moves
+         */
+        public boolean startMoves() {
+            return this == NEVER_GROWS || this == GROWS_AFTER;
+        }
+
+        /**
+         * Get whether the end moves after the text inserted at the end.
+         * @return {@code true}, if the end moves
+         */
+        public boolean endMoves() {
+            return this == GROWS || this == GROWS_AFTER;
+        }
+    }
+
+}
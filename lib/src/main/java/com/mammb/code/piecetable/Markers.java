@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+import java.util.List;
+
+/**
+ * The markers of a document, which are adjusted by the edits of the document.
+ * The markers are held in a tree ordered by the position, and an edit adjusts them
+ * in {@code O(log n)}, in addition to the markers at the edit, so a large set of markers
+ * survives edits without a rescan.
+ * The markers are not thread-safe, as the document is not.
+ * @see Document#markers()
+ * @author Naotsugu Kobayashi
+ */
+public interface Markers {
+
+    /**
+     * Adds a marker of the specified range.
+     * @param row the number of row(zero origin)
+     * @param rawCol the byte position on the row
+     * @param rawLen the byte length, {@code 0} for a position
+     * @param stickiness the stickiness
+     * @return the marker added
+     */
+    Marker add(int row, int rawCol, int rawLen, Marker.Stickiness stickiness);
+
+    /**
+     * Adds a marker of the specified found, such as a search hit.
+     * @param found the found
+     * @param stickiness the stickiness
+     * @return the marker added
+     */
+    default Marker add(Found found, Marker.Stickiness stickiness) {
+        return add(found.row(), found.col(), found.len(), stickiness);
+    }
+
+    /**
+     * Removes the specified marker.
+     * @param marker the marker
+     * @return {@code true}, if the marker has been removed
+     */
+    boolean remove(Marker marker);
+
+    /**
+     * Gets the current range of the specified marker, as a row and a byte position on the row.
+     * @param marker the marker
+     * @return the range of the marker
+     */
+    Found found(Marker marker);
+
+    /**
+     * Gets the markers on the specified rows, in the order of the start position.
+     * @param startRow the start row(zero origin), inclusive
+     * @param endRow the end row, exclusive
+     * @return the markers, which start before the end row and end in or after the start row
+     */
+    List<Marker> find(int startRow, int endRow);
+
+    /**
+     * Get the number of the markers.
+     * @return the number of the markers
+     */
+    int size();
+
+    /**
+     * Removes all the markers.
+     */
+    void clear();
+
+}
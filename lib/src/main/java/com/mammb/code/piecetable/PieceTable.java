@@ -16,7 +16,9 @@
 package com.mammb.code.piecetable;
 
 import com.mammb.code.piecetable.core.PieceTableImpl;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.function.Predicate;
 
 /**
  * PieceTable.
@@ -66,6 +68,15 @@ public interface PieceTable {
      */
     void delete(long pos, int len);
 
+    /**
+     * Replaces the specified ranges with the bytes at once.
+     * The pieces are rebuilt in a pass, and the same bytes are appended to the buffer only once.
+     * @param positions the start positions of the ranges, in ascending order without overlaps
+     * @param lengths the lengths of the ranges
+     * @param bytes the bytes to replace the ranges, one for each
+     */
+    void replace(long[] positions, int[] lengths, byte[][] bytes);
+
     /**
      * Get the byte array of the specified range of this piece table.
      * @param pos the start index of the range to be copied, inclusive
@@ -74,6 +85,35 @@ public interface PieceTable {
      */
     byte[] get(long pos, int len);
 
+    /**
+     * Reads the bytes of the specified range of this piece table chunk by chunk,
+     * without copying the whole range into a single array.
+     * The buffer passed to the callback is reused for the next chunk.
+     * @param pos the start index of the range to be read, inclusive
+     * @param len the length of the range to be read
+     * @param traverseCallback the callback for each chunk, returns {@code false} to stop reading
+     */
+    void read(long pos, long len, Predicate<ByteBuffer> traverseCallback);
+
+    /**
+     * Reads the bytes of the specified range of this piece table chunk by chunk,
+     * into the specified buffer, so that repeated reads do not allocate a buffer.
+     * The buffer is cleared before each chunk, and is passed to the callback flipped.
+     * @param pos the start index of the range to be read, inclusive
+     * @param len the length of the range to be read
+     * @param buf the buffer used for the chunks, must have a non-zero capacity
+     * @param traverseCallback the callback for each chunk, returns {@code false} to stop reading
+     */
+    void read(long pos, long len, ByteBuffer buf, Predicate<ByteBuffer> traverseCallback);
+
+    /**
+     * Get the read-only snapshot of this piece table.
+     * The snapshot is not affected by later edits until this piece table is saved,
+     * and can be read from multiple threads.
+     * @return the read-only snapshot
+     */
+    PieceTable snapshot();
+
     /**
      * Get the length of bytes this piece table holds.
      * @return the length of bytes
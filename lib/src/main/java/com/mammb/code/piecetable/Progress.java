@@ -0,0 +1,42 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+/**
+ * The progress of a long-running operation.
+ * @param processed the byte length processed
+ * @param total the total byte length to be processed
+ * @author Naotsugu Kobayashi
+ */
+public record Progress(long processed, long total) {
+
+    /**
+     * Get the percentage of processed.
+     * @return the percentage of processed(0 - 100)
+     */
+    public int percentage() {
+        return (total <= 0) ? 100 : (int) Math.min(100, processed * 100 / total);
+    }
+
+    /**
+     * Get whether the operation has been completed.
+     * @return {@code true}, if the operation has been completed
+     */
+    public boolean completed() {
+        return processed >= total;
+    }
+
+}
@@ -22,6 +22,11 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * The text edit.
@@ -150,6 +155,14 @@ public interface TextEdit {
      */
     String getText(int row);
 
+    /**
+     * Appends the text at the specified row to the destination, without creating a string of the row.
+     * @param row the number of row(zero origin)
+     * @param dst the destination, such as {@link StringBuilder} or {@link java.nio.CharBuffer}
+     * @see Document#getText(int, Appendable)
+     */
+    void getText(int row, Appendable dst);
+
     /**
      * Gets the text at the specified row range.
      * @param startRow the start row
@@ -186,6 +199,40 @@ public interface TextEdit {
      */
     List<String> getTexts(Pos start, Pos end);
 
+    /**
+     * Gets the char length of the specified row, including the line ending.
+     * A very long row is not decoded as a whole.
+     * @param row the number of row(zero origin)
+     * @return the char length of the row
+     * @see Document#textLength(int)
+     */
+    int textLength(int row);
+
+    /**
+     * Adds the listener of the changes of the document.
+     * The edits are reported when flushed to the document,
+     * and the edits undone and redone are reported at once for each.
+     * @param listener the listener of the changes
+     * @see Document#addChangeListener(Consumer)
+     */
+    void addChangeListener(Consumer<List<Change>> listener);
+
+    /**
+     * Removes the listener of the changes of the document.
+     * @param listener the listener to be removed
+     */
+    void removeChangeListener(Consumer<List<Change>> listener);
+
+    /**
+     * Create a new {@link Viewport} of this {@code TextEdit}.
+     * The rows with the edits not yet flushed are read through this {@code TextEdit}.
+     * @param size the number of rows of the window
+     * @param margin the number of rows prefetched above and below the window
+     * @return a new {@link Viewport}
+     * @see Document#viewport(int, int)
+     */
+    Viewport viewport(int size, int margin);
+
     /**
      * Flush.
      */
@@ -199,18 +246,66 @@ public interface TextEdit {
     /**
      * Searches for the specified char sequence.
      * @param text the specified char sequence
+     * @param options the options of the search
+     * @return found list
+     */
+    List<Found> findAll(String text, FindOption... options);
+
+    /**
+     * Searches for the specified char sequence asynchronously, on a virtual thread.
+     * @param text the specified char sequence
+     * @param listener the listener of the found since the last call and the progress,
+     *     called on the searching thread(nullable)
+     * @param options the options of the search
+     * @return the future of the found list
+     * @see Document#findAllAsync(CharSequence, BiConsumer, FindOption...)
+     */
+    CompletableFuture<List<Found>> findAllAsync(String text,
+        BiConsumer<List<Found>, Progress> listener, FindOption... options);
+
+    /**
+     * Replaces all occurrences of the specified char sequence at once,
+     * which is undone and redone as a single edit.
+     * @param text the specified char sequence
+     * @param replacement the replacement
+     * @param options the options of the search
+     * @return the ranges of the replacements
+     * @see Document#replaceAll(CharSequence, CharSequence, FindOption...)
+     */
+    List<Found> replaceAll(String text, String replacement, FindOption... options);
+
+    /**
+     * Searches for the specified regular expression.
+     * @param pattern the regular expression
      * @return found list
+     * @see Document#findAll(Pattern)
+     */
+    List<Found> findAll(Pattern pattern);
+
+    /**
+     * Builds the trigram index for searches in the background, and keeps it updated by edits.
+     * @see Document#enableSearchIndex()
+     */
+    void enableSearchIndex();
+
+    /**
+     * Searches for the specified char sequence, lazily.
+     * @param text the specified char sequence
+     * @param options the options of the search
+     * @return the stream of found
+     * @see Document#find(CharSequence, FindOption...)
      */
-    List<Found> findAll(String text);
+    Stream<Found> find(String text, FindOption... options);
 
     /**
      * Searches for the specified char sequence.
      * @param text the specified char sequence
      * @param row the number of start row(zero origin)
      * @param col the start byte position on the row
+     * @param options the options of the search
      * @return found
      */
-    Optional<Found> findNext(String text, int row, int col);
+    Optional<Found> findNext(String text, int row, int col, FindOption... options);
 
     /**
      * Get the row size.
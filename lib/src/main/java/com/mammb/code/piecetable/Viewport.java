@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable;
+
+import java.util.List;
+
+/**
+ * The viewport, a window of the decoded rows for renderers.
+ * The rows above and below the window are prefetched asynchronously,
+ * so that scrolling reads are served from memory.
+ * The rows read are invalidated by the edits of the document.
+ * The viewport is used from the thread editing the document, as the document itself is.
+ * @author Naotsugu Kobayashi
+ */
+public interface Viewport {
+
+    /**
+     * Moves the window to the specified top row, and gets the rows of the window.
+     * The rows around the new window are prefetched asynchronously.
+     * @param top the number of the top row(zero origin), clipped to the rows of the document
+     * @return the text of the rows of the window
+     */
+    List<String> scrollAt(int top);
+
+    /**
+     * Gets the rows of the window.
+     * @return the text of the rows of the window
+     */
+    List<String> rows();
+
+    /**
+     * Gets the text of the specified row,
+     * from memory if the row is in the window or prefetched, otherwise from the document.
+     * @param row the number of row(zero origin)
+     * @return the text of the row
+     */
+    String getText(int row);
+
+    /**
+     * Get the number of the top row of the window.
+     * @return the number of the top row of the window
+     */
+    int top();
+
+    /**
+     * Get the number of rows of the window.
+     * @return the number of rows of the window
+     */
+    int size();
+
+    /**
+     * Changes the number of rows of the window, such as when the screen is resized.
+     * @param size the number of rows of the window
+     */
+    void resize(int size);
+
+}
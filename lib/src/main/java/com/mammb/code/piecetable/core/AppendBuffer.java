@@ -15,6 +15,8 @@
  */
 package com.mammb.code.piecetable.core;
 
+import java.nio.ByteBuffer;
+
 /**
  * Appendable buffer.
  * @author Naotsugu Kobayashi
@@ -61,11 +63,22 @@ public interface AppendBuffer extends Buffer {
                 return elements.get(Math.toIntExact(rawStart), Math.toIntExact(rawEnd));
             }
 
+            @Override
+            public void read(long index, ByteBuffer dst) {
+                elements.get(Math.toIntExact(index), dst);
+            }
+
             @Override
             public long length() {
                 return elements.length();
             }
 
+            @Override
+            public Buffer snapshot() {
+                // the bytes appended afterward are put beyond the length, or into a new array
+                return Buffer.of(elements.array(), elements.length());
+            }
+
         };
     }
 
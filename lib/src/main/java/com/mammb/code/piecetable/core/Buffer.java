@@ -59,6 +59,28 @@ public interface Buffer {
     }
 
 
+    /**
+     * Reads the bytes from the specified index into the buffer, as many as it remains.
+     * Unlike {@link #bytes(long, long)}, this does not change the state of this buffer,
+     * so it can be called from multiple threads as long as this buffer is not modified.
+     * @param index the start index of the bytes to be read
+     * @param dst the buffer into which bytes are to be transferred
+     */
+    default void read(long index, ByteBuffer dst) {
+        dst.put(bytes(index, index + dst.remaining()));
+    }
+
+
+    /**
+     * Get the read-only view of the bytes of this buffer as of now,
+     * which can be read from other threads while this buffer is appended to.
+     * @return the read-only view of this buffer
+     */
+    default Buffer snapshot() {
+        return this;
+    }
+
+
     /**
      * Write this buffer values to the specified channel.
      * @param channel the byte channel
@@ -93,9 +115,23 @@ public interface Buffer {
      * @return a new in-memory buffer
      */
     static Buffer of(byte[] bytes) {
+        return of(bytes, bytes.length);
+    }
+
+
+    /**
+     * Create a new in-memory buffer of the head of the byte array.
+     * The bytes in the length must not be changed afterward.
+     * @param bytes the source byte array
+     * @param length the length of the bytes of the buffer
+     * @return a new in-memory buffer
+     */
+    static Buffer of(byte[] bytes, int length) {
         return new Buffer() {
             /** The elements of buffer. */
             private final byte[] elements = bytes;
+            /** The length of buffer. */
+            private final int size = length;
 
             @Override
             public byte get(long index) {
@@ -108,9 +144,14 @@ public interface Buffer {
                     Math.toIntExact(startIndex), Math.toIntExact(endIndex));
             }
 
+            @Override
+            public void read(long index, ByteBuffer dst) {
+                dst.put(elements, Math.toIntExact(index), dst.remaining());
+            }
+
             @Override
             public long length() {
-                return elements.length;
+                return size;
             }
         };
     }
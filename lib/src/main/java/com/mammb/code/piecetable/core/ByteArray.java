@@ -16,6 +16,7 @@
 package com.mammb.code.piecetable.core;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -126,6 +127,29 @@ public class ByteArray implements Serializable {
         return Arrays.copyOfRange(bytes, from, to);
     }
 
+    /**
+     * Reads the bytes from the specified index into the buffer, as many as it remains.
+     * @param index the start index of the bytes to be read
+     * @param dst the buffer into which bytes are to be transferred
+     */
+    public void get(int index, ByteBuffer dst) {
+        if (index < 0 || index + dst.remaining() > length) {
+            throw new IndexOutOfBoundsException(
+                "from[%d], to[%d], length[%d]".formatted(index, index + dst.remaining(), length));
+        }
+        dst.put(bytes, index, dst.remaining());
+    }
+
+    /**
+     * Get the backing array, whose bytes in the length are not changed by adds afterward,
+     * as an add beyond the capacity copies them into a new array.
+     * @return the backing array
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+
     /**
      * Clear this array.
      */
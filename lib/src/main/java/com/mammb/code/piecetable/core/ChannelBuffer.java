@@ -42,11 +42,11 @@ public class ChannelBuffer implements Buffer, Closeable {
     /** The current size of entity to which this channel is connected. */
     private final long length;
 
-    /** The byte buffer. */
-    private byte[] buffer;
-
-    /** The offset of buffer. */
-    private long offset;
+    /**
+     * The window of the channel read ahead.
+     * The window is replaced as a whole, so that it can be read from any thread.
+     */
+    private volatile Window window;
 
 
     /**
@@ -60,8 +60,7 @@ public class ChannelBuffer implements Buffer, Closeable {
             throw new RuntimeException(e);
         }
         this.ch = ch;
-        this.buffer = EMPTY;
-        this.offset = 0;
+        this.window = new Window(EMPTY, 0);
     }
 
 
@@ -79,16 +78,28 @@ public class ChannelBuffer implements Buffer, Closeable {
     }
 
 
+    /**
+     * Create a new {@code ChannelBuffer} from the given {@code FileChannel}.
+     * The channel is read with positional reads, so it can be shared with others.
+     * @param ch the given {@code FileChannel}
+     * @return a new {@code ChannelBuffer}
+     */
+    public static ChannelBuffer of(FileChannel ch) {
+        return new ChannelBuffer(ch);
+    }
+
+
     @Override
     public byte get(long index) {
         if (index < 0 || index >= length) {
             throw new IndexOutOfBoundsException(
                 "index[%d], length[%d]".formatted(index, length));
         }
-        if (buffer == EMPTY || index < offset || index >= offset + buffer.length) {
-            fillBuffer(index, Math.addExact(index, PREF_BUF_SIZE));
+        Window w = window;
+        if (!w.covers(index, index + 1)) {
+            w = fill(index, Math.min(length, Math.addExact(index, PREF_BUF_SIZE)));
         }
-        return buffer[Math.toIntExact(index - offset)];
+        return w.bytes[Math.toIntExact(index - w.offset)];
     }
 
 
@@ -100,17 +111,52 @@ public class ChannelBuffer implements Buffer, Closeable {
                 "from[%d], to[%d], length[%d]".formatted(from, to, length));
         }
 
-        if (buffer == EMPTY || from < offset || to > offset + buffer.length) {
-            fillBuffer(from, to);
-            if (buffer.length > PREF_BUF_SIZE << 8) {
+        Window w = window;
+        if (!w.covers(from, to)) {
+            w = fill(from, to);
+            if (w.bytes.length > PREF_BUF_SIZE << 8) {
                 // if too large, trim buffer
-                byte[] ret = buffer;
-                buffer = Arrays.copyOf(buffer, PREF_BUF_SIZE);
-                return ret;
+                window = new Window(Arrays.copyOf(w.bytes, PREF_BUF_SIZE), w.offset);
+                return w.bytes;
             }
         }
-        return Arrays.copyOfRange(buffer,
-            Math.toIntExact(from - offset), Math.toIntExact(to - offset));
+        return Arrays.copyOfRange(w.bytes,
+            Math.toIntExact(from - w.offset), Math.toIntExact(to - w.offset));
+    }
+
+
+    @Override
+    public void read(long index, ByteBuffer dst) {
+        if (index < 0 || index + dst.remaining() > length) {
+            throw new IndexOutOfBoundsException(
+                "from[%d], to[%d], length[%d]".formatted(index, index + dst.remaining(), length));
+        }
+        if (!(ch instanceof FileChannel fc)) {
+            synchronized (this) {
+                Buffer.super.read(index, dst);
+            }
+            return;
+        }
+        if (dst.remaining() <= PREF_BUF_SIZE) {
+            // small reads, such as a row, are served from the window without a system call
+            Window w = window;
+            if (!w.covers(index, index + dst.remaining())) {
+                w = fill(index, index + dst.remaining());
+            }
+            dst.put(w.bytes, Math.toIntExact(index - w.offset), dst.remaining());
+            return;
+        }
+        try {
+            // positional reads do not touch the buffer nor the position of the channel
+            for (int start = dst.position(); dst.hasRemaining(); ) {
+                long pos = index + dst.position() - start;
+                if (fc.read(dst, pos) < 0) {
+                    throw new IOException("unexpected end of channel. pos[%d]".formatted(pos));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
 
@@ -127,22 +173,47 @@ public class ChannelBuffer implements Buffer, Closeable {
 
 
     /**
-     * Fill buffer.
+     * Fill the window.
      * @param from start position of channel
      * @param to end position of channel
+     * @return the new window
      */
-    private void fillBuffer(long from, long to) {
+    private Window fill(long from, long to) {
         try {
             var bb = ByteBuffer.allocate(
-                Math.toIntExact(Math.max(to - from, PREF_BUF_SIZE)));
-            ch.position(from);
-            ch.read(bb);
-            bb.flip();
-            buffer = Arrays.copyOf(bb.array(), bb.limit());
-            offset = from;
+                Math.toIntExact(Math.min(Math.max(to - from, PREF_BUF_SIZE), length - from)));
+            if (ch instanceof FileChannel fc) {
+                while (bb.hasRemaining() && fc.read(bb, from + bb.position()) >= 0) { }
+            } else {
+                ch.position(from);
+                while (bb.hasRemaining() && ch.read(bb) >= 0) { }
+            }
+            byte[] bytes = bb.hasRemaining() ? Arrays.copyOf(bb.array(), bb.position()) : bb.array();
+            var w = new Window(bytes, from);
+            window = w;
+            return w;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+
+    /**
+     * The window of the channel.
+     * @param bytes the bytes of the window
+     * @param offset the position of the window in the channel
+     */
+    private record Window(byte[] bytes, long offset) {
+
+        /**
+         * Gets whether this window covers the specified range.
+         * @param from start position of channel
+         * @param to end position of channel
+         * @return {@code true}, if this window covers the range
+         */
+        boolean covers(long from, long to) {
+            return from >= offset && to <= offset + bytes.length;
+        }
+    }
+
 }
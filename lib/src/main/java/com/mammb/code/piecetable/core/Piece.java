@@ -72,6 +72,20 @@ public record Piece(Buffer target, long bufIndex, long length) {
     }
 
 
+    /**
+     * Reads the bytes from the specified offset of this piece into the buffer,
+     * as many as it remains.
+     * @param offset the start index of this piece to be read
+     * @param dst the buffer into which bytes are to be transferred
+     */
+    public void read(long offset, ByteBuffer dst) {
+        if (offset < 0 || offset + dst.remaining() > length) {
+            throw new RuntimeException("Illegal index. offset[%s], len[%s]".formatted(offset, dst.remaining()));
+        }
+        target.read(bufIndex + offset, dst);
+    }
+
+
     /**
      * Get the bytes.
      * @return the bytes
@@ -22,10 +22,11 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.TreeMap;
+import java.util.function.Predicate;
 
 /**
  * The PieceTable implementation.
@@ -33,12 +34,17 @@ import java.util.TreeMap;
  */
 public class PieceTableImpl implements PieceTable {
 
+    /** The size of chunk to be read at a time. */
+    static final int READ_CHUNK_SIZE = 1024 * 64;
+
     /** The Append buffer. */
     private final AppendBuffer appendBuffer;
     /** The pieces. */
     private final List<Piece> pieces;
-    /** The index of pieces. */
-    private final TreeMap<Long, PiecePoint> indices;
+    /** The start positions of pieces, which are valid up to {@code filled}. */
+    private long[] indices;
+    /** The number of pieces whose start positions are valid. */
+    private int filled;
     /** The total byte length of the piece table. */
     private long length;
 
@@ -50,7 +56,7 @@ public class PieceTableImpl implements PieceTable {
     PieceTableImpl(Piece initial) {
         appendBuffer = AppendBuffer.of();
         pieces = new ArrayList<>();
-        indices = new TreeMap<>();
+        indices = new long[16];
         length = 0;
         if (initial != null) {
             pieces.add(initial);
@@ -74,7 +80,16 @@ public class PieceTableImpl implements PieceTable {
      * @return a new {@code PieceTable}
      */
     public static PieceTableImpl of(Path path) {
-        var cb = ChannelBuffer.of(path);
+        return of(ChannelBuffer.of(path));
+    }
+
+
+    /**
+     * Create a new {@code PieceTable}.
+     * @param cb the buffer of the read file
+     * @return a new {@code PieceTable}
+     */
+    public static PieceTableImpl of(ChannelBuffer cb) {
         return new PieceTableImpl(new Piece(cb, 0, cb.length()));
     }
 
@@ -103,7 +118,7 @@ public class PieceTableImpl implements PieceTable {
 
             // add to the boundary position
             pieces.add(point.tableIndex, newPiece);
-            indices.tailMap(point.position).clear();
+            filled = Math.min(filled, point.tableIndex);
 
         } else {
 
@@ -111,7 +126,7 @@ public class PieceTableImpl implements PieceTable {
             Piece[] splits = point.piece.split(pos - point.position());
             pieces.remove(point.tableIndex);
             pieces.addAll(point.tableIndex, List.of(splits[0], newPiece, splits[1]));
-            indices.tailMap(point.position).clear();
+            filled = Math.min(filled, point.tableIndex);
 
         }
         length += bytes.length;
@@ -138,7 +153,7 @@ public class PieceTableImpl implements PieceTable {
 
         // disable indices
         PiecePoint from = range[0];
-        indices.tailMap(from.position).clear();
+        filled = Math.min(filled, from.tableIndex);
 
         // derive the split pieces
         PiecePoint to = range[range.length - 1];
@@ -153,6 +168,76 @@ public class PieceTableImpl implements PieceTable {
     }
 
 
+    @Override
+    public void replace(long[] positions, int[] lengths, byte[][] bytes) {
+
+        if (positions.length == 0) {
+            return;
+        }
+        for (int i = 0; i < positions.length; i++) {
+            long prevEnd = (i == 0) ? 0 : positions[i - 1] + lengths[i - 1];
+            if (positions[i] < prevEnd || lengths[i] < 0 || positions[i] + lengths[i] > length) {
+                throw new IndexOutOfBoundsException(
+                    "pos[%d], length[%d]".formatted(positions[i], length));
+            }
+        }
+
+        // appends each distinct bytes once, and shares the piece of them
+        Map<ByteBuffer, Piece> appended = new HashMap<>();
+        List<Piece> dest = new ArrayList<>(pieces.size() + 2 * positions.length);
+        int index = 0;          // the index of the current piece
+        long offset = 0;        // the offset in the current piece
+        long piecePosition = 0; // the position of the head of the current piece
+        long delta = 0;
+        for (int i = 0; i <= positions.length; i++) {
+            // copies the slices up to the range
+            long to = (i < positions.length) ? positions[i] : length;
+            while (piecePosition + offset < to) {
+                Piece piece = pieces.get(index);
+                long end = Math.min(piece.length(), to - piecePosition);
+                dest.add((offset == 0 && end == piece.length())
+                    ? piece
+                    : new Piece(piece.target(), piece.bufIndex() + offset, end - offset));
+                offset = end;
+                if (offset == piece.length()) {
+                    piecePosition += piece.length();
+                    offset = 0;
+                    index++;
+                }
+            }
+            if (i == positions.length) {
+                break;
+            }
+            // adds the replacement
+            byte[] b = bytes[i];
+            if (b.length > 0) {
+                dest.add(appended.computeIfAbsent(ByteBuffer.wrap(b), k -> {
+                    var piece = new Piece(appendBuffer, appendBuffer.length(), b.length);
+                    appendBuffer.append(b);
+                    return piece;
+                }));
+            }
+            // skips the range
+            for (long skip = lengths[i]; skip > 0; ) {
+                long n = Math.min(skip, pieces.get(index).length() - offset);
+                offset += n;
+                skip -= n;
+                if (offset == pieces.get(index).length()) {
+                    piecePosition += offset;
+                    offset = 0;
+                    index++;
+                }
+            }
+            delta += b.length - lengths[i];
+        }
+
+        length += delta;
+        pieces.clear();
+        pieces.addAll(dest);
+        filled = 0;
+    }
+
+
     @Override
     public byte[] get(long pos, int len) {
 
@@ -177,6 +262,34 @@ public class PieceTableImpl implements PieceTable {
     }
 
 
+    @Override
+    public void read(long pos, long len, Predicate<ByteBuffer> traverseCallback) {
+        read(pos, len, ByteBuffer.allocate(Math.clamp(len, 1, READ_CHUNK_SIZE)), traverseCallback);
+    }
+
+
+    @Override
+    public void read(long pos, long len, ByteBuffer buf, Predicate<ByteBuffer> traverseCallback) {
+
+        if (pos < 0 || pos > length) {
+            throw new IndexOutOfBoundsException(
+                "pos[%d], length[%d]".formatted(pos, length));
+        }
+
+        long end = Math.min(length, pos + len);
+        if (pos < end) {
+            PiecePoint pp = at(pos);
+            read(pieces, pp.tableIndex, pos - pp.position, end - pos, buf, traverseCallback);
+        }
+    }
+
+
+    @Override
+    public PieceTable snapshot() {
+        return new PieceTableSnapshot(pieces, length);
+    }
+
+
     @Override
     public long length() {
         return length;
@@ -188,7 +301,7 @@ public class PieceTableImpl implements PieceTable {
         write(path);
         pieces.clear();
         appendBuffer.clear();
-        indices.clear();
+        filled = 0;
         var cb = ChannelBuffer.of(path);
         pieces.add(new Piece(cb, 0, cb.length()));
         length = cb.length();
@@ -236,19 +349,20 @@ public class PieceTableImpl implements PieceTable {
         // 0  |x|x|x|  length:3
         // 3  |x|x|    length:2
         // 5  |x|x|    length:2
-        PiecePoint piecePoint = Optional.ofNullable(indices.floorEntry(pos))
-                    .map(Map.Entry::getValue).orElse(null);
-        if (piecePoint == null) {
-            return fillToIndices(pos, 0L, 0);
-        } else {
-            if (piecePoint.contains(pos)) {
-                return piecePoint;
+        if (filled == 0 || pos >= indices[filled - 1] + pieces.get(filled - 1).length()) {
+            return fillToIndices(pos);
+        }
+        int lo = 0;
+        int hi = filled - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (indices[mid] <= pos) {
+                lo = mid;
             } else {
-                return fillToIndices(pos,
-                    piecePoint.endPosition(),
-                    piecePoint.tableIndex() + 1);
+                hi = mid - 1;
             }
         }
+        return new PiecePoint(indices[lo], lo, pieces.get(lo));
     }
 
     private PiecePoint[] range(long startPos, long endPos) {
@@ -289,17 +403,57 @@ public class PieceTableImpl implements PieceTable {
         }
         pieces.clear();
         pieces.addAll(dest);
-        indices.clear();
+        filled = 0;
+    }
+
+
+    /**
+     * Reads the bytes of the pieces chunk by chunk.
+     * Small pieces are packed into a chunk, and a chunk buffer is reused for the next chunk.
+     * @param pieces the pieces
+     * @param index the index of the piece to be read first
+     * @param offset the offset in the piece to be read first
+     * @param len the length to be read, which must be within the pieces
+     * @param buf the chunk buffer
+     * @param traverseCallback the callback for each chunk, returns {@code false} to stop reading
+     */
+    static void read(List<Piece> pieces, int index, long offset, long len,
+            ByteBuffer buf, Predicate<ByteBuffer> traverseCallback) {
+
+        buf.clear();
+        for (int i = index; len > 0; i++) {
+            Piece piece = pieces.get(i);
+            for (long n = Math.min(piece.length() - offset, len); n > 0; ) {
+                int k = (int) Math.min(n, buf.remaining());
+                buf.limit(buf.position() + k);
+                piece.read(offset, buf);
+                buf.limit(buf.capacity());
+                offset += k;
+                n -= k;
+                len -= k;
+                if (!buf.hasRemaining() || len == 0) {
+                    if (!traverseCallback.test(buf.flip())) {
+                        return;
+                    }
+                    buf.clear();
+                }
+            }
+            offset = 0;
+        }
     }
 
 
-    private PiecePoint fillToIndices(long pos, long piecePosition, int tableIndex) {
-        for (int i = tableIndex; i < pieces.size(); i++) {
+    private PiecePoint fillToIndices(long pos) {
+        long piecePosition = (filled == 0) ? 0 : indices[filled - 1] + pieces.get(filled - 1).length();
+        for (int i = filled; i < pieces.size(); i++) {
+            if (i == indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(pieces.size(), i + (i >> 1)));
+            }
             var piece = pieces.get(i);
-            var piecePoint = new PiecePoint(piecePosition, i, piece);
-            indices.put(piecePoint.position, piecePoint);
-            if (piecePoint.contains(pos)) {
-                return piecePoint;
+            indices[i] = piecePosition;
+            filled = i + 1;
+            if (piecePosition <= pos && pos < piecePosition + piece.length()) {
+                return new PiecePoint(piecePosition, i, piece);
             }
             piecePosition += piece.length();
         }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.core;
+
+import com.mammb.code.piecetable.PieceTable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The read-only snapshot of the piece table.
+ * Pieces are located by binary search on their positions instead of the index cache of
+ * {@link PieceTableImpl}, and bytes are read with {@link Piece#read(long, ByteBuffer)},
+ * so that the snapshot can be read from multiple threads.
+ * The pieces of the append buffer refer to a read-only view of the bytes as of the snapshot,
+ * so the snapshot can be read while the piece table is edited.
+ * @author Naotsugu Kobayashi
+ */
+class PieceTableSnapshot implements PieceTable {
+
+    /** The pieces. */
+    private final List<Piece> pieces;
+    /** The start positions of the pieces. */
+    private final long[] positions;
+    /** The total byte length. */
+    private final long length;
+
+
+    /**
+     * Constructor.
+     * @param pieces the pieces
+     * @param length the total byte length of the pieces
+     */
+    PieceTableSnapshot(List<Piece> pieces, long length) {
+        this.pieces = snapshot(pieces);
+        this.positions = new long[pieces.size()];
+        for (int i = 1; i < positions.length; i++) {
+            positions[i] = positions[i - 1] + this.pieces.get(i - 1).length();
+        }
+        this.length = length;
+    }
+
+
+    @Override
+    public void insert(long pos, byte[] bytes) {
+        throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+
+    @Override
+    public void delete(long pos, int len) {
+        throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+
+    @Override
+    public void replace(long[] positions, int[] lengths, byte[][] bytes) {
+        throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+
+    @Override
+    public byte[] get(long pos, int len) {
+        if (len <= 0) return new byte[0];
+        if (pos < 0 || pos + len > length) {
+            throw new IndexOutOfBoundsException(
+                "pos[%d], length[%d]".formatted(pos, length));
+        }
+        ByteBuffer ret = ByteBuffer.allocate(len);
+        read(pos, len, chunk -> {
+            ret.put(chunk);
+            return true;
+        });
+        return ret.array();
+    }
+
+
+    @Override
+    public void read(long pos, long len, Predicate<ByteBuffer> traverseCallback) {
+        read(pos, len, ByteBuffer.allocate(Math.clamp(len, 1, PieceTableImpl.READ_CHUNK_SIZE)), traverseCallback);
+    }
+
+
+    @Override
+    public void read(long pos, long len, ByteBuffer buf, Predicate<ByteBuffer> traverseCallback) {
+
+        if (pos < 0 || pos > length) {
+            throw new IndexOutOfBoundsException(
+                "pos[%d], length[%d]".formatted(pos, length));
+        }
+
+        long end = Math.min(length, pos + len);
+        if (pos < end) {
+            int i = indexOf(pos);
+            PieceTableImpl.read(pieces, i, pos - positions[i], end - pos, buf, traverseCallback);
+        }
+    }
+
+
+    @Override
+    public PieceTable snapshot() {
+        return this;
+    }
+
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+
+    @Override
+    public void save(Path path) {
+        throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+
+    /**
+     * Gets the pieces on the read-only views of their buffers, which are not changed by
+     * the edits afterward, and are visible to other threads through the final field.
+     * @param pieces the pieces
+     * @return the pieces on the read-only views
+     */
+    private static List<Piece> snapshot(List<Piece> pieces) {
+        Map<Buffer, Buffer> views = new IdentityHashMap<>();
+        List<Piece> list = new ArrayList<>(pieces.size());
+        for (Piece piece : pieces) {
+            Buffer view = views.computeIfAbsent(piece.target(), Buffer::snapshot);
+            list.add((view == piece.target()) ? piece : new Piece(view, piece.bufIndex(), piece.length()));
+        }
+        return List.copyOf(list);
+    }
+
+
+    /**
+     * Gets the index of the piece containing the specified position.
+     * @param pos the position
+     * @return the index of the piece
+     */
+    private int indexOf(long pos) {
+        int i = Arrays.binarySearch(positions, pos);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+}
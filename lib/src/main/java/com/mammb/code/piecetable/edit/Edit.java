@@ -15,6 +15,7 @@
  */
 package com.mammb.code.piecetable.edit;
 
+import com.mammb.code.piecetable.Found;
 import com.mammb.code.piecetable.TextEdit.*;
 import java.util.Collections;
 import java.util.List;
@@ -176,6 +177,7 @@ sealed interface Edit {
                 Collections.reverse(flipped);
                 yield new Cmp(flipped, e.occurredOn);
             }
+            case Rep e -> new Rep(e.to, e.toTexts, e.from, e.fromTexts, e.occurredOn);
         };
     }
 
@@ -217,6 +219,8 @@ sealed interface Edit {
         default Pos min() { return backward() ? to() : from(); }
     }
     record Cmp(List<? extends ConcreteEdit> edits, long occurredOn) implements Edit { }
+    // replaces the ranges from, holding fromTexts, with toTexts at once, which results in the ranges to
+    record Rep(List<Found> from, List<String> fromTexts, List<Found> to, List<String> toTexts, long occurredOn) implements Edit { }
     record Ins(Pos from, Pos to, String text, long occurredOn) implements ConcreteEdit {
         public Ins(Pos from, Pos to, String text) { this(from, to, text, System.currentTimeMillis()); }
     }
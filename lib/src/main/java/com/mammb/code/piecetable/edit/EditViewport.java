@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.edit;
+
+import com.mammb.code.piecetable.Viewport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * The viewport of the {@link TextEditImpl}.
+ * The rows are read by the viewport of the document,
+ * and the rows with the edits not yet flushed are replaced by the rows of the edit.
+ * @author Naotsugu Kobayashi
+ */
+class EditViewport implements Viewport {
+
+    /** The text edit. */
+    private final TextEditImpl edit;
+    /** The viewport of the document. */
+    private final Viewport viewport;
+
+
+    /**
+     * Constructor.
+     * @param edit the text edit
+     * @param viewport the viewport of the document
+     */
+    EditViewport(TextEditImpl edit, Viewport viewport) {
+        this.edit = edit;
+        this.viewport = viewport;
+    }
+
+
+    @Override
+    public List<String> scrollAt(int top) {
+        return overlay(viewport.scrollAt(top));
+    }
+
+    @Override
+    public List<String> rows() {
+        return overlay(viewport.rows());
+    }
+
+    @Override
+    public String getText(int row) {
+        return edit.editedRows().contains(row)
+            ? edit.text(row, 0, Integer.MAX_VALUE)
+            : viewport.getText(row);
+    }
+
+    @Override
+    public int top() {
+        return viewport.top();
+    }
+
+    @Override
+    public int size() {
+        return viewport.size();
+    }
+
+    @Override
+    public void resize(int size) {
+        viewport.resize(size);
+    }
+
+
+    /**
+     * Replaces the rows with the edits not yet flushed.
+     * @param rows the rows of the window read by the viewport of the document
+     * @return the rows of the window
+     */
+    private List<String> overlay(List<String> rows) {
+        int top = viewport.top();
+        SortedSet<Integer> edited = edit.editedRows().subSet(top, top + rows.size());
+        if (edited.isEmpty()) {
+            return rows;
+        }
+        List<String> list = new ArrayList<>(rows);
+        for (int row : edited) {
+            list.set(row - top, edit.text(row, 0, Integer.MAX_VALUE));
+        }
+        return List.copyOf(list);
+    }
+
+}
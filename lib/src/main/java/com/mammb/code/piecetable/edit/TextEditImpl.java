@@ -15,21 +15,33 @@
  */
 package com.mammb.code.piecetable.edit;
 
+import com.mammb.code.piecetable.Change;
 import com.mammb.code.piecetable.Document;
+import com.mammb.code.piecetable.FindOption;
 import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.Progress;
 import com.mammb.code.piecetable.TextEdit;
+import com.mammb.code.piecetable.Viewport;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static com.mammb.code.piecetable.edit.Texts.*;
 
@@ -279,6 +291,24 @@ public class TextEditImpl implements TextEdit {
         return pos;
     }
 
+    @Override
+    public List<Found> replaceAll(String text, String replacement, FindOption... options) {
+        flush();
+        long occurredOn = System.currentTimeMillis();
+        List<Found> founds = doc.findAll(text, options);
+        if (founds.isEmpty()) {
+            return founds;
+        }
+        List<String> originals = Arrays.asList(options).contains(FindOption.IGNORE_CASE)
+            ? founds.stream().map(f -> doc.getText(f.row(), f.col(), f.len()).toString()).toList()
+            : Collections.nCopies(founds.size(), text);
+        List<String> replacements = Collections.nCopies(founds.size(), replacement);
+        List<Found> replaced = doc.replace(founds, replacements);
+        undo.push(new Edit.Rep(founds, originals, replaced, replacements, occurredOn).flip());
+        redo.clear();
+        return replaced;
+    }
+
     // -- Undo / Redo ---------------------------------------------------------
 
     @Override
@@ -291,6 +321,7 @@ public class TextEditImpl implements TextEdit {
         return switch (undo.get()) {
             case Edit.ConcreteEdit e -> List.of(e.to());
             case Edit.Cmp e -> List.of(e.edits().getLast().to());
+            case Edit.Rep e -> head(e.to());
         };
     }
 
@@ -304,6 +335,7 @@ public class TextEditImpl implements TextEdit {
         return switch (redo.get()) {
             case Edit.ConcreteEdit e -> List.of(e.to());
             case Edit.Cmp e -> List.of(e.edits().getLast().to());
+            case Edit.Rep e -> head(e.to());
         };
     }
 
@@ -318,28 +350,43 @@ public class TextEditImpl implements TextEdit {
         return doc.getText(row).toString();
     }
 
+    @Override
+    public void getText(int row, Appendable dst) {
+        if (!deque.isEmpty() && dryBuffer.isEmpty()) {
+            dryApply();
+        }
+        if (dryBuffer.containsKey(row)) {
+            try {
+                dst.append(dryBuffer.get(row));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        doc.getText(row, dst);
+    }
+
     @Override
     public String getText(int fromRow, int endRowExclusive) {
-        return IntStream.range(fromRow, endRowExclusive)
-            .mapToObj(this::getText)
-            .collect(Collectors.joining());
+        var sb = new StringBuilder();
+        appendRows(fromRow, endRowExclusive, sb);
+        return sb.toString();
     }
 
     @Override
     public String getText(Pos start, Pos end) {
         if (end.compareTo(start) < 0) {
-                Pos temp = start;
-                start = end;
-                end = temp;
-        }
-        StringBuilder sb = new StringBuilder();
-        for (int i = start.row(); i <= end.row(); i++) {
-                String row = getText(i);
-                row = (i == end.row()) ? row.substring(0, end.col()) : row;
-                row = (i == start.row()) ? row.substring(start.col()) : row;
-                sb.append(row);
-            }
-        return sb.toString();
+            Pos temp = start;
+            start = end;
+            end = temp;
+        }
+        if (start.row() == end.row()) {
+            return text(start.row(), start.col(), end.col() - start.col());
+        }
+        // only the ranges are read on the first and the last rows, and the rows between at a time
+        var sb = new StringBuilder(text(start.row(), start.col(), Integer.MAX_VALUE));
+        appendRows(start.row() + 1, end.row(), sb);
+        return sb.append(text(end.row(), 0, end.col())).toString();
     }
 
     @Override
@@ -349,16 +396,87 @@ public class TextEditImpl implements TextEdit {
             start = end;
             end = temp;
         }
+        if (start.row() == end.row()) {
+            return new ArrayList<>(List.of(text(start.row(), start.col(), end.col() - start.col())));
+        }
         List<String> list = new ArrayList<>();
-        for (int i = start.row(); i <= end.row(); i++) {
-            String row = getText(i);
-            row = (i == end.row()) ? row.substring(0, end.col()) : row;
-            row = (i == start.row()) ? row.substring(start.col()) : row;
-            list.add(row);
+        list.add(text(start.row(), start.col(), Integer.MAX_VALUE));
+        if (end.row() - start.row() > 1) {
+            var sb = new StringBuilder();
+            appendRows(start.row() + 1, end.row(), sb);
+            List<String> rows = splitRowBreak(sb.toString());
+            list.addAll(rows.subList(0, rows.size() - 1)); // the rows between end with a row break
         }
+        list.add(text(end.row(), 0, end.col()));
         return list;
     }
 
+    /**
+     * Appends the text of the specified rows.
+     * The runs of rows without the edits not yet flushed are read from the document at a time.
+     * @param fromRow the start row, inclusive
+     * @param endRow the end row, exclusive
+     * @param sb the destination
+     */
+    private void appendRows(int fromRow, int endRow, StringBuilder sb) {
+        endRow = Math.min(endRow, doc.rows()); // multi-row edits are never pending
+        int run = fromRow;
+        for (int row : editedRows().subSet(fromRow, Math.max(fromRow, endRow))) {
+            sb.append(doc.getText(run, row));
+            sb.append(text(row, 0, Integer.MAX_VALUE));
+            run = row + 1;
+        }
+        if (run < endRow) {
+            sb.append(doc.getText(run, endRow));
+        }
+    }
+
+    @Override
+    public int textLength(int row) {
+        if (!dryBuffer.isEmpty()) {
+            String text = dryBuffer.get(row);
+            return (text != null) ? text.length() : doc.textLength(row);
+        }
+        int length = doc.textLength(row);
+        for (Edit.ConcreteEdit edit : pending(row)) {
+            length += (edit instanceof Edit.Ins) ? edit.text().length() : -edit.text().length();
+        }
+        return length;
+    }
+
+    @Override
+    public void addChangeListener(Consumer<List<Change>> listener) {
+        doc.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<List<Change>> listener) {
+        doc.removeChangeListener(listener);
+    }
+
+    @Override
+    public Viewport viewport(int size, int margin) {
+        return new EditViewport(this, doc.viewport(size, margin));
+    }
+
+    /**
+     * Gets the rows with the edits not yet flushed.
+     * @return the rows edited
+     */
+    SortedSet<Integer> editedRows() {
+        SortedSet<Integer> edited = new TreeSet<>(dryBuffer.keySet());
+        if (dryBuffer.isEmpty()) {
+            for (Edit edit : deque) {
+                switch (edit) {
+                    case Edit.ConcreteEdit e -> edited.add(e.from().row());
+                    case Edit.Cmp e -> e.edits().forEach(c -> edited.add(c.from().row()));
+                    default -> { }
+                }
+            }
+        }
+        return edited;
+    }
+
     @Override
     public void flush() {
         while (!deque.isEmpty()) {
@@ -378,15 +496,39 @@ public class TextEditImpl implements TextEdit {
     }
 
     @Override
-    public List<Found> findAll(String text) {
+    public List<Found> findAll(String text, FindOption... options) {
         flush();
-        return doc.findAll(text);
+        return doc.findAll(text, options);
     }
 
     @Override
-    public Optional<Found> findNext(String text, int row, int col) {
+    public CompletableFuture<List<Found>> findAllAsync(String text,
+            BiConsumer<List<Found>, Progress> listener, FindOption... options) {
         flush();
-        return doc.findNext(text, row, col);
+        return doc.findAllAsync(text, listener, options);
+    }
+
+    @Override
+    public List<Found> findAll(Pattern pattern) {
+        flush();
+        return doc.findAll(pattern);
+    }
+
+    @Override
+    public void enableSearchIndex() {
+        doc.enableSearchIndex();
+    }
+
+    @Override
+    public Stream<Found> find(String text, FindOption... options) {
+        flush();
+        return doc.find(text, options);
+    }
+
+    @Override
+    public Optional<Found> findNext(String text, int row, int col, FindOption... options) {
+        flush();
+        return doc.findNext(text, row, col, options);
     }
 
     @Override
@@ -443,7 +585,7 @@ public class TextEditImpl implements TextEdit {
         int newRow = row - countRowBreak(text);
         int newCol = (row == newRow)
             ? col - text.length()
-            : getText(newRow).length() - (text.indexOf('\n') + 1);
+            : textLength(newRow) - (text.indexOf('\n') + 1);
         return new Edit.Del(
             new Pos(row, col),
             new Pos(newRow, newCol),
@@ -499,7 +641,8 @@ public class TextEditImpl implements TextEdit {
         switch (edit) {
             case Edit.Ins e -> doc.insert(e.min().row(), e.min().col(), e.text());
             case Edit.Del e -> doc.delete(e.min().row(), e.min().col(), e.text());
-            case Edit.Cmp e -> e.edits().forEach(this::apply);
+            case Edit.Cmp e -> doc.batch(() -> e.edits().forEach(this::apply));
+            case Edit.Rep e -> doc.replace(e.from(), e.toTexts());
         }
     }
 
@@ -527,9 +670,115 @@ public class TextEditImpl implements TextEdit {
                 dryBuffer.put(e.from().row(), row);
             }
             case Edit.Cmp e -> e.edits().forEach(this::dryApply);
+            case Edit.Rep e -> { } // applied at once, never queued
         }
     }
 
+    /**
+     * Gets the edits not yet flushed on the specified row, in the order applied.
+     * @param row the number of row(zero origin)
+     * @return the edits on the row
+     */
+    private List<Edit.ConcreteEdit> pending(int row) {
+        List<Edit.ConcreteEdit> list = new ArrayList<>();
+        for (Edit edit : deque) {
+            switch (edit) {
+                case Edit.ConcreteEdit e when e.from().row() == row -> list.add(e);
+                case Edit.Cmp e -> e.edits().stream().filter(c -> c.from().row() == row).forEach(list::add);
+                default -> { }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gets the chars of the specified range within the row, clipped to the end of the row.
+     * The edits not yet flushed are composed on the range, instead of applied on the whole row,
+     * so only the range is read from the document.
+     * @param row the number of row(zero origin)
+     * @param col the char position on the row
+     * @param len the char length
+     * @return the chars of the range
+     */
+    String text(int row, int col, int len) {
+        len = Math.min(len, Integer.MAX_VALUE - col);
+        if (dryBuffer.containsKey(row)) {
+            String text = dryBuffer.get(row);
+            int from = Math.min(col, text.length());
+            return text.substring(from, from + Math.min(len, text.length() - from));
+        }
+        List<Edit.ConcreteEdit> edits = dryBuffer.isEmpty() ? pending(row) : List.of();
+        if (edits.isEmpty()) {
+            return doc.getTextRange(row, col, len).toString();
+        }
+        // maps the range back through the edits, into the spans of the row in the document
+        List<Span> spans = List.of(new Span(null, col, col + len));
+        for (Edit.ConcreteEdit edit : edits.reversed()) {
+            int c = edit.min().col();
+            int n = edit.text().length();
+            List<Span> prev = new ArrayList<>();
+            for (Span span : spans) {
+                int a = span.from();
+                int b = span.to();
+                if (span.text() != null) {
+                    prev.add(span);
+                    continue;
+                }
+                if (a < c) {
+                    prev.add(new Span(null, a, Math.min(b, c)));
+                }
+                if (edit instanceof Edit.Ins) {
+                    if (a < c + n && b > c) {
+                        prev.add(new Span(edit.text(), Math.max(a, c) - c, Math.min(b, c + n) - c));
+                    }
+                    if (b > c + n) {
+                        prev.add(new Span(null, Math.max(a, c + n) - n, b - n));
+                    }
+                } else if (b > c) {
+                    prev.add(new Span(null, Math.max(a, c) + n, (int) Math.min(Integer.MAX_VALUE, (long) b + n)));
+                }
+            }
+            spans = prev;
+        }
+        var sb = new StringBuilder();
+        for (Span span : spans) {
+            sb.append((span.text() != null)
+                ? span.text().substring(span.from(), span.to())
+                : doc.getTextRange(row, span.from(), span.to() - span.from()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The span of the text.
+     * @param text the inserted text, or {@code null} if the span is of the row in the document
+     * @param from the start of the span
+     * @param to the end of the span
+     */
+    private record Span(String text, int from, int to) { }
+
+    /**
+     * Gets the size of the window of the row, to be read for the specified count of characters.
+     * @param chLen the count of characters
+     * @return the size of the window
+     */
+    private static int window(int chLen) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(16L, 2L * chLen));
+    }
+
+    /**
+     * Gets the position of the head of the first range.
+     * @param founds the ranges
+     * @return the position, or empty if no ranges
+     */
+    private List<Pos> head(List<Found> founds) {
+        if (founds.isEmpty()) {
+            return List.of();
+        }
+        Found found = founds.getFirst();
+        return List.of(new Pos(found.row(), doc.getText(found.row(), 0, found.col()).length()));
+    }
+
     /**
      * <pre>
      *         textRight(0, 1, 7)
@@ -546,7 +795,12 @@ public class TextEditImpl implements TextEdit {
     List<String> textRight(int row, int col, int chLen) {
         List<String> ret = new ArrayList<>();
         for (int i = row; ; i++) { // i < doc.rows() : cannot get correct value if not flushed
-            var text = getText(i).substring(col);
+            // reads the row in a window, widened until the window holds the count of characters
+            var text = "";
+            for (int win = window(chLen); ; win = (int) Math.min(Integer.MAX_VALUE, 2L * win)) {
+                text = text(i, col, win);
+                if (text.length() < win || Texts.chLength(text) >= chLen) break;
+            }
             if (text.isEmpty()) break;
             int len = Texts.chLength(text);
             if (chLen - len <= 0) {
@@ -578,8 +832,13 @@ public class TextEditImpl implements TextEdit {
     List<String> textLeft(int row, int col, int chLen) {
         List<String> ret = new ArrayList<>();
         for (int i = row; i >= 0; i--) {
-            var s = getText(i);
-            var text = (i == row) ? s.substring(0, col) : s;
+            int end = (i == row) ? col : textLength(i);
+            // the head of the window may be the tail of a surrogate pair or a CRLF, so two more are held
+            var text = "";
+            for (int win = window(chLen); ; win = (int) Math.min(Integer.MAX_VALUE, 2L * win)) {
+                text = text(i, Math.max(0, end - win), Math.min(win, end));
+                if (win >= end || Texts.chLength(text) >= chLen + 2) break;
+            }
             int len = Texts.chLength(text);
             if (chLen - len <= 0) {
                 ret.addFirst(Texts.right(text, chLen));
@@ -595,7 +854,7 @@ public class TextEditImpl implements TextEdit {
     List<String> textRightByte(int row, int col, int byteLen) {
         List<String> ret = new ArrayList<>();
         for (int i = row; ; i++) { // i < doc.rows() : cannot get correct value if not flushed
-            var text = getText(i).substring(col);
+            var text = text(i, col, byteLen);
             if (text.isEmpty()) break;
             int len = text.length();
             if (byteLen - len <= 0) {
@@ -613,8 +872,8 @@ public class TextEditImpl implements TextEdit {
     List<String> textLeftByte(int row, int col, int byteLen) {
         List<String> ret = new ArrayList<>();
         for (int i = row; i >= 0; i--) {
-            var s = getText(i);
-            var text = (col > 0) ? s.substring(0, col) : s;
+            int end = (col > 0) ? col : textLength(i);
+            var text = text(i, Math.max(0, end - byteLen), Math.min(byteLen, end));
             int len = text.length();
             if (byteLen - len <= 0) {
                 ret.addFirst(text.substring(len - byteLen));
@@ -647,13 +906,12 @@ public class TextEditImpl implements TextEdit {
         int[] ret = new int[poss.size()];
         Pos pos = poss.get(index);
         for (int i = poss.getFirst().row(); i <= poss.getLast().row(); i++) {
-            String rowText = getText(i);
             while (pos.row() == i) {
                 ret[index++] = distance + pos.col();
                 if (index >= poss.size()) break;
                 pos = poss.get(index);
             }
-            distance += rowText.length();
+            distance += textLength(i);
         }
         return ret;
     }
@@ -669,14 +927,14 @@ public class TextEditImpl implements TextEdit {
         int total = 0;
         int index = 0;
         for (int i = row; index < distances.length; i++) {
-            String rowText = getText(i);
-            if (rowText.isEmpty()) break;
-            while (total + rowText.length() >= distances[index]) {
+            int length = textLength(i);
+            if (length == 0) break;
+            while (total + length >= distances[index]) {
                 poss.add(new Pos(i, distances[index] - total));
                 index++;
                 if (index >= distances.length) break;
             }
-            total += rowText.length();
+            total += length;
         }
         return poss;
     }
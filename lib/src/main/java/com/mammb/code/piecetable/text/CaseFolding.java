@@ -0,0 +1,223 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The case-insensitive search engine, which matches encoded bytes directly.
+ * Each byte position of the pattern accepts the set of bytes of the case variants there,
+ * and the sets are searched by Boyer-Moore-Horspool.
+ * <pre>
+ *   pattern  |   a   |   b   |       é       |   (UTF-8)
+ *   sets     | 41 61 | 42 62 |  C3   | 89 A9 |
+ * </pre>
+ * If the variants of a char differ at more than one byte position, the sets can also accept
+ * a mix of them, so such candidates are decoded and verified.
+ * @author Naotsugu Kobayashi
+ */
+class CaseFolding implements SearchEngine {
+
+    /** The byte length of the pattern. */
+    private final int length;
+    /** The sets of bytes accepted at each position, as four words of 64 bits. */
+    private final long[] sets;
+    /** The shift by the byte at the last position of the window. */
+    private final int[] shifts;
+    /** The charset to verify candidates, or {@code null} if not needed. */
+    private final Charset verifying;
+    /** The folded pattern. */
+    private final String folded;
+
+
+    /**
+     * Constructor.
+     * @param pattern the pattern
+     * @param charset the charset
+     */
+    CaseFolding(String pattern, Charset charset) {
+
+        Charset cs = unmarked(charset);
+        byte[] bytes = pattern.getBytes(cs);
+        this.length = bytes.length;
+        this.sets = new long[length * 4];
+        this.folded = fold(pattern);
+
+        boolean verify = false;
+        int offset = 0;
+        for (int i = 0; i < pattern.length(); ) {
+            int cp = pattern.codePointAt(i);
+            i += Character.charCount(cp);
+            byte[] encoded = Character.toString(cp).getBytes(cs);
+            for (char variant : variants(cp)) {
+                byte[] v = String.valueOf(variant).getBytes(cs);
+                if (v.length != encoded.length) {
+                    continue;
+                }
+                int diff = 0;
+                for (int j = 0; j < v.length; j++) {
+                    add(offset + j, v[j]);
+                    if (v[j] != encoded[j]) diff++;
+                }
+                verify |= diff > 1;
+            }
+            for (int j = 0; j < encoded.length; j++) {
+                add(offset + j, encoded[j]);
+            }
+            offset += encoded.length;
+        }
+        this.verifying = verify ? cs : null;
+
+        this.shifts = new int[256];
+        Arrays.fill(shifts, length);
+        for (int i = 0; i < length - 1; i++) {
+            for (int b = 0; b < 256; b++) {
+                if (contains(i, b)) shifts[b] = length - 1 - i;
+            }
+        }
+    }
+
+
+    @Override
+    public int indexOf(byte[] bytes, int from, int to) {
+        int last = length - 1;
+        for (int i = from; i + length <= to; ) {
+            int j = last;
+            while (j >= 0 && contains(j, bytes[i + j] & 0xFF)) {
+                j--;
+            }
+            if (j < 0 && (verifying == null || verify(bytes, i))) {
+                return i;
+            }
+            i += shifts[bytes[i + last] & 0xFF];
+        }
+        return -1;
+    }
+
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+
+    /**
+     * Gets the charset which encodes without the byte order mark, in the same byte order.
+     * @param charset the charset
+     * @return the charset without the byte order mark
+     */
+    static Charset unmarked(Charset charset) {
+        return switch (charset.name()) {
+            case "UTF-16" -> StandardCharsets.UTF_16BE;
+            case "UTF-32" -> Charset.forName("UTF-32BE");
+            default -> charset;
+        };
+    }
+
+
+    /**
+     * Gets whether the pattern has any char with case variants.
+     * @param pattern the pattern
+     * @return {@code true}, if the pattern has any char with case variants
+     */
+    static boolean hasCase(String pattern) {
+        return pattern.codePoints().anyMatch(cp -> variants(cp).length > 0);
+    }
+
+
+    private boolean verify(byte[] bytes, int i) {
+        return folded.equals(fold(new String(bytes, i, length, verifying)));
+    }
+
+
+    private void add(int pos, byte b) {
+        sets[pos * 4 + ((b & 0xFF) >>> 6)] |= 1L << b;
+    }
+
+
+    private boolean contains(int pos, int b) {
+        return (sets[pos * 4 + (b >>> 6)] & (1L << b)) != 0;
+    }
+
+
+    private static String fold(String str) {
+        var sb = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            sb.append(fold(str.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+
+    private static char fold(char ch) {
+        return Character.toLowerCase(Character.toUpperCase(ch));
+    }
+
+
+    /**
+     * Gets the case variants of the specified char, other than itself.
+     * Supplementary chars have no variants.
+     * @param cp the code point
+     * @return the case variants
+     */
+    private static char[] variants(int cp) {
+        if (Character.isSupplementaryCodePoint(cp)) {
+            return new char[0];
+        }
+        char ch = (char) cp;
+        char[] chars = Variants.TABLE.getOrDefault(fold(ch), new char[0]);
+        char[] ret = new char[chars.length];
+        int n = 0;
+        for (char c : chars) {
+            if (c != ch) ret[n++] = c;
+        }
+        return Arrays.copyOf(ret, n);
+    }
+
+
+    /**
+     * The table of the chars by the folded char, which is built on the first use.
+     */
+    private static class Variants {
+
+        /** The chars by the folded char, only for the chars with variants. */
+        static final Map<Character, char[]> TABLE = build();
+
+        private static Map<Character, char[]> build() {
+            Map<Character, StringBuilder> map = new HashMap<>();
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                char ch = (char) c;
+                if (Character.isSurrogate(ch)) continue;
+                char folded = fold(ch);
+                if (folded != ch || Character.toUpperCase(ch) != ch) {
+                    map.computeIfAbsent(folded, k -> new StringBuilder().append(k)).append(ch);
+                }
+            }
+            Map<Character, char[]> table = new HashMap<>();
+            map.forEach((k, v) -> {
+                char[] chars = v.chars().distinct().collect(StringBuilder::new,
+                    StringBuilder::appendCodePoint, StringBuilder::append).toString().toCharArray();
+                if (chars.length > 1) table.put(k, chars);
+            });
+            return table;
+        }
+    }
+
+}
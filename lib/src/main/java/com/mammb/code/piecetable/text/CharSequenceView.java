@@ -0,0 +1,324 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.PieceTable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The char sequence view of a byte range of the piece table, which decodes the bytes lazily.
+ * <pre>
+ *   bytes  |----- block 0 -----|----- block 1 -----|----- block 2 -----|
+ *   chars  |--- 0 ---|--- 1 ---|--- 2 ---|
+ *          ^ charStarts[0]     ^ charStarts[1]     (known as far as decoded)
+ * </pre>
+ * The bytes are decoded a block at a time, and the start of each block on chars is recorded
+ * when the block is decoded first. The decoded blocks are cached for a while,
+ * so sequential access such as by {@link java.util.regex.Matcher} decodes each block once.
+ * The length is known only after decoding to the end.
+ * <p>
+ * This view is not thread-safe, and the piece table must not be modified,
+ * such as {@link PieceTable#snapshot()}.
+ * @author Naotsugu Kobayashi
+ */
+class CharSequenceView implements CharSequence {
+
+    /** The byte length of a block. */
+    private static final int BLOCK_SIZE = 1024 * 64;
+    /** The number of decoded blocks cached. */
+    private static final int CACHE_SIZE = 16;
+
+    /** The piece table. */
+    private final PieceTable pt;
+    /** The decoder. */
+    private final CharsetDecoder decoder;
+    /** The end position of the byte range. */
+    private final long end;
+
+    /** The start positions of the blocks on bytes. */
+    private long[] byteStarts = new long[16];
+    /** The start indexes of the blocks on chars. */
+    private int[] charStarts = new int[16];
+    /** The number of line feeds before the blocks. */
+    private int[] rowStarts = new int[16];
+    /** The number of blocks decoded, whose starts of the next block are also known. */
+    private int blocks;
+
+    /** The decoded blocks. */
+    private final Map<Integer, char[]> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    /** The block last accessed. */
+    private int lastBlock = -1;
+    /** The chars of the block last accessed. */
+    private char[] lastChars;
+
+    /** The decoder of the cursor. */
+    private final CharsetDecoder cursorDecoder;
+    /** The block of the cursor, which locates chars on bytes and rows. */
+    private int cursorBlock = -1;
+    /** The bytes of the block of the cursor. */
+    private ByteBuffer cursorBytes;
+    /** The chars decoded by the cursor. */
+    private CharBuffer cursorChars;
+    /** The number of line feeds before the cursor. */
+    private int cursorRows;
+
+
+    /**
+     * Constructor.
+     * @param pt the piece table
+     * @param charset the charset
+     * @param start the start position of the byte range
+     * @param end the end position of the byte range
+     */
+    private CharSequenceView(PieceTable pt, Charset charset, long start, long end) {
+        this.pt = pt;
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.cursorDecoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.end = end;
+        this.byteStarts[0] = start;
+    }
+
+
+    /**
+     * Create a new {@link CharSequenceView}.
+     * The byte length of the range must not exceed {@code Integer.MAX_VALUE},
+     * so that the length on chars does not exceed it either.
+     * @param pt the piece table, which is not modified while the view is used
+     * @param charset the charset
+     * @param start the start position of the byte range
+     * @param end the end position of the byte range
+     * @return a new {@link CharSequenceView}
+     */
+    static CharSequenceView of(PieceTable pt, Charset charset, long start, long end) {
+        if (start < 0 || end > pt.length() || start > end || end - start > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException(
+                "start[%d], end[%d], length[%d]".formatted(start, end, pt.length()));
+        }
+        return new CharSequenceView(pt, charset, start, end);
+    }
+
+
+    @Override
+    public int length() {
+        while (byteStarts[blocks] < end) {
+            decodeNext();
+        }
+        return charStarts[blocks];
+    }
+
+
+    @Override
+    public char charAt(int index) {
+        if (lastBlock >= 0 && index >= charStarts[lastBlock] && index < charStarts[lastBlock + 1]) {
+            return lastChars[index - charStarts[lastBlock]];
+        }
+        int block = block(index);
+        lastChars = chars(block);
+        lastBlock = block;
+        return lastChars[index - charStarts[block]];
+    }
+
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException(
+                "start[%d], end[%d], length[%d]".formatted(start, end, length()));
+        }
+        var sb = new StringBuilder(end - start);
+        for (int i = start; i < end; ) {
+            int block = block(i);
+            char[] chars = chars(block);
+            int from = i - charStarts[block];
+            int n = Math.min(chars.length - from, end - i);
+            sb.append(chars, from, n);
+            i += n;
+        }
+        return sb.toString();
+    }
+
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+
+    /**
+     * Gets the byte position of the specified char.
+     * Sequential calls in ascending order only decode the bytes between them.
+     * @param index the index of the char
+     * @return the byte position in the piece table
+     */
+    long position(int index) {
+        seek(index);
+        return byteStarts[cursorBlock] + cursorBytes.position();
+    }
+
+
+    /**
+     * Gets the number of line feeds before the specified char.
+     * @param index the index of the char
+     * @return the number of line feeds before the char
+     */
+    int row(int index) {
+        seek(index);
+        return cursorRows;
+    }
+
+
+    /**
+     * Moves the cursor to the specified char.
+     * The cursor decodes the block again up to the char, so that the byte position is exact
+     * even if the bytes are malformed.
+     * @param index the index of the char
+     */
+    private void seek(int index) {
+        int block = (index == length()) ? blocks - 1 : block(index);
+        if (block < 0) {
+            // the empty view
+            block = 0;
+            index = 0;
+        }
+        int offset = index - charStarts[block];
+        if (block != cursorBlock || offset < cursorChars.position()) {
+            cursorBlock = block;
+            cursorBytes = ByteBuffer.wrap(bytes(block));
+            cursorChars = CharBuffer.allocate(chars(block).length);
+            cursorRows = rowStarts[block];
+            cursorDecoder.reset();
+        }
+        int from = cursorChars.position();
+        cursorChars.limit(offset);
+        cursorDecoder.decode(cursorBytes, cursorChars, false);
+        for (int i = from; i < cursorChars.position(); i++) {
+            if (cursorChars.get(i) == '\n') cursorRows++;
+        }
+    }
+
+
+    /**
+     * Gets the block containing the specified char, decoding the blocks up to it as needed.
+     * @param index the index of the char
+     * @return the block
+     */
+    private int block(int index) {
+        while (index >= charStarts[blocks] && byteStarts[blocks] < end) {
+            decodeNext();
+        }
+        if (index < 0 || index >= charStarts[blocks]) {
+            throw new IndexOutOfBoundsException(
+                "index[%d], length[%d]".formatted(index, charStarts[blocks]));
+        }
+        int i = Arrays.binarySearch(charStarts, 0, blocks + 1, index);
+        // blocks which decode no chars share the start, so the last one of them is taken
+        if (i >= 0) {
+            while (i < blocks && charStarts[i + 1] == index) i++;
+            return i;
+        }
+        return -i - 2;
+    }
+
+
+    /**
+     * Gets the chars of the specified block.
+     * @param block the block
+     * @return the chars
+     */
+    private char[] chars(int block) {
+        char[] chars = cache.get(block);
+        if (chars == null) {
+            chars = decode(block);
+            cache.put(block, chars);
+        }
+        return chars;
+    }
+
+
+    /**
+     * Decodes the next block, to know the start of the block after it.
+     */
+    private void decodeNext() {
+        if (blocks + 2 > byteStarts.length) {
+            int n = byteStarts.length * 2;
+            byteStarts = Arrays.copyOf(byteStarts, n);
+            charStarts = Arrays.copyOf(charStarts, n);
+            rowStarts = Arrays.copyOf(rowStarts, n);
+        }
+        char[] chars = decode(blocks);
+        cache.put(blocks, chars);
+        int rows = 0;
+        for (char c : chars) {
+            if (c == '\n') rows++;
+        }
+        charStarts[blocks + 1] = charStarts[blocks] + chars.length;
+        rowStarts[blocks + 1] = rowStarts[blocks] + rows;
+        blocks++;
+    }
+
+
+    /**
+     * Decodes the specified block, whose start is known.
+     * The bytes of an incomplete char at the end of the block are left to the next block,
+     * and the start of the next block is recorded if it is not yet.
+     * @param block the block
+     * @return the chars decoded
+     */
+    private char[] decode(int block) {
+        byte[] bytes = bytes(block);
+        boolean last = byteStarts[block] + bytes.length == end;
+        var in = ByteBuffer.wrap(bytes);
+        var out = CharBuffer.allocate((int) (bytes.length * (double) decoder.maxCharsPerByte()) + 1);
+        decoder.reset();
+        decoder.decode(in, out, last);
+        if (last) {
+            decoder.flush(out);
+        }
+        if (block == blocks) {
+            byteStarts[block + 1] = byteStarts[block] + in.position();
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+
+    /**
+     * Gets the bytes of the specified block, whose start is known.
+     * @param block the block
+     * @return the bytes
+     */
+    private byte[] bytes(int block) {
+        long start = byteStarts[block];
+        long to = (block < blocks) ? byteStarts[block + 1] : Math.min(end, start + BLOCK_SIZE);
+        return pt.get(start, Math.toIntExact(to - start));
+    }
+
+}
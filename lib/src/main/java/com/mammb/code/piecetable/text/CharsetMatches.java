@@ -16,15 +16,42 @@
 package com.mammb.code.piecetable.text;
 
 import com.mammb.code.piecetable.CharsetMatch;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
 
 /**
  * The CharsetMatch simple implementation collections.
+ * <p>
+ * Each candidate charset is a scan of a state machine driven by lookup tables.
+ * The bytes are classified once by a table shared by all the candidates,
+ * so that registering more candidates costs only a table lookup per byte each.
  * @author Naotsugu Kobayashi
  */
 public abstract class CharsetMatches {
 
+    /** The view of a byte array as long words. */
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /** The mask of the high bits of each byte in a word. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    /** The mask of the low bits of each byte in a word. */
+    private static final long LOW_BITS = 0x0101010101010101L;
+    /** The escape bytes in a word. */
+    private static final long ESCAPES = 0x1B1B1B1B1B1B1B1BL;
+    /** The transition flag of a char matched. */
+    private static final int HIT = 1;
+    /** The transition flag of a byte not matched. */
+    private static final int MISS = 2;
+
 
     private CharsetMatches() {
     }
@@ -34,7 +61,7 @@ public abstract class CharsetMatches {
      * @return a new utf-8 {@link CharsetMatch}
      */
     static CharsetMatch utf8() {
-        return new Utf8Match();
+        return of(StandardCharsets.UTF_8);
     }
 
     /**
@@ -42,107 +69,389 @@ public abstract class CharsetMatches {
      * @return a new ms932 {@link CharsetMatch}
      */
     static CharsetMatch ms932() {
-        return new Ms932Match();
+        return of(Charset.forName("windows-31j"));
     }
 
     /**
-     * The utf-8 {@link CharsetMatch}.
+     * Create a new {@link CharsetMatch} which matches all the charsets supported, in a single pass.
+     * The charsets not available in the runtime are left out.
+     * @return a new {@link CharsetMatch}
      */
-    private static class Utf8Match implements CharsetMatch {
+    static CharsetMatch defaults() {
+        List<Scan> scans = new ArrayList<>();
+        for (Dfa dfa : Dfa.values()) {
+            if (Charset.isSupported(dfa.charsetName)) {
+                scans.add(new DfaScan(dfa, Charset.forName(dfa.charsetName)));
+            }
+        }
+        scans.add(new Utf16Scan());
+        return new Match(scans);
+    }
 
-        private int confidence = 50;
-        private int trail = 0;
-        private int miss = 0;
+    /**
+     * Create a new {@link CharsetMatch} which matches the specified charsets in a single pass.
+     * The candidates are preferred in the order of ISO-2022-JP, UTF-8, EUC-JP, Shift_JIS,
+     * GB18030, windows-1252 and UTF-16 without byte order mark, regardless of the order specified,
+     * as the bytes of a charset can be valid in the charsets after it.
+     * @param candidates the candidate charsets
+     * @return a new {@link CharsetMatch}
+     * @throws IllegalArgumentException if a candidate is not supported
+     */
+    public static CharsetMatch of(Charset... candidates) {
+        List<Scan> scans = new ArrayList<>();
+        for (Charset charset : candidates) {
+            Scan scan = switch (charset.name()) {
+                case "ISO-2022-JP" -> new DfaScan(Dfa.ISO_2022_JP, charset);
+                case "UTF-8" -> new DfaScan(Dfa.UTF_8, charset);
+                case "EUC-JP" -> new DfaScan(Dfa.EUC_JP, charset);
+                case "windows-31j", "Shift_JIS" -> new DfaScan(Dfa.MS932, charset);
+                case "GB18030", "GBK", "GB2312" -> new DfaScan(Dfa.GB18030, charset);
+                case "windows-1252", "ISO-8859-1" -> new DfaScan(Dfa.WINDOWS_1252, charset);
+                case "UTF-16", "UTF-16LE", "UTF-16BE" -> new Utf16Scan();
+                default -> throw new IllegalArgumentException("unsupported charset[%s]".formatted(charset));
+            };
+            if (scans.stream().noneMatch(s -> s.order() == scan.order())) {
+                scans.add(scan);
+            }
+        }
+        scans.sort(Comparator.comparingInt(Scan::order));
+        return new Match(scans);
+    }
 
-        @Override
-        public Result put(byte[] bytes) {
+    /**
+     * Combine the {@link CharsetMatch}es of this collection into one, to be matched in a single pass.
+     * The others are left as they are.
+     * @param matches the {@link CharsetMatch}es not yet put any bytes
+     * @return the {@link CharsetMatch}es combined
+     */
+    static List<CharsetMatch> combine(List<CharsetMatch> matches) {
+        List<CharsetMatch> combined = new ArrayList<>();
+        List<Scan> scans = new ArrayList<>();
+        for (CharsetMatch match : matches) {
+            if (match instanceof Match m) {
+                if (scans.isEmpty()) combined.add(null); // the place of the combined
+                for (Scan scan : m.scans) {
+                    if (scans.stream().noneMatch(s -> s.order() == scan.order())) scans.add(scan);
+                }
+            } else {
+                combined.add(match);
+            }
+        }
+        if (!scans.isEmpty()) {
+            scans.sort(Comparator.comparingInt(Scan::order));
+            combined.set(combined.indexOf(null), new Match(scans));
+        }
+        return combined;
+    }
 
-            for (int i = 0; i < bytes.length; i++) {
+    /**
+     * The {@link CharsetMatch} which runs the scans over the bytes at once.
+     * Runs of ASCII other than NUL and ESC are skipped a word at a time
+     * while no scan is in the middle of a multibyte char,
+     * and scanning stops once the result is decided.
+     * The result is the first scan without a miss, as a miss rules out full confidence.
+     */
+    private static class Match implements CharsetMatch {
 
-                if (confidence <= 0 || confidence >= 100) break;
+        private final Scan[] scans;
+        /** The byte length put so far. */
+        private long offset;
 
-                if (trail == 0) {
-                    byte b = bytes[i];
-                    trail = trail(b);
-                    if (trail == -1) {
-                        confidence = clamp(--confidence);
-                        miss++;
-                    }
-                    if (trail <= 0) continue;
-                }
+        Match(List<Scan> scans) {
+            this.scans = scans.toArray(Scan[]::new);
+        }
 
-                for (;;) {
-                    i++;
-                    if (i >= bytes.length) {
-                        break;
-                    }
-                    byte b = bytes[i];
-                    if ((b & 0xc0) != 0x80) {
-                        confidence = clamp(--confidence);
-                        miss++;
-                        trail = 0;
-                        break;
+        @Override
+        public Result put(byte[] bytes) {
+            int i = 0;
+            while (i < bytes.length && !decided()) {
+                if (!pending()) {
+                    while (i + Long.BYTES <= bytes.length && neutral((long) LONG.get(bytes, i))) {
+                        i += Long.BYTES;
                     }
-                    if (--trail == 0) {
-                        confidence = clamp(++confidence);
-                        break;
+                    while (i < bytes.length && bytes[i] > 0 && bytes[i] != 0x1B) {
+                        i++;
                     }
+                    if (i >= bytes.length) break;
+                }
+                int cls = Dfa.CLASS[Byte.toUnsignedInt(bytes[i])];
+                for (Scan scan : scans) {
+                    scan.next(cls, offset + i);
                 }
+                i++;
             }
-            return new Result(StandardCharsets.UTF_8, clamp(confidence - miss));
+            offset += bytes.length;
+            return result();
         }
 
-        private int trail(byte b) {
-            if ((b & 0x80) == 0x00) {
-                return 0; // 0... ....  ASCII
-            } else if ((b & 0xE0) == 0xC0) {
-                return 1; // 110. ....
-            } else if ((b & 0xF0) == 0xE0) {
-                return 2; // 1110 ....
-            } else if ((b & 0xF8) == 0xF0) {
-                return 3; // 1111 0...
-            } else {
-                System.out.println(Byte.toString(b));
-                return -1;
+        private Result result() {
+            Result result = null;
+            for (Scan scan : scans) {
+                Result r = scan.result();
+                if (scan.miss == 0) return r;
+                if (result == null || r.compareTo(result) > 0) result = r;
+            }
+            return result;
+        }
+
+        private boolean decided() {
+            for (Scan scan : scans) {
+                if (scan.miss == 0) return scan.confidence >= 100;
+            }
+            return true;
+        }
+
+        private boolean pending() {
+            for (Scan scan : scans) {
+                // a scan missed can not be the result, so its state does not matter
+                if (scan.miss == 0 && scan.pending()) return true;
+            }
+            return false;
+        }
+
+        private static boolean neutral(long word) {
+            long esc = word ^ ESCAPES;
+            return ((word | ((word - LOW_BITS) & ~word) | ((esc - LOW_BITS) & ~esc)) & HIGH_BITS) == 0;
+        }
+    }
+
+    /**
+     * The scan of a charset, which is given the class of the bytes one by one.
+     * An ASCII byte other than NUL and ESC outside of a multibyte char must not change the state.
+     */
+    private abstract static class Scan {
+
+        int confidence = 50;
+        int miss = 0;
+
+        abstract void next(int cls, long pos);
+
+        abstract boolean pending();
+
+        abstract Charset charset();
+
+        /**
+         * Get the order of preference.
+         * @return the order of preference
+         */
+        abstract int order();
+
+        void hit() {
+            confidence = clamp(confidence + 1);
+        }
+
+        void miss() {
+            confidence = clamp(confidence - 1);
+            miss++;
+        }
+
+        CharsetMatch.Result result() {
+            return new CharsetMatch.Result(charset(), clamp(confidence - miss));
+        }
+    }
+
+    /**
+     * The {@link Scan} by a {@link Dfa}.
+     */
+    private static class DfaScan extends Scan {
+
+        private final Dfa dfa;
+        private final Charset charset;
+        private int state = 0;
+
+        DfaScan(Dfa dfa, Charset charset) {
+            this.dfa = dfa;
+            this.charset = charset;
+        }
+
+        @Override
+        void next(int cls, long pos) {
+            int t = dfa.table[state * Dfa.CLASSES + cls];
+            state = t >>> 2;
+            if ((t & HIT) != 0) {
+                hit();
+            } else if ((t & MISS) != 0) {
+                miss();
             }
         }
+
+        @Override
+        boolean pending() {
+            return state != 0;
+        }
+
+        @Override
+        Charset charset() {
+            return charset;
+        }
+
+        @Override
+        int order() {
+            return dfa.ordinal();
+        }
     }
 
     /**
-     * The ms932 {@link CharsetMatch}.
+     * The {@link Scan} of UTF-16 without byte order mark.
+     * The byte order is inferred from the position of NUL, which is the high byte of ASCII.
      */
-    private static class Ms932Match implements CharsetMatch {
-        private int confidence = 50;
-        private int trail = 0;
-        private int miss = 0;
+    private static class Utf16Scan extends Scan {
+
+        private long even;
+        private long odd;
+
         @Override
-        public Result put(byte[] bytes) {
-            for (int i = 0; i < bytes.length; i++) {
-                int b = Byte.toUnsignedInt(bytes[i]);
-                if (b == 0x80 || b == 0xa0 || b >= 0xfd) {
-                    // unused
-                    confidence = clamp(--confidence);
-                    miss++;
-                    continue;
+        void next(int cls, long pos) {
+            if (cls != Dfa.CLASS[0]) return;
+            if ((pos & 1) == 0) even++; else odd++;
+            confidence = clamp(50 + (int) Math.min(50, Math.abs(odd - even)));
+        }
+
+        @Override
+        boolean pending() {
+            return false;
+        }
+
+        @Override
+        Charset charset() {
+            return (odd >= even) ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_16BE;
+        }
+
+        @Override
+        int order() {
+            return Dfa.values().length;
+        }
+    }
+
+    /**
+     * The state machine of a charset, in the order of preference.
+     * The transition is given by a function of a state and a byte,
+     * which returns the next state shifted by two, with the flag of {@code HIT} or {@code MISS}.
+     * NUL is taken as a miss, as it is not in a text of these charsets.
+     */
+    private enum Dfa {
+
+        ISO_2022_JP("ISO-2022-JP", 6, (s, b) -> switch (s) {
+            case 0 -> (b == 0x1B) ? 1 << 2 : (b == 0 || b >= 0x80) ? MISS : 0;
+            case 1 -> (b == '$') ? 2 << 2 : (b == '(') ? 3 << 2 : MISS;        // ESC
+            case 2 -> (b == '@' || b == 'B') ? (4 << 2) | HIT : MISS;           // ESC $
+            case 3 -> (b == 'B' || b == 'J') ? HIT : MISS;                      // ESC (
+            case 4 -> (b == 0x1B) ? 1 << 2 : (0x21 <= b && b <= 0x7E) ? 5 << 2 : MISS; // JIS X 0208
+            default -> (0x21 <= b && b <= 0x7E) ? (4 << 2) | HIT : MISS;
+        }),
+
+        UTF_8("UTF-8", 4, (s, b) -> {
+            if (s > 0) { // the trailing bytes remaining
+                return ((b & 0xC0) != 0x80) ? MISS : (s == 1) ? HIT : (s - 1) << 2;
+            } else if (b == 0) {
+                return MISS;
+            } else if ((b & 0x80) == 0x00) {
+                return 0;      // 0... ....  ASCII
+            } else if ((b & 0xE0) == 0xC0) {
+                return 1 << 2; // 110. ....
+            } else if ((b & 0xF0) == 0xE0) {
+                return 2 << 2; // 1110 ....
+            } else if ((b & 0xF8) == 0xF0) {
+                return 3 << 2; // 1111 0...
+            } else {
+                return MISS;
+            }
+        }),
+
+        EUC_JP("EUC-JP", 10, (s, b) -> switch (s) {
+            case 0 -> {
+                if (b == 0) yield MISS;
+                if (b < 0x80) yield 0;
+                if (b == 0x8E) yield 4 << 2; // SS2
+                if (b == 0x8F) yield 5 << 2; // SS3
+                if (b == 0xA3) yield 8 << 2; // the row of digits and latin letters
+                if (b == 0xA8) yield 9 << 2; // the row of box drawings
+                if (b == 0xCF) yield 2 << 2; // the end of JIS level 1
+                if (b == 0xF4) yield 3 << 2; // the end of JIS level 2
+                if ((0xA9 <= b && b <= 0xAF && b != 0xAD) || (0xF5 <= b && b <= 0xFE)) {
+                    yield (7 << 2) | MISS;   // unassigned rows, the trail is skipped
                 }
-                if ((0x81 <= b && b <= 0x9f) || b >= 0xe0) {
-                    // double width
-                    trail = 1;
-                    if (i + 1 >= bytes.length) {
-                        break;
-                    }
+                yield (0xA1 <= b && b <= 0xFE) ? 1 << 2 : MISS;
+            }
+            case 1, 6 -> (0xA1 <= b && b <= 0xFE) ? HIT : MISS;
+            case 2 -> (0xA1 <= b && b <= 0xD3) ? HIT : MISS;
+            case 3 -> (0xA1 <= b && b <= 0xA6) ? HIT : MISS;
+            case 4 -> (0xA1 <= b && b <= 0xDF) ? HIT : MISS;
+            case 5 -> (0xA1 <= b && b <= 0xFE) ? 6 << 2 : MISS;
+            case 8 -> ((0xB0 <= b && b <= 0xB9) || (0xC1 <= b && b <= 0xDA) || (0xE1 <= b && b <= 0xFA)) ? HIT : MISS;
+            case 9 -> (0xA1 <= b && b <= 0xC0) ? HIT : MISS;
+            default -> 0;
+        }),
+
+        MS932("windows-31j", 4, (s, b) -> switch (s) {
+            case 0 -> {
+                if (b == 0 || b == 0x80 || b == 0xA0 || b >= 0xFD) yield MISS; // unused
+                if (b == 0x85 || b == 0x86 || b == 0xEB || b == 0xEC || (0xEF <= b && b <= 0xF9)) {
+                    yield (3 << 2) | MISS; // unassigned or user defined rows, the trail is skipped
+                }
+                if (b == 0xEA) yield 2 << 2; // the end of JIS level 2
+                yield ((0x81 <= b && b <= 0x9F) || b >= 0xE0) ? 1 << 2 : 0; // double width
+            }
+            case 1 -> ((0x40 <= b && b <= 0x7E) || (0x80 <= b && b <= 0xFC)) ? HIT : MISS;
+            case 2 -> ((0x40 <= b && b <= 0x7E) || (0x80 <= b && b <= 0xA4)) ? HIT : MISS;
+            default -> 0;
+        }),
+
+        GB18030("GB18030", 4, (s, b) -> switch (s) {
+            case 0 -> (b == 0 || b == 0x80 || b == 0xFF) ? MISS : (b >= 0x81) ? 1 << 2 : 0;
+            case 1 -> (0x30 <= b && b <= 0x39) ? 2 << 2   // four bytes
+                : ((0x40 <= b && b <= 0x7E) || (0x80 <= b && b <= 0xFE)) ? HIT : MISS;
+            case 2 -> (0x81 <= b && b <= 0xFE) ? 3 << 2 : MISS;
+            default -> (0x30 <= b && b <= 0x39) ? HIT : MISS;
+        }),
+
+        WINDOWS_1252("windows-1252", 1, (s, b) -> switch (b) {
+            case 0, 0x81, 0x8D, 0x8F, 0x90, 0x9D -> MISS; // undefined
+            case 0xD7, 0xF7 -> 0;                         // multiplication and division signs
+            default -> (b >= 0xC0) ? HIT : 0;             // letters with diacritics
+        }),
+        ;
 
-                    int s = Byte.toUnsignedInt(bytes[++i]);
-                    if ((0x40 <= s && s <= 0x7e) || (0x80 <= s && s <= 0xfc)) {
-                        confidence = clamp(++confidence);
-                    } else {
-                        confidence = clamp(--confidence);
-                        miss++;
+        /** The classes of bytes, in which the bytes behave the same in all the state machines. */
+        static final byte[] CLASS = new byte[256];
+        /** The number of the classes. */
+        static final int CLASSES;
+
+        static {
+            Map<List<Integer>, Integer> classes = new HashMap<>();
+            int[] representatives = new int[256];
+            for (int b = 0; b < 256; b++) {
+                List<Integer> transitions = new ArrayList<>();
+                for (Dfa dfa : values()) {
+                    for (int s = 0; s < dfa.states; s++) {
+                        transitions.add(dfa.step.applyAsInt(s, b));
+                    }
+                }
+                int cls = classes.computeIfAbsent(transitions, k -> classes.size());
+                CLASS[b] = (byte) cls;
+                representatives[cls] = b;
+            }
+            CLASSES = classes.size();
+            for (Dfa dfa : values()) {
+                dfa.table = new byte[dfa.states * CLASSES];
+                for (int s = 0; s < dfa.states; s++) {
+                    for (int cls = 0; cls < CLASSES; cls++) {
+                        dfa.table[s * CLASSES + cls] = (byte) dfa.step.applyAsInt(s, representatives[cls]);
                     }
-                    trail = 0;
                 }
             }
-            return new Result(Charset.forName("windows-31j"), clamp(confidence - miss));
+        }
+
+        final String charsetName;
+        final int states;
+        final IntBinaryOperator step;
+        /** The transition table indexed by the state and the class of byte. */
+        byte[] table;
+
+        Dfa(String charsetName, int states, IntBinaryOperator step) {
+            this.charsetName = charsetName;
+            this.states = states;
+            this.step = step;
         }
     }
 
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * The map of the char columns to the byte columns of a row.
+ * <pre>
+ *   chars  |0      |256      |512    |768 ...
+ *   bytes  |0      |301      |712    |980 ...
+ * </pre>
+ * The checkpoints are taken at intervals of chars by decoding the row once,
+ * and a char column is translated by decoding from the checkpoint before it.
+ * Edits in the row shift the checkpoints after them, instead of decoding the row again.
+ * The row is read in windows of bytes, so a very long row is never held as a whole.
+ * @author Naotsugu Kobayashi
+ */
+class ColumnMap {
+
+    /** The number of chars between the checkpoints. */
+    static final int INTERVAL = 256;
+    /** The max number of chars between the checkpoints, over which the map is to be built again. */
+    private static final int MAX_INTERVAL = INTERVAL * 8;
+    /** The byte length of the window of the row to be read at a time. */
+    private static final int WINDOW = 1024 * 64;
+
+    /** The char columns of the checkpoints. */
+    private int[] chars;
+    /** The byte columns of the checkpoints. */
+    private int[] bytes;
+    /** The number of the checkpoints. */
+    private int size;
+    /** The number of chars of the row. */
+    private int length;
+
+
+    /**
+     * The reader of the bytes of a row.
+     */
+    interface RowBytes {
+        /**
+         * Get the bytes of the row.
+         * @param rawCol the byte column
+         * @param rawLen the byte length
+         * @return the bytes
+         */
+        byte[] get(int rawCol, int rawLen);
+    }
+
+
+    /**
+     * Constructor.
+     * @param capacity the initial capacity of the checkpoints
+     */
+    private ColumnMap(int capacity) {
+        this.chars = new int[Math.max(1, capacity)];
+        this.bytes = new int[Math.max(1, capacity)];
+        add(0, 0);
+    }
+
+
+    /**
+     * Create a new {@link ColumnMap} of the row.
+     * @param row the bytes of the row
+     * @param charset the charset of the row
+     * @return a new {@link ColumnMap}
+     */
+    static ColumnMap of(byte[] row, Charset charset) {
+        return of(row.length, (rawCol, rawLen) -> Arrays.copyOfRange(row, rawCol, rawCol + rawLen), charset);
+    }
+
+
+    /**
+     * Create a new {@link ColumnMap} of the row, reading the row window by window.
+     * @param length the byte length of the row
+     * @param row the reader of the bytes of the row
+     * @param charset the charset of the row
+     * @return a new {@link ColumnMap}
+     */
+    static ColumnMap of(int length, RowBytes row, Charset charset) {
+        var map = new ColumnMap(length / INTERVAL + 1);
+        if (stateful(charset)) {
+            map.length = Integer.MAX_VALUE;
+            return map;
+        }
+        CharsetDecoder decoder = decoder(charset);
+        CharBuffer out = CharBuffer.allocate(INTERVAL);
+        int chars = 0;
+        for (int from = 0; ; ) {
+            int len = Math.min(length - from, WINDOW);
+            boolean end = (from + len == length);
+            ByteBuffer in = ByteBuffer.wrap(row.get(from, len));
+            while (decoder.decode(in, out, end).isOverflow()) {
+                chars += out.position();
+                map.add(chars, from + in.position());
+                out.clear();
+            }
+            if (end) {
+                break;
+            }
+            // a code point split at the end of the window is read again with the next window
+            from += in.position();
+        }
+        map.length = chars + out.position();
+        return map;
+    }
+
+
+    /**
+     * Get whether the charset is stateful, in which case a decoder
+     * can not start from a checkpoint in the middle of an escape sequence.
+     * The map of the row of such a charset has only the checkpoint at the head.
+     * @param charset the charset
+     * @return {@code true}, if the charset is stateful
+     */
+    static boolean stateful(Charset charset) {
+        return charset.name().startsWith("ISO-2022");
+    }
+
+
+    /**
+     * Get the number of chars of the row.
+     * @return the number of chars of the row, or {@link Integer#MAX_VALUE} if the charset is stateful
+     */
+    int length() {
+        return length;
+    }
+
+
+    /**
+     * Get the byte column of the char column.
+     * @param col the char column
+     * @param length the byte length of the row
+     * @param row the reader of the bytes of the row
+     * @param charset the charset of the row
+     * @return the byte column
+     */
+    int byteCol(int col, int length, RowBytes row, Charset charset) {
+        int i = floor(col);
+        int from = bytes[i];
+        int n = col - chars[i];
+        if (n <= 0) {
+            return from;
+        }
+        CharsetDecoder decoder = decoder(charset);
+        CharBuffer out = CharBuffer.allocate(n);
+        int len = Math.min(length - from, n * 4);
+        for (;;) {
+            ByteBuffer in = ByteBuffer.wrap(row.get(from, len));
+            boolean end = (len == length - from);
+            CoderResult result = decoder.reset().decode(in, out.clear(), end);
+            if (result.isOverflow() || end) {
+                // overflow before filling up, if the column is in a surrogate pair
+                return from + in.position();
+            }
+            len = Math.min(length - from, len * 2);
+        }
+    }
+
+
+    /**
+     * Shifts the checkpoints for the insertion into the row.
+     * @param col the char column inserted at
+     * @param chars the number of chars inserted
+     * @param bytes the byte length inserted
+     * @return {@code false}, if the map is to be built again, as the checkpoints around are too far apart
+     */
+    boolean insert(int col, int chars, int bytes) {
+        int i = size - 1;
+        for (; i >= 0 && this.chars[i] > col; i--) {
+            this.chars[i] += chars;
+            this.bytes[i] += bytes;
+        }
+        length = (length == Integer.MAX_VALUE) ? length : length + chars;
+        return narrow(i);
+    }
+
+
+    /**
+     * Removes and shifts the checkpoints for the deletion from the row.
+     * @param col the char column deleted from
+     * @param chars the number of chars deleted
+     * @param bytes the byte length deleted
+     * @return {@code false}, if the map is to be built again, as the checkpoints around are too far apart
+     */
+    boolean delete(int col, int chars, int bytes) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (this.chars[i] <= col) {
+                n++;
+            } else if (this.chars[i] > col + chars) {
+                this.chars[n] = this.chars[i] - chars;
+                this.bytes[n] = this.bytes[i] - bytes;
+                n++;
+            }
+        }
+        size = n;
+        length = (length == Integer.MAX_VALUE) ? length : length - chars;
+        return narrow(floor(col));
+    }
+
+
+    /**
+     * Get whether the checkpoint and the next one, or the end of the row, are close enough.
+     * @param i the index of the checkpoint
+     * @return {@code true}, if the checkpoints are close enough
+     */
+    private boolean narrow(int i) {
+        int next = (i + 1 < size) ? chars[i + 1] : length;
+        return next - chars[i] <= MAX_INTERVAL;
+    }
+
+
+    private void add(int col, int rawCol) {
+        if (size == chars.length) {
+            chars = Arrays.copyOf(chars, size * 2);
+            bytes = Arrays.copyOf(bytes, size * 2);
+        }
+        chars[size] = col;
+        bytes[size] = rawCol;
+        size++;
+    }
+
+
+    /**
+     * Get the index of the last checkpoint at or before the char column.
+     * @param col the char column
+     * @return the index of the checkpoint
+     */
+    private int floor(int col) {
+        int i = Arrays.binarySearch(chars, 0, size, col);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+
+    private static CharsetDecoder decoder(Charset charset) {
+        // the same replacement as decoding into a string
+        return charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+}
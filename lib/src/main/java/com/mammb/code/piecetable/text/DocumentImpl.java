@@ -15,16 +15,42 @@
  */
 package com.mammb.code.piecetable.text;
 
+import com.mammb.code.piecetable.Change;
 import com.mammb.code.piecetable.CharsetMatch;
 import com.mammb.code.piecetable.Document;
+import com.mammb.code.piecetable.FindOption;
 import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.LineEnding;
+import com.mammb.code.piecetable.Markers;
 import com.mammb.code.piecetable.PieceTable;
+import com.mammb.code.piecetable.Progress;
+import com.mammb.code.piecetable.Viewport;
+import com.mammb.code.piecetable.core.ChannelBuffer;
+import com.mammb.code.piecetable.core.PieceTableImpl;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * The document implementation.
@@ -32,6 +58,15 @@ import java.util.Optional;
  */
 public class DocumentImpl implements Document {
 
+    /** The number of rows of the decoded row cache. */
+    private static final int ROW_CACHE_SIZE = 1024;
+    /** The max length of a row to be cached, as a long row is rarely read as a whole again. */
+    private static final int MAX_CACHED_ROW_LENGTH = 1024 * 16;
+    /** The byte length of a row, over which the columns are translated by a {@link ColumnMap}. */
+    private static final int LONG_ROW_LENGTH = 1024 * 4;
+    /** The number of rows of the column map cache. */
+    private static final int COLUMN_MAP_CACHE_SIZE = 64;
+
     /** The {@link PieceTable}. */
     private PieceTable pt;
 
@@ -47,6 +82,37 @@ public class DocumentImpl implements Document {
     /** The byte order mark. */
     private byte[] bom;
 
+    /** Whether the ASCII bytes are decoded as is by the charset, so the ASCII rows are not decoded. */
+    private boolean asciiCompatible;
+
+    /** The {@link Reader} building the index in the background, or {@code null}. */
+    private Reader reader;
+
+    /** The {@link NgramIndex} for searches, or {@code null} if not enabled. */
+    private NgramIndex ngrams;
+
+    /** The {@link MarkerTree} of the markers, or {@code null} if no marker is used. */
+    private MarkerTree markers;
+
+    /** The cache of the decoded rows. */
+    private final RowCache<String> rowCache = RowCache.of(ROW_CACHE_SIZE,
+        text -> text.length() <= MAX_CACHED_ROW_LENGTH);
+
+    /** The cache of the column maps of the long rows. */
+    private final RowCache<ColumnMap> columnMaps = RowCache.of(COLUMN_MAP_CACHE_SIZE);
+
+    /** The decoder of rows into a destination, created on demand. */
+    private RowDecoder rowDecoder;
+
+    /** The modification count, changed by every edit, which invalidates the viewports. */
+    private long modCount;
+
+    /** The listeners of the changes. */
+    private final List<Consumer<List<Change>>> listeners = new CopyOnWriteArrayList<>();
+
+    /** The changes of the batch running, or {@code null} if not in a batch. */
+    private List<Change> changes;
+
 
     /**
      * Constructor.
@@ -65,7 +131,9 @@ public class DocumentImpl implements Document {
             this.index = reader.index();
             this.charset = reader.charset();
             this.bom = reader.bom();
+            this.reader = reader.completed() ? null : reader;
         }
+        this.asciiCompatible = asciiCompatible(charset);
     }
 
 
@@ -84,7 +152,7 @@ public class DocumentImpl implements Document {
      * @return a new {@link Document}
      */
     public static DocumentImpl of(Path path) {
-        return new DocumentImpl(PieceTable.of(path), path, Reader.of(path));
+        return open(path, Reader::of);
     }
 
 
@@ -95,7 +163,7 @@ public class DocumentImpl implements Document {
      * @return a new {@link Document}
      */
     public static DocumentImpl of(Path path, Charset charset) {
-        return new DocumentImpl(PieceTable.of(path), path, Reader.of(path, charset));
+        return open(path, ch -> Reader.of(ch, CharsetMatch.of(charset)));
     }
 
 
@@ -106,70 +174,510 @@ public class DocumentImpl implements Document {
      * @return a new {@link Document}
      */
     public static DocumentImpl of(Path path, CharsetMatch... charsetMatches) {
-        return new DocumentImpl(PieceTable.of(path), path, Reader.of(path,charsetMatches));
+        return open(path, ch -> Reader.of(ch, charsetMatches));
+    }
+
+
+    /**
+     * Create a new {@link Document}, which reuses the row index cached in the specified directory.
+     * @param path the {@link Path} of the document
+     * @param cacheDir the directory of the row index cache
+     * @return a new {@link Document}
+     */
+    public static DocumentImpl ofCached(Path path, Path cacheDir) {
+        return open(path, ch -> IndexCache.of(cacheDir).read(path, ch));
+    }
+
+
+    /**
+     * Create a new {@link Document}, which builds the row index in the background.
+     * @param path the {@link Path} of the document
+     * @param listener the progress listener
+     * @return a new {@link Document}
+     */
+    public static DocumentImpl ofAsync(Path path, Consumer<Progress> listener) {
+        return open(path, ch -> Reader.ofAsync(ch, listener));
+    }
+
+
+    /**
+     * Opens the file once, and shares the channel between the piece table and the reader,
+     * so that the pages read while indexing are the ones read later by the piece table.
+     * @param path the {@link Path} of the document
+     * @param reader the function to read the channel
+     * @return a new {@link Document}
+     */
+    private static DocumentImpl open(Path path, Function<FileChannel, Reader> reader) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            var pt = PieceTableImpl.of(ChannelBuffer.of(channel));
+            return new DocumentImpl(pt, path, reader.apply(channel));
+        } catch (RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException ce) {
+                e.addSuppressed(ce);
+            }
+            throw e;
+        }
     }
 
 
     @Override
     public void insert(int row, int col, CharSequence cs) {
-        col = getText(row).toString().substring(0, col).getBytes(charset).length;
-        insert(row, col, cs.toString().getBytes(charset));
+        byte[] bytes = cs.toString().getBytes(charset);
+        int rawCol = rawCol(row, col);
+        ColumnMap map = columnMaps.remove(row);
+        int rows = index.rowSize();
+        insert(row, rawCol, bytes);
+        if (map != null && rows == index.rowSize() && map.insert(col, cs.length(), bytes.length)) {
+            columnMaps.put(row, map);
+        }
     }
 
     @Override
     public void delete(int row, int col, CharSequence cs) {
-        col = getText(row).toString().substring(0, col).getBytes(charset).length;
-        delete(row, col, cs.toString().getBytes(charset).length);
+        int len = cs.toString().getBytes(charset).length;
+        int rawCol = rawCol(row, col);
+        ColumnMap map = columnMaps.remove(row);
+        int rows = index.rowSize();
+        delete(row, rawCol, len);
+        if (map != null && rows == index.rowSize() && map.delete(col, cs.length(), len)) {
+            columnMaps.put(row, map);
+        }
+    }
+
+    @Override
+    public List<Found> replace(List<Found> founds, List<? extends CharSequence> texts) {
+        awaitAll();
+        modCount++;
+        int n = founds.size();
+        int unit = index.unit();
+        var scanner = NewlineScanner.of(charset);
+        long[] positions = new long[n];
+        int[] lengths = new int[n];
+        byte[][] bytes = new byte[n][];
+        Map<String, byte[]> encoded = new HashMap<>();
+        long[] rowStarts = index.get(founds.stream().mapToInt(Found::row).toArray());
+        for (int i = 0; i < n; i++) {
+            Found found = founds.get(i);
+            positions[i] = rowStarts[i] + found.col() + ((found.row() == 0) ? bom.length : 0);
+            lengths[i] = found.len();
+            bytes[i] = encoded.computeIfAbsent(texts.get(i).toString(), str -> str.getBytes(charset));
+        }
+        if (ngrams != null) {
+            for (int i = n - 1; i >= 0; i--) {
+                ngrams.delete(positions[i], lengths[i]);
+                ngrams.insert(positions[i], bytes[i].length);
+            }
+        }
+        if (markers != null) {
+            for (int i = n - 1; i >= 0; i--) {
+                markers.delete(positions[i], lengths[i]);
+                markers.insert(positions[i], bytes[i].length);
+            }
+        }
+        int[] removedRows = new int[listeners.isEmpty() ? 0 : n];
+        for (int i = 0; i < removedRows.length; i++) {
+            removedRows[i] = index.row(positions[i] + lengths[i]) - founds.get(i).row();
+        }
+
+        pt.replace(positions, lengths, bytes);
+        rowCache.clear();
+        columnMaps.clear();
+        int[] rows = new int[n];
+        int[] cols = new int[n];
+        index.replace(positions, lengths, bytes, rows, cols);
+
+        List<Found> replaced = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if ((bytes[i].length == 0 && lengths[i] > 0) || scanner.indexOf(bytes[i], 0, unit) == 0) {
+                // a line feed may be brought together with a carriage return before the range
+                refreshCrlf(rows[i]);
+            }
+            replaced.add(new Found(rows[i], cols[i] - ((rows[i] == 0) ? bom.length : 0), bytes[i].length));
+        }
+        if (!listeners.isEmpty()) {
+            // each change is relative to the document after the changes before it
+            List<Change> list = new ArrayList<>(n);
+            long shift = 0;
+            for (int i = 0; i < n; i++) {
+                int inserted = newlines(bytes[i], scanner, unit);
+                list.add(new Change(positions[i] + shift, lengths[i], bytes[i].length,
+                    rows[i], rows[i] + inserted, inserted - removedRows[i]));
+                shift += bytes[i].length - lengths[i];
+            }
+            fire(list);
+        }
+        return replaced;
+    }
+
+    @Override
+    public List<Found> replaceAll(CharSequence cs, CharSequence replacement, FindOption... options) {
+        List<Found> founds = findAll(cs, options);
+        return replace(founds, Collections.nCopies(founds.size(), replacement));
     }
 
     @Override
     public CharSequence getText(int row) {
-        return new String(get(row), charset);
+        return rowCache.get(row, r -> decode(r, get(r)));
+    }
+
+    @Override
+    public void getText(int row, Appendable dst) {
+        String cached = rowCache.peek(row);
+        if (cached != null) {
+            try {
+                dst.append(cached);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        // not cached, so that a bulk read does not evict the rows on the screen
+        await(row);
+        if (rowDecoder == null) {
+            rowDecoder = RowDecoder.of(charset);
+        }
+        rowDecoder.decode(pt, index.get(row) + ((row == 0) ? bom.length : 0), rowLength(row),
+            asciiCompatible && index.ascii(row), dst);
     }
 
     @Override
     public void insert(int row, int rawCol, byte[] bytes) {
+        await(row);
+        modCount++;
         rawCol += (row == 0) ? bom.length : 0;
-        pt.insert(index.get(row) + rawCol, bytes);
+        long pos = index.get(row) + rawCol;
+        pt.insert(pos, bytes);
+        if (ngrams != null) {
+            ngrams.insert(pos, bytes.length);
+        }
+        if (markers != null) {
+            markers.insert(pos, bytes.length);
+        }
+        int rows = index.rowSize();
         index.insert(row, rawCol, bytes);
+        int delta = index.rowSize() - rows;
+        rowCache.insert(row, delta);
+        columnMaps.insert(row, delta);
+        refreshCrlf(row);
+        refreshCrlf(row + delta);
+        if (!listeners.isEmpty()) {
+            fire(List.of(new Change(pos, 0, bytes.length, row, row + delta, delta)));
+        }
     }
 
 
     @Override
     public void delete(int row, int rawCol, int rawLen) {
+        await(row);
         rawCol += (row == 0) ? bom.length : 0;
-        pt.delete(index.get(row) + rawCol, rawLen);
+        long pos = index.get(row) + rawCol;
+        await(row, pos + rawLen);
+        modCount++;
+        pt.delete(pos, rawLen);
+        if (ngrams != null) {
+            ngrams.delete(pos, rawLen);
+        }
+        if (markers != null) {
+            markers.delete(pos, rawLen);
+        }
+        int rows = index.rowSize();
         index.delete(row, rawCol, rawLen);
+        rowCache.delete(row, rows - index.rowSize());
+        columnMaps.delete(row, rows - index.rowSize());
+        refreshCrlf(row);
+        if (!listeners.isEmpty()) {
+            fire(List.of(new Change(pos, rawLen, 0, row, row, index.rowSize() - rows)));
+        }
+    }
+
+    @Override
+    public CharSequence getTextRange(int row, int col, int len) {
+        if (col < 0 || len < 0) {
+            throw new IndexOutOfBoundsException("col[%d], len[%d]".formatted(col, len));
+        }
+        String cached = rowCache.peek(row);
+        if (cached != null) {
+            return substring(cached, col, len);
+        }
+        await(row);
+        int length = rowLength(row);
+        if (asciiCompatible && index.ascii(row)) {
+            // a char is a byte in the ASCII row
+            int from = Math.min(col, length);
+            return new String(get(row, from, Math.min(len, length - from)), StandardCharsets.ISO_8859_1);
+        }
+        if (length <= LONG_ROW_LENGTH || ColumnMap.stateful(charset)) {
+            return substring(getText(row).toString(), col, len);
+        }
+        ColumnMap map = columnMap(row, length);
+        int end = (int) Math.min(map.length(), (long) col + len);
+        if (col >= end) {
+            return "";
+        }
+        ColumnMap.RowBytes bytes = (rawCol, rawLen) -> get(row, rawCol, rawLen);
+        // a column in the middle of a surrogate pair is translated into the head of the pair,
+        // so the whole pair is decoded, and the half out of the range is cut off
+        int from = map.byteCol(col, length, bytes, charset);
+        boolean splitHead = col > 0 && map.byteCol(col - 1, length, bytes, charset) == from;
+        int to = map.byteCol(end, length, bytes, charset);
+        boolean splitTail = end < map.length() && map.byteCol(end - 1, length, bytes, charset) == to;
+        if (splitTail) {
+            to = map.byteCol(end + 1, length, bytes, charset);
+        }
+        String text = new String(get(row, from, to - from), charset);
+        return text.substring(splitHead ? 1 : 0, text.length() - (splitTail ? 1 : 0));
+    }
+
+    @Override
+    public int textLength(int row) {
+        String cached = rowCache.peek(row);
+        if (cached != null) {
+            return cached.length();
+        }
+        await(row);
+        int length = rowLength(row);
+        if (asciiCompatible && index.ascii(row)) {
+            return length;
+        }
+        if (length <= LONG_ROW_LENGTH || ColumnMap.stateful(charset)) {
+            return getText(row).length();
+        }
+        return columnMap(row, length).length();
     }
 
     @Override
     public byte[] get(int row, int rawCol, int rawLen) {
+        await(row);
         rawCol += (row == 0) ? bom.length : 0;
         return pt.get(index.get(row) + rawCol, rawLen);
     }
 
     @Override
     public byte[] get(int row) {
-        long col = index.get(row);
-        col += (row == 0) ? bom.length : 0;
-        int len = Math.toIntExact(index.get(row + 1) - col);
-        return pt.get(col, len);
+        await(row);
+        return pt.get(index.get(row) + ((row == 0) ? bom.length : 0), rowLength(row));
+    }
+
+    @Override
+    public byte[] get(int startRow, int endRow) {
+        if (startRow < 0 || endRow < startRow) {
+            throw new IndexOutOfBoundsException("startRow[%d], endRow[%d]".formatted(startRow, endRow));
+        }
+        if (startRow == endRow) {
+            return new byte[0];
+        }
+        await(endRow - 1);
+        if (endRow > index.rowSize()) {
+            throw new IndexOutOfBoundsException("endRow[%d], rows[%d]".formatted(endRow, index.rowSize()));
+        }
+        long from = index.get(startRow) + ((startRow == 0) ? bom.length : 0);
+        long to = index.get(endRow);
+        if (to - from > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("startRow[%d], endRow[%d], length[%d]".formatted(startRow, endRow, to - from));
+        }
+        return pt.get(from, (int) (to - from));
+    }
+
+    @Override
+    public CharSequence getText(int startRow, int endRow) {
+        byte[] bytes = get(startRow, endRow);
+        return (asciiCompatible && NewlineScanner.ascii(bytes, 0, bytes.length))
+            ? new String(bytes, StandardCharsets.ISO_8859_1)
+            : new String(bytes, charset);
     }
 
     @Override
     public CharSequence getText(int row, int rawCol, int rawLen) {
-        return new String(get(row, rawCol, rawLen), charset);
+        return decode(row, get(row, rawCol, rawLen));
+    }
+
+    @Override
+    public List<Found> findAll(CharSequence cs, FindOption... options) {
+        awaitAll();
+        List<Found> founds = new ArrayList<>();
+        if (cs.isEmpty()) {
+            return founds;
+        }
+        if (indexable(options)) {
+            long[][] ranges = ngrams.candidates(pt, cs.toString().getBytes(charset));
+            Searcher.of(pt, charset, bom.length, cs, options).search(ranges[0], ranges[1], bom.length,
+                index::row, index::get, founds::add);
+        } else {
+            Searcher.of(pt.snapshot(), charset, bom.length, cs, options).searchParallel(0, 0, bom.length, founds::add);
+        }
+        return founds;
+    }
+
+    @Override
+    public CompletableFuture<List<Found>> findAllAsync(CharSequence cs,
+            BiConsumer<List<Found>, Progress> listener, FindOption... options) {
+        var snapshot = pt.snapshot();
+        var searcher = cs.isEmpty() ? null : Searcher.of(snapshot, charset, bom.length, cs, options);
+        int bomLength = bom.length;
+        BiConsumer<List<Found>, Progress> callback = (listener == null) ? (founds, progress) -> { } : listener;
+        var future = new CompletableFuture<List<Found>>();
+        Thread.ofVirtual().name("piecetable-search").start(() -> {
+            try {
+                future.complete((searcher == null)
+                    ? new ArrayList<>()
+                    : searcher.search(0, 0, bomLength, callback, future::isDone));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public Stream<Found> find(CharSequence cs, FindOption... options) {
+        awaitAll();
+        return search(pt.snapshot(), cs, 0, 0, options);
+    }
+
+    @Override
+    public Flow.Publisher<Found> findPublisher(CharSequence cs) {
+        awaitAll();
+        var snapshot = pt.snapshot();
+        byte[] str = cs.toString().getBytes(charset);
+        Charset charset = this.charset;
+        int bomLength = bom.length;
+        return new FoundPublisher(() -> (str.length == 0)
+            ? Collections.emptyIterator()
+            : Searcher.of(snapshot, charset, bomLength, str).stream(0, 0, bomLength).iterator());
+    }
+
+    @Override
+    public List<Found> findAll(Pattern pattern) {
+        awaitAll();
+        List<Found> founds = new ArrayList<>();
+        if (ngrams != null && ngrams.ready() && NgramIndex.literal(pattern)
+                .map(literal -> ngrams.candidates(pt, literal.getBytes(charset))[0].length == 0)
+                .orElse(false)) {
+            // no block contains the literal which any match contains
+            return founds;
+        }
+        var snapshot = pt.snapshot();
+        for (int startRow = 0, rows = index.rowSize(); startRow < rows; ) {
+            int endRow = segmentEnd(startRow, rows);
+            var view = view(snapshot, startRow, endRow);
+            Matcher matcher = pattern.matcher(view);
+            while (matcher.find()) {
+                int row = startRow + view.row(matcher.start());
+                long pos = view.position(matcher.start());
+                long rowStart = index.get(row) + ((row == 0) ? bom.length : 0);
+                founds.add(new Found(row,
+                    Math.toIntExact(pos - rowStart),
+                    Math.toIntExact(view.position(matcher.end()) - pos)));
+            }
+            startRow = endRow;
+        }
+        return founds;
+    }
+
+    @Override
+    public CharSequence charSequence(int startRow, int endRow) {
+        awaitAll();
+        return view(pt.snapshot(), startRow, endRow);
+    }
+
+    @Override
+    public void addChangeListener(Consumer<List<Change>> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<List<Change>> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void batch(Runnable edits) {
+        if (changes != null) {
+            // the changes are reported by the outermost batch
+            edits.run();
+            return;
+        }
+        changes = new ArrayList<>();
+        try {
+            edits.run();
+        } finally {
+            List<Change> list = changes;
+            changes = null;
+            if (!list.isEmpty()) {
+                fire(list);
+            }
+        }
+    }
+
+    @Override
+    public Viewport viewport(int size, int margin) {
+        return ViewportImpl.of(new ViewportImpl.Source() {
+            @Override
+            public int rows() {
+                return DocumentImpl.this.rows();
+            }
+            @Override
+            public long modCount() {
+                return modCount;
+            }
+            @Override
+            public Supplier<List<String>> read(int startRow, int endRow, boolean await) {
+                return readRows(startRow, endRow, await);
+            }
+        }, size, margin);
+    }
+
+    @Override
+    public Markers markers() {
+        if (markers == null) {
+            markers = MarkerTree.of(new MarkerTree.Rows() {
+                @Override
+                public long start(int row) {
+                    await(row);
+                    return index.get(row) + ((row == 0) ? bom.length : 0);
+                }
+                @Override
+                public int row(long pos) {
+                    awaitAll();
+                    return index.row(pos);
+                }
+                @Override
+                public int size() {
+                    return rows();
+                }
+            });
+        }
+        return markers;
     }
 
     @Override
-    public List<Found> findAll(CharSequence cs) {
-        return search(cs, 0, 0, Short.MAX_VALUE);
+    public Optional<Found> findNext(CharSequence cs, int row, int col, FindOption... options) {
+        col = rawCol(row, col);
+        awaitAll();
+        if (!cs.isEmpty() && indexable(options)) {
+            long[][] ranges = ngrams.candidates(pt, cs.toString().getBytes(charset));
+            Found[] found = new Found[1];
+            long from = index.get(row) + col + ((row == 0) ? bom.length : 0);
+            Searcher.of(pt, charset, bom.length, cs, options).search(ranges[0], ranges[1], from,
+                index::row, index::get, f -> { found[0] = f; return false; });
+            return Optional.ofNullable(found[0]);
+        }
+        return search(pt, cs, row, col, options).findFirst();
     }
 
     @Override
-    public Optional<Found> findNext(CharSequence cs, int row, int col) {
-        col = getText(row).toString().substring(0, col).getBytes().length;
-        return search(cs, row, col, Short.MAX_VALUE).stream().findFirst();
+    public void enableSearchIndex() {
+        if (ngrams == null) {
+            ngrams = NgramIndex.of(pt.snapshot());
+        }
     }
 
     @Override
@@ -178,6 +686,41 @@ public class DocumentImpl implements Document {
     }
 
 
+    @Override
+    public int rawContentLength(int row) {
+        await(row);
+        return index.contentLength(row) - ((row == 0) ? bom.length : 0);
+    }
+
+
+    @Override
+    public LineEnding lineEnding(int row) {
+        await(row);
+        return index.lineEnding(row);
+    }
+
+
+    @Override
+    public LineEnding lineEnding() {
+        awaitAll();
+        return index.lineEnding();
+    }
+
+
+    @Override
+    public boolean indexCompleted() {
+        return reader == null || reader.completed();
+    }
+
+
+    @Override
+    public void cancelIndexing() {
+        if (reader != null) {
+            reader.cancel();
+        }
+    }
+
+
     @Override
     public long rawSize() {
         return pt.length() - bom.length;
@@ -198,42 +741,287 @@ public class DocumentImpl implements Document {
 
     @Override
     public void save(Path path) {
+        // the rest of the original file is read before it is overwritten
+        awaitAll();
+        // the snapshots read by the viewports are not valid after saved
+        modCount++;
         pt.save(path);
     }
 
 
-    private List<Found> search(CharSequence cs, int fromRow, int fromCol, int maxFound) {
+    /**
+     * Get the cache of the decoded rows.
+     * @return the cache of the decoded rows
+     */
+    RowCache<String> rowCache() {
+        return rowCache;
+    }
 
-        List<Found> founds = new ArrayList<>();
-        byte[] str = cs.toString().getBytes(charset);
-        byte first = str[0];
-
-        for (int row = fromRow; row < rows(); row++) {
-            byte[] value = get(row);
-            int max = value.length - str.length;
-            int colOffset = (row == fromRow) ? fromCol : 0;
-            for (int col = colOffset; col <= max; col++) {
-                // look for first character
-                if (value[col] != first) {
-                    while (++col <= max && value[col] != first);
-                }
-                // found first character, now look at the rest of value
-                if (col <= max) {
-                    int j = col + 1;
-                    int end = j + str.length - 1;
-                    for (int k = 1; j < end && value[j] == str[k]; j++, k++);
-                    if (j == end) {
-                        // found whole charSequence
-                        founds.add(new Found(row, col, str.length));
-                        if (founds.size() >= maxFound) {
-                            return founds;
-                        }
-                        col += str.length;
-                    }
-                }
+
+    /**
+     * Reports the changes to the listeners, or holds them until the batch running ends.
+     * @param list the changes
+     */
+    private void fire(List<Change> list) {
+        if (changes != null) {
+            changes.addAll(list);
+            return;
+        }
+        List<Change> unmodifiable = Collections.unmodifiableList(list);
+        for (Consumer<List<Change>> listener : listeners) {
+            listener.accept(unmodifiable);
+        }
+    }
+
+
+    /**
+     * Counts the line feeds in the bytes.
+     * @param bytes the bytes
+     * @param scanner the newline scanner
+     * @param unit the code unit size
+     * @return the number of line feeds
+     */
+    private static int newlines(byte[] bytes, NewlineScanner scanner, int unit) {
+        int n = 0;
+        for (int i = 0; (i = scanner.indexOf(bytes, i, bytes.length)) >= 0; i += unit) {
+            n++;
+        }
+        return n;
+    }
+
+
+    /**
+     * Resolves the specified rows, to be read from the snapshot of the piece table on another thread.
+     * @param startRow the start row(zero origin), inclusive
+     * @param endRow the end row, exclusive
+     * @param await whether to wait until the rows are indexed, otherwise the rows not indexed yet are cut off
+     * @return the reader of the rows
+     */
+    private Supplier<List<String>> readRows(int startRow, int endRow, boolean await) {
+        if (await && endRow > startRow) {
+            await(endRow - 1);
+        } else if (reader != null && !reader.completed()) {
+            // the last row may be still being indexed
+            endRow = Math.min(endRow, index.rowSize() - 1);
+        }
+        endRow = Math.min(endRow, index.rowSize());
+        if (startRow >= endRow) {
+            return List::of;
+        }
+        long start = index.get(startRow) + ((startRow == 0) ? bom.length : 0);
+        int length = Math.toIntExact(index.get(endRow) - start);
+        int rows = endRow - startRow;
+        var snapshot = pt.snapshot();
+        boolean asciiCompatible = this.asciiCompatible;
+        Charset charset = this.charset;
+        return () -> {
+            byte[] bytes = snapshot.get(start, length);
+            String text = (asciiCompatible && NewlineScanner.ascii(bytes, 0, bytes.length))
+                ? new String(bytes, StandardCharsets.ISO_8859_1)
+                : new String(bytes, charset);
+            List<String> list = new ArrayList<>(rows);
+            for (int from = 0; list.size() < rows; ) {
+                int i = text.indexOf('\n', from);
+                int to = (i < 0 || list.size() == rows - 1) ? text.length() : i + 1;
+                list.add(text.substring(from, to));
+                from = to;
             }
+            return list;
+        };
+    }
+
+
+    /**
+     * Get the byte column of the char column of the row.
+     * A long row is translated by the {@link ColumnMap} of the row, instead of decoding the whole row.
+     * @param row the number of row(zero origin)
+     * @param col the char column
+     * @return the byte column
+     */
+    private int rawCol(int row, int col) {
+        if (col == 0) {
+            return 0;
         }
-        return founds;
+        await(row);
+        if (asciiCompatible && index.ascii(row)) {
+            // a char is a byte in the ASCII row
+            return col;
+        }
+        int length = rowLength(row);
+        if (length <= LONG_ROW_LENGTH) {
+            return getText(row).toString().substring(0, col).getBytes(charset).length;
+        }
+        return columnMap(row, length)
+            .byteCol(col, length, (rawCol, rawLen) -> get(row, rawCol, rawLen), charset);
+    }
+
+
+    /**
+     * Get the {@link ColumnMap} of the long row, built by reading the row window by window.
+     * @param row the number of row(zero origin)
+     * @param length the byte length of the row
+     * @return the {@link ColumnMap}
+     */
+    private ColumnMap columnMap(int row, int length) {
+        return columnMaps.get(row, r -> ColumnMap.of(length, (rawCol, rawLen) -> get(r, rawCol, rawLen), charset));
+    }
+
+
+    /**
+     * Get the substring clipped to the end of the string.
+     * @param str the string
+     * @param col the start index
+     * @param len the length
+     * @return the substring
+     */
+    private static String substring(String str, int col, int len) {
+        int from = Math.min(col, str.length());
+        return str.substring(from, from + Math.min(len, str.length() - from));
+    }
+
+
+    /**
+     * Decodes the bytes of the row.
+     * The ASCII row is not decoded, but copied into a Latin-1 string as is.
+     * @param row the number of row(zero origin)
+     * @param bytes the bytes of the row
+     * @return the decoded string
+     */
+    private String decode(int row, byte[] bytes) {
+        return (asciiCompatible && index.ascii(row))
+            ? new String(bytes, StandardCharsets.ISO_8859_1)
+            : new String(bytes, charset);
+    }
+
+
+    /**
+     * Gets whether the ASCII bytes are decoded as is by the charset.
+     * Stateful charsets, such as ISO-2022-JP, and charsets of wider code units, such as UTF-16, are not.
+     * @param charset the charset
+     * @return {@code true}, if the ASCII bytes are decoded as is
+     */
+    private static boolean asciiCompatible(Charset charset) {
+        byte[] ascii = new byte[0x80];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        return new String(ascii, charset).equals(new String(ascii, StandardCharsets.ISO_8859_1));
+    }
+
+
+    /**
+     * Get the byte length of the row, without the byte order mark.
+     * @param row the number of row(zero origin)
+     * @return the byte length of the row
+     */
+    private int rowLength(int row) {
+        return index.rowLength(row) - ((row == 0) ? bom.length : 0);
+    }
+
+
+    /**
+     * Refreshes whether the specified row ends with CRLF, by reading the tail of the row,
+     * as a carriage return and a line feed can be brought together, or apart, by an edit.
+     * @param row the number of row(zero origin)
+     */
+    private void refreshCrlf(int row) {
+        if (row + 1 >= index.rowSize()) {
+            return;
+        }
+        long end = index.get(row + 1);
+        int len = (int) Math.min(2L * index.unit(), end - index.get(row));
+        index.refreshCrlf(row, pt.get(end - len, len));
+    }
+
+
+    /**
+     * Waits until the specified row is indexed, if the index is being built in the background.
+     * @param row the number of row(zero origin)
+     */
+    private void await(int row) {
+        if (reader != null) {
+            reader.await(row);
+        }
+    }
+
+
+    /**
+     * Waits until the rows from the specified row up to the specified position are indexed,
+     * if the index is being built in the background.
+     * @param row the number of row(zero origin)
+     * @param pos the position
+     */
+    private void await(int row, long pos) {
+        while (reader != null && !reader.completed() && index.get(row + 1) <= pos) {
+            reader.await(++row);
+        }
+    }
+
+
+    /**
+     * Waits until all rows are indexed, if the index is being built in the background.
+     */
+    private void awaitAll() {
+        if (reader != null) {
+            reader.awaitAll();
+            reader = null;
+        }
+    }
+
+
+    /**
+     * Creates the char sequence view of the specified rows.
+     * @param source the piece table
+     * @param startRow the start row, inclusive
+     * @param endRow the end row, exclusive
+     * @return the char sequence view
+     */
+    private CharSequenceView view(PieceTable source, int startRow, int endRow) {
+        long start = index.get(startRow) + ((startRow == 0) ? bom.length : 0);
+        return CharSequenceView.of(source, charset, start, index.get(endRow));
+    }
+
+
+    /**
+     * Gets the end row of the segment from the specified row, which can be viewed as a char sequence.
+     * @param startRow the start row of the segment
+     * @param rows the number of rows
+     * @return the end row of the segment, exclusive
+     */
+    private int segmentEnd(int startRow, int rows) {
+        long start = index.get(startRow);
+        int lo = startRow + 1;
+        int hi = rows;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (index.get(mid) - start <= Integer.MAX_VALUE) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+
+    private Stream<Found> search(PieceTable source, CharSequence cs, int fromRow, int fromCol, FindOption... options) {
+        if (cs.isEmpty()) {
+            return Stream.empty();
+        }
+        long rowStart = index.get(fromRow);
+        long from = rowStart + fromCol + ((fromRow == 0) ? bom.length : 0);
+        return Searcher.of(source, charset, bom.length, cs, options).stream(fromRow, rowStart, from);
+    }
+
+
+    /**
+     * Gets whether the search index can narrow the search with the specified options.
+     * The index holds the exact bytes, so case-insensitive searches read the whole document.
+     * @param options the options
+     * @return {@code true}, if the search index can be used
+     */
+    private boolean indexable(FindOption... options) {
+        return ngrams != null && ngrams.ready() && !Arrays.asList(options).contains(FindOption.IGNORE_CASE);
     }
 
 }
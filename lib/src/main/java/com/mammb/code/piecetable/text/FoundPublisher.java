@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.Found;
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The publisher of the found.
+ * Each subscription searches on its own, and only as many matches as requested,
+ * on the thread requesting them.
+ * @author Naotsugu Kobayashi
+ */
+class FoundPublisher implements Flow.Publisher<Found> {
+
+    /** The source of the found, for each subscription. */
+    private final Supplier<Iterator<Found>> source;
+
+
+    /**
+     * Constructor.
+     * @param source the source of the found, for each subscription
+     */
+    FoundPublisher(Supplier<Iterator<Found>> source) {
+        this.source = source;
+    }
+
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Found> subscriber) {
+        subscriber.onSubscribe(new Subscription(subscriber, source.get()));
+    }
+
+
+    /**
+     * The subscription.
+     */
+    private static class Subscription implements Flow.Subscription {
+
+        /** The subscriber. */
+        private final Flow.Subscriber<? super Found> subscriber;
+        /** The found to be published. */
+        private final Iterator<Found> founds;
+        /** The number of the found requested, and not yet published. */
+        private final AtomicLong demand = new AtomicLong();
+        /** The number of drains requested, to publish on a single thread at a time. */
+        private final AtomicInteger drains = new AtomicInteger();
+        /** Whether this subscription has been cancelled or terminated. */
+        private volatile boolean done;
+
+        /**
+         * Constructor.
+         * @param subscriber the subscriber
+         * @param founds the found to be published
+         */
+        Subscription(Flow.Subscriber<? super Found> subscriber, Iterator<Found> founds) {
+            this.subscriber = subscriber;
+            this.founds = founds;
+        }
+
+        @Override
+        public void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                done = true;
+                subscriber.onError(new IllegalArgumentException("non-positive request[%d]".formatted(n)));
+                return;
+            }
+            demand.getAndAccumulate(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        /**
+         * Publishes the found as many as requested.
+         * A request from {@code onNext} only adds the demand, and is published by the outer loop.
+         */
+        private void drain() {
+            if (drains.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                try {
+                    while (!done && demand.get() > 0) {
+                        if (!founds.hasNext()) {
+                            done = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(founds.next());
+                        demand.decrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    done = true;
+                    subscriber.onError(e);
+                    return;
+                }
+            } while (drains.decrementAndGet() != 0);
+        }
+    }
+
+}
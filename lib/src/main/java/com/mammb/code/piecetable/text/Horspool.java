@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.util.Arrays;
+
+/**
+ * The Boyer-Moore-Horspool search engine.
+ * <pre>
+ *   text     | a | b | c | x | a | b | c | d |
+ *   pattern  | a | b | c | d |
+ *                          ^ x is not in the pattern, shift 4
+ *   pattern                  | a | b | c | d |
+ * </pre>
+ * @author Naotsugu Kobayashi
+ */
+class Horspool implements SearchEngine {
+
+    /** The pattern. */
+    private final byte[] pattern;
+    /** The shift by the byte at the last position of the window. */
+    private final int[] shifts;
+
+
+    /**
+     * Constructor.
+     * @param pattern the pattern
+     */
+    Horspool(byte[] pattern) {
+        this.pattern = pattern.clone();
+        this.shifts = new int[256];
+        int m = pattern.length;
+        Arrays.fill(shifts, m);
+        for (int i = 0; i < m - 1; i++) {
+            shifts[pattern[i] & 0xFF] = m - 1 - i;
+        }
+    }
+
+
+    @Override
+    public int indexOf(byte[] bytes, int from, int to) {
+        int m = pattern.length;
+        byte last = pattern[m - 1];
+        for (int i = from; i + m <= to; ) {
+            byte b = bytes[i + m - 1];
+            if (b == last && Arrays.equals(bytes, i, i + m - 1, pattern, 0, m - 1)) {
+                return i;
+            }
+            i += shifts[b & 0xFF];
+        }
+        return -1;
+    }
+
+
+    @Override
+    public int length() {
+        return pattern.length;
+    }
+
+}
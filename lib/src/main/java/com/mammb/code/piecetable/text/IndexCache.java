@@ -0,0 +1,270 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * The persisted row index cache.
+ * Stores the row index, the byte order mark and the charset of a file
+ * in the cache directory, so that reopening the file does not scan it.
+ * <pre>
+ *  | magic | version | path | size | last modified | sampled hash |
+ *  | bom | charset | row size | row lengths ... | row flags ...    |
+ * </pre>
+ * The cache entry is valid while the size, the last modified time
+ * and the hash sampled from the head, middle and tail of the file are unchanged.
+ * @author Naotsugu Kobayashi
+ */
+class IndexCache {
+
+    /** The magic number. */
+    private static final int MAGIC = 0x50544958; // PTIX
+    /** The format version. */
+    private static final int VERSION = 3;
+    /** The byte length of each sample for the content hash. */
+    private static final int SAMPLE_SIZE = 1024 * 4;
+
+    /** The cache directory. */
+    private final Path dir;
+
+
+    /**
+     * Constructor.
+     * @param dir the cache directory
+     */
+    private IndexCache(Path dir) {
+        this.dir = dir;
+    }
+
+
+    /**
+     * Create a new {@link IndexCache}.
+     * @param dir the cache directory
+     * @return a new {@link IndexCache}
+     */
+    static IndexCache of(Path dir) {
+        return new IndexCache(dir);
+    }
+
+
+    /**
+     * Reads the file, using the cache entry if it is valid,
+     * otherwise scans the file and stores the cache entry.
+     * @param path the path to be read
+     * @return the {@link Reader}
+     */
+    Reader read(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(path, ch);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Reads the file, using the cache entry if it is valid,
+     * otherwise scans the file and stores the cache entry.
+     * @param path the path to be read
+     * @param ch the channel of the path
+     * @return the {@link Reader}
+     */
+    Reader read(Path path, FileChannel ch) {
+        Key key = key(path, ch);
+        return load(key).orElseGet(() -> {
+            Reader reader = Reader.of(ch);
+            store(key, reader);
+            return reader;
+        });
+    }
+
+
+    /**
+     * Loads the cache entry of the specified file.
+     * @param path the path of the file
+     * @return the {@link Reader} restored from the cache entry, or empty if no valid entry
+     */
+    Optional<Reader> load(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return load(key(path, ch));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private Optional<Reader> load(Key key) {
+
+        Path file = entry(key);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if (ch.size() > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION ||
+                !key.path().equals(getString(buf)) ||
+                buf.getLong() != key.size() ||
+                buf.getLong() != key.lastModified() ||
+                buf.getLong() != key.hash()) {
+                return Optional.empty();
+            }
+
+            byte[] bom = new byte[buf.get()];
+            buf.get(bom);
+            Charset charset = Charset.forName(getString(buf));
+
+            int rows = buf.getInt();
+            IntBuffer rowLengths = buf.slice(buf.position(), rows * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer();
+            ByteBuffer flags = buf.slice(buf.position() + rows * Integer.BYTES, rows);
+            return Optional.of(Reader.of(RowIndex.of(charset, rowLengths, flags), bom, charset, key.size()));
+
+        } catch (IOException | RuntimeException e) {
+            // a broken cache entry is just ignored, and will be overwritten
+            return Optional.empty();
+        }
+    }
+
+
+    private void store(Key key, Reader reader) {
+
+        int[] rowLengths = reader.index().rowLengths();
+        byte[] flags = reader.index().flags();
+        byte[] path = key.path().getBytes(StandardCharsets.UTF_8);
+        byte[] charset = reader.charset().name().getBytes(StandardCharsets.US_ASCII);
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 64).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION)
+            .putShort((short) path.length).put(path)
+            .putLong(key.size()).putLong(key.lastModified()).putLong(key.hash())
+            .put((byte) reader.bom().length).put(reader.bom())
+            .putShort((short) charset.length).put(charset)
+            .putInt(rowLengths.length);
+
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "index", ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                for (int rowLength : rowLengths) {
+                    if (buf.remaining() < Integer.BYTES) {
+                        write(ch, buf);
+                    }
+                    buf.putInt(rowLength);
+                }
+                for (byte flag : flags) {
+                    if (!buf.hasRemaining()) {
+                        write(ch, buf);
+                    }
+                    buf.put(flag);
+                }
+                write(ch, buf);
+            }
+            Files.move(tmp, entry(key),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is an optimization, so the document is opened regardless
+        }
+    }
+
+
+    private static void write(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Get the path of the cache entry.
+     * @param key the key
+     * @return the path of the cache entry
+     */
+    private Path entry(Key key) {
+        UUID uuid = UUID.nameUUIDFromBytes(key.path().getBytes(StandardCharsets.UTF_8));
+        return dir.resolve(uuid + ".idx");
+    }
+
+
+    /**
+     * Create the key of the specified file.
+     * @param path the path of the file
+     * @param ch the channel of the file
+     * @return the key
+     */
+    private static Key key(Path path, FileChannel ch) {
+        try {
+            long size = ch.size();
+            CRC32C crc = new CRC32C();
+            ByteBuffer buf = ByteBuffer.allocate(SAMPLE_SIZE);
+            for (long pos : new long[] { 0, size / 2, size - SAMPLE_SIZE }) {
+                buf.clear();
+                ch.read(buf, Math.max(0, pos));
+                buf.flip();
+                crc.update(buf);
+            }
+            return new Key(
+                path.toAbsolutePath().normalize().toString(),
+                size,
+                Files.getLastModifiedTime(path).toMillis(),
+                crc.getValue());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * The key of a cache entry.
+     * @param path the absolute path of the file
+     * @param size the size of the file
+     * @param lastModified the last modified time of the file
+     * @param hash the hash of the content sampled from the file
+     */
+    private record Key(String path, long size, long lastModified, long hash) { }
+
+}
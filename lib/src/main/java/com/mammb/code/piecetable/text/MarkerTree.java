@@ -0,0 +1,508 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.Marker;
+import com.mammb.code.piecetable.Markers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The implementation of {@link Markers}.
+ * The markers are held in a treap ordered by the start position,
+ * augmented with the max end position of the subtree.
+ * An edit shifts the markers after it at once, by a pending shift on the root of the subtree,
+ * which is pushed down to the children when the subtree is visited.
+ * So an edit costs {@code O(log n)}, in addition to the markers starting at or spanning the edit,
+ * which are adjusted one by one, and the other markers are skipped by the max end position.
+ * The position of a marker is resolved with the pending shifts of its ancestors.
+ * @author Naotsugu Kobayashi
+ */
+class MarkerTree implements Markers {
+
+    /** The rows of the document. */
+    private final Rows rows;
+    /** The random of the priorities. */
+    private final SplittableRandom random = new SplittableRandom();
+    /** The root of the tree. */
+    private Node root;
+    /** The number of the markers. */
+    private int size;
+
+
+    /**
+     * The rows of the document.
+     */
+    interface Rows {
+        /**
+         * Get the start position of the row.
+         * @param row the number of row(zero origin)
+         * @return the start position of the row, from the head of the document
+         */
+        long start(int row);
+
+        /**
+         * Get the row at the position.
+         * @param pos the position, from the head of the document
+         * @return the number of row(zero origin)
+         */
+        int row(long pos);
+
+        /**
+         * Get the number of rows.
+         * @return the number of rows
+         */
+        int size();
+    }
+
+
+    /**
+     * Constructor.
+     * @param rows the rows of the document
+     */
+    private MarkerTree(Rows rows) {
+        this.rows = rows;
+    }
+
+
+    /**
+     * Create a new {@link MarkerTree}.
+     * @param rows the rows of the document
+     * @return a new {@link MarkerTree}
+     */
+    static MarkerTree of(Rows rows) {
+        return new MarkerTree(rows);
+    }
+
+
+    @Override
+    public Marker add(int row, int rawCol, int rawLen, Marker.Stickiness stickiness) {
+        if (row < 0 || row >= rows.size() || rawCol < 0 || rawLen < 0) {
+            throw new IndexOutOfBoundsException("row[%d], rawCol[%d], rawLen[%d]".formatted(row, rawCol, rawLen));
+        }
+        long pos = rows.start(row) + rawCol;
+        return add(pos, pos + rawLen, stickiness);
+    }
+
+
+    /**
+     * Adds a marker of the specified range.
+     * @param start the start position
+     * @param end the end position, exclusive
+     * @param stickiness the stickiness
+     * @return the marker added
+     */
+    Marker add(long start, long end, Marker.Stickiness stickiness) {
+        var node = new Node(this, start, end, stickiness, random.nextInt());
+        Node[] split = split(root, start);
+        root = detach(merge(merge(split[0], node), split[1]));
+        size++;
+        return node;
+    }
+
+
+    @Override
+    public boolean remove(Marker marker) {
+        if (!(marker instanceof Node node) || node.owner != this) {
+            return false;
+        }
+        pushPath(node);
+        Node parent = node.parent;
+        Node sub = merge(node.left, node.right);
+        if (sub != null) {
+            sub.parent = parent;
+        }
+        if (parent == null) {
+            root = sub;
+        } else if (parent.left == node) {
+            parent.left = sub;
+        } else {
+            parent.right = sub;
+        }
+        for (Node p = parent; p != null; p = p.parent) {
+            update(p);
+        }
+        node.owner = null;
+        node.left = node.right = node.parent = null;
+        size--;
+        return true;
+    }
+
+
+    @Override
+    public Found found(Marker marker) {
+        long start = marker.start();
+        int row = rows.row(start);
+        return new Found(row, Math.toIntExact(start - rows.start(row)), Math.toIntExact(marker.end() - start));
+    }
+
+
+    @Override
+    public List<Marker> find(int startRow, int endRow) {
+        List<Marker> list = new ArrayList<>();
+        if (startRow >= endRow || startRow >= rows.size()) {
+            return list;
+        }
+        long from = rows.start(Math.max(0, startRow));
+        long to = (endRow >= rows.size()) ? Long.MAX_VALUE : rows.start(endRow);
+        collect(root, from, to, list);
+        return list;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public void clear() {
+        release(root);
+        root = null;
+        size = 0;
+    }
+
+
+    /**
+     * Adjusts the markers for the insertion.
+     * @param pos the position inserted at
+     * @param len the byte length inserted
+     */
+    void insert(long pos, int len) {
+        if (len == 0 || root == null) {
+            return;
+        }
+        Node[] before = split(root, pos);
+        Node[] at = split(before[1], pos + 1);
+        shift(at[1], len);
+        grow(before[0], pos, len);
+
+        // the markers starting at the position move or stay by the stickiness
+        List<Node> nodes = new ArrayList<>();
+        release(at[0], nodes);
+        Node stay = null;
+        Node moved = null;
+        for (Node node : nodes) {
+            node.owner = this;
+            boolean moves = node.stickiness.startMoves();
+            if (node.end > pos || (node.end == pos && node.stickiness.endMoves())) {
+                node.end += len;
+            }
+            if (moves) {
+                node.start += len;
+                node.end = Math.max(node.start, node.end);
+                node.maxEnd = node.end;
+                moved = merge(moved, node);
+            } else {
+                node.maxEnd = node.end;
+                stay = merge(stay, node);
+            }
+        }
+        root = detach(merge(merge(merge(before[0], stay), moved), at[1]));
+    }
+
+
+    /**
+     * Adjusts the markers for the deletion.
+     * The markers in the range deleted shrink to the position.
+     * @param pos the position deleted from
+     * @param len the byte length deleted
+     */
+    void delete(long pos, int len) {
+        if (len == 0 || root == null) {
+            return;
+        }
+        Node[] before = split(root, pos);
+        Node[] in = split(before[1], pos + len);
+        shift(in[1], -len);
+        shrink(before[0], pos, len);
+        collapse(in[0], pos, len);
+        root = detach(merge(merge(before[0], in[0]), in[1]));
+    }
+
+
+    /**
+     * Extends the ends of the markers at or over the position, for the insertion.
+     */
+    private static void grow(Node node, long pos, int len) {
+        if (node == null || node.maxEnd < pos) {
+            return;
+        }
+        push(node);
+        if (node.end > pos || (node.end == pos && node.stickiness.endMoves())) {
+            node.end += len;
+        }
+        grow(node.left, pos, len);
+        grow(node.right, pos, len);
+        update(node);
+    }
+
+
+    /**
+     * Cuts the ends of the markers over the position, for the deletion.
+     */
+    private static void shrink(Node node, long pos, int len) {
+        if (node == null || node.maxEnd <= pos) {
+            return;
+        }
+        push(node);
+        if (node.end > pos) {
+            node.end = (node.end >= pos + len) ? node.end - len : pos;
+        }
+        shrink(node.left, pos, len);
+        shrink(node.right, pos, len);
+        update(node);
+    }
+
+
+    /**
+     * Moves the markers starting in the range deleted to the position.
+     * The order of the markers is kept, as they all start at the position.
+     */
+    private static void collapse(Node node, long pos, int len) {
+        if (node == null) {
+            return;
+        }
+        push(node);
+        node.start = pos;
+        node.end = (node.end >= pos + len) ? node.end - len : pos;
+        collapse(node.left, pos, len);
+        collapse(node.right, pos, len);
+        update(node);
+    }
+
+
+    private static void collect(Node node, long from, long to, List<Marker> list) {
+        if (node == null || node.maxEnd < from) {
+            return;
+        }
+        push(node);
+        collect(node.left, from, to, list);
+        if (node.start >= to) {
+            return;
+        }
+        if (node.end > from || node.start >= from) {
+            list.add(node);
+        }
+        collect(node.right, from, to, list);
+    }
+
+
+    /**
+     * Detaches the markers of the subtree from this tree, keeping their positions.
+     */
+    private static void release(Node node) {
+        release(node, null);
+    }
+
+
+    /**
+     * Detaches the markers of the subtree in order, keeping their positions.
+     * @param node the root of the subtree
+     * @param list the list to which the markers are added, or {@code null}
+     */
+    private static void release(Node node, List<Node> list) {
+        if (node == null) {
+            return;
+        }
+        push(node);
+        Node left = node.left;
+        Node right = node.right;
+        node.owner = null;
+        node.left = node.right = node.parent = null;
+        release(left, list);
+        if (list != null) {
+            list.add(node);
+        }
+        release(right, list);
+    }
+
+
+    /**
+     * Splits the subtree into the markers starting before the position, and the others.
+     * @param node the root of the subtree
+     * @param pos the position
+     * @return the roots of the subtrees split
+     */
+    private static Node[] split(Node node, long pos) {
+        if (node == null) {
+            return new Node[2];
+        }
+        push(node);
+        Node[] split;
+        if (node.start < pos) {
+            split = split(node.right, pos);
+            node.right = split[0];
+            split[0] = node;
+        } else {
+            split = split(node.left, pos);
+            node.left = split[1];
+            split[1] = node;
+        }
+        attach(node);
+        update(node);
+        detach(split[0]);
+        detach(split[1]);
+        return split;
+    }
+
+
+    /**
+     * Merges the subtrees, all markers of the first one starting at or before the ones of the second one.
+     * @param a the root of the first subtree
+     * @param b the root of the second subtree
+     * @return the root of the merged subtree
+     */
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            push(a);
+            a.right = merge(a.right, b);
+            attach(a);
+            update(a);
+            return a;
+        } else {
+            push(b);
+            b.left = merge(a, b.left);
+            attach(b);
+            update(b);
+            return b;
+        }
+    }
+
+
+    /**
+     * Pushes down the pending shifts from the root to the node.
+     */
+    private static void pushPath(Node node) {
+        List<Node> path = new ArrayList<>();
+        for (Node n = node; n != null; n = n.parent) {
+            path.add(n);
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            push(path.get(i));
+        }
+    }
+
+
+    private static void shift(Node node, long delta) {
+        if (node != null) {
+            node.start += delta;
+            node.end += delta;
+            node.maxEnd += delta;
+            node.shift += delta;
+        }
+    }
+
+
+    private static void push(Node node) {
+        if (node.shift != 0) {
+            shift(node.left, node.shift);
+            shift(node.right, node.shift);
+            node.shift = 0;
+        }
+    }
+
+
+    private static void update(Node node) {
+        long max = node.end;
+        if (node.left != null) max = Math.max(max, node.left.maxEnd);
+        if (node.right != null) max = Math.max(max, node.right.maxEnd);
+        node.maxEnd = max;
+    }
+
+
+    private static void attach(Node node) {
+        if (node.left != null) node.left.parent = node;
+        if (node.right != null) node.right.parent = node;
+    }
+
+
+    private static Node detach(Node node) {
+        if (node != null) {
+            node.parent = null;
+        }
+        return node;
+    }
+
+
+    /**
+     * The node of the tree, which is the marker.
+     * The positions are of the node, and the pending shifts of the ancestors are yet to be added.
+     */
+    private static class Node implements Marker {
+        /** The tree, or {@code null} if removed. */
+        private MarkerTree owner;
+        private final Marker.Stickiness stickiness;
+        private final int priority;
+        private long start;
+        private long end;
+        /** The max end position of the subtree. */
+        private long maxEnd;
+        /** The shift pending for the children. */
+        private long shift;
+        private Node left;
+        private Node right;
+        private Node parent;
+
+        Node(MarkerTree owner, long start, long end, Marker.Stickiness stickiness, int priority) {
+            this.owner = owner;
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+            this.stickiness = stickiness;
+            this.priority = priority;
+        }
+
+        @Override
+        public long start() {
+            return start + pending();
+        }
+
+        @Override
+        public long end() {
+            return end + pending();
+        }
+
+        @Override
+        public Marker.Stickiness stickiness() {
+            return stickiness;
+        }
+
+        @Override
+        public boolean removed() {
+            return owner == null;
+        }
+
+        private long pending() {
+            long sum = 0;
+            for (Node p = parent; p != null; p = p.parent) {
+                sum += p.shift;
+            }
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return "Marker[start=%d, end=%d, %s]".formatted(start(), end(), stickiness);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The search engine for short patterns.
+ * Finds the first byte of the pattern eight bytes at a time, in the same way
+ * as {@link NewlineScanner}, and compares the rest only there.
+ * @author Naotsugu Kobayashi
+ */
+class Memchr implements SearchEngine {
+
+    /** The view of a byte array as little-endian long words. */
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** The low seven bits of all lanes. */
+    private static final long LOW = 0x7F7F7F7F7F7F7F7FL;
+
+    /** The pattern. */
+    private final byte[] pattern;
+    /** The first byte of the pattern in all lanes. */
+    private final long firsts;
+
+
+    /**
+     * Constructor.
+     * @param pattern the pattern
+     */
+    Memchr(byte[] pattern) {
+        this.pattern = pattern.clone();
+        this.firsts = (pattern[0] & 0xFFL) * 0x0101010101010101L;
+    }
+
+
+    @Override
+    public int indexOf(byte[] bytes, int from, int to) {
+        int m = pattern.length;
+        int end = to - m + 1; // the end of the start index, exclusive
+        for (int i = from; i < end; i++) {
+            i = first(bytes, i, end);
+            if (i < 0) {
+                return -1;
+            }
+            if (Arrays.equals(bytes, i + 1, i + m, pattern, 1, m)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    @Override
+    public int length() {
+        return pattern.length;
+    }
+
+
+    /**
+     * Gets the index of the first byte of the pattern in the specified range.
+     * @param bytes the byte array
+     * @param from the start index, inclusive
+     * @param to the end index, exclusive
+     * @return the index of the first byte, or {@code -1} if not found
+     */
+    private int first(byte[] bytes, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long x = (long) LONG.get(bytes, i) ^ firsts;
+            long mask = ~(((x & LOW) + LOW) | x | LOW);
+            if (mask != 0) {
+                return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == pattern[0]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The newline scanner.
+ * Finds line feeds eight bytes at a time, by treating a long word
+ * as lanes of the code unit width (SWAR: SIMD within a register).
+ * <pre>
+ *   word    | a | b | $ | c | d | $ | e | f |
+ *   x ^ $   |61 |62 |00 |63 |64 |00 |65 |66 |
+ *   mask    |   |   |80 |   |   |80 |   |   |  high bit set on each zero lane
+ * </pre>
+ * For UTF-16 and UTF-32, a lane is a whole code unit,
+ * so a {@code 0x0A} byte inside other code units is not taken as a line feed.
+ * <pre>
+ *   UTF-16LE  | 0A 0A | 0A 00 | 61 00 |   lanes of 16 bits, only the second is a line feed
+ * </pre>
+ * @author Naotsugu Kobayashi
+ */
+class NewlineScanner {
+
+    /** The view of a byte array as little-endian long words. */
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** The view of a byte buffer as little-endian long words. */
+    private static final VarHandle BUFFER_LONG = MethodHandles.byteBufferViewVarHandle(
+        long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** The high bits of all bytes of a long word. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** The scanner of byte oriented charsets, such as UTF-8. */
+    static final NewlineScanner BYTE = new NewlineScanner(1, ByteOrder.LITTLE_ENDIAN);
+    /** The scanner of UTF-16LE. */
+    private static final NewlineScanner UTF_16LE = new NewlineScanner(2, ByteOrder.LITTLE_ENDIAN);
+    /** The scanner of UTF-16BE. */
+    private static final NewlineScanner UTF_16BE = new NewlineScanner(2, ByteOrder.BIG_ENDIAN);
+    /** The scanner of UTF-32LE. */
+    private static final NewlineScanner UTF_32LE = new NewlineScanner(4, ByteOrder.LITTLE_ENDIAN);
+    /** The scanner of UTF-32BE. */
+    private static final NewlineScanner UTF_32BE = new NewlineScanner(4, ByteOrder.BIG_ENDIAN);
+
+    /** The byte length of the code unit. */
+    private final int unit;
+    /** The line feed code unit. */
+    private final byte[] lf;
+    /** The carriage return code unit. */
+    private final byte[] cr;
+    /** The line feed in all lanes, as read in little-endian. */
+    private final long lfs;
+    /** The bits except the high bit of all lanes. */
+    private final long low;
+
+
+    /**
+     * Constructor.
+     * @param unit the byte length of the code unit
+     * @param order the byte order of the code unit
+     */
+    private NewlineScanner(int unit, ByteOrder order) {
+        this.unit = unit;
+        this.lf = new byte[unit];
+        this.lf[(order == ByteOrder.LITTLE_ENDIAN) ? 0 : unit - 1] = '\n';
+        this.cr = new byte[unit];
+        this.cr[(order == ByteOrder.LITTLE_ENDIAN) ? 0 : unit - 1] = '\r';
+        long laneLf = (order == ByteOrder.LITTLE_ENDIAN) ? 0x0A : 0x0AL << ((unit - 1) * 8);
+        long laneLow = (1L << (unit * 8 - 1)) - 1;
+        long lfs = 0;
+        long low = 0;
+        for (int i = 0; i < Long.BYTES; i += unit) {
+            lfs |= laneLf << (i * 8);
+            low |= laneLow << (i * 8);
+        }
+        this.lfs = lfs;
+        this.low = low;
+    }
+
+
+    /**
+     * Get the scanner for the specified charset.
+     * @param charset the charset
+     * @return the scanner
+     */
+    static NewlineScanner of(Charset charset) {
+        return switch (charset.name()) {
+            case "UTF-16", "UTF-16BE" -> UTF_16BE;
+            case "UTF-16LE" -> UTF_16LE;
+            case "UTF-32", "UTF-32BE" -> UTF_32BE;
+            case "UTF-32LE" -> UTF_32LE;
+            default -> BYTE;
+        };
+    }
+
+
+    /**
+     * Get the byte length of the code unit.
+     * A row ends at the index of a line feed plus this length.
+     * @return the byte length of the code unit
+     */
+    int unit() {
+        return unit;
+    }
+
+
+    /**
+     * Gets the index of the first line feed in the specified range.
+     * @param bytes the byte array to be scanned
+     * @param from the start index, inclusive, on the code unit boundary
+     * @param to the end index, exclusive
+     * @return the index of the first line feed, or {@code -1} if not found
+     */
+    int indexOf(byte[] bytes, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long mask = mask((long) LONG.get(bytes, i));
+            if (mask != 0) {
+                return i + lane(mask);
+            }
+        }
+        for (; i + unit <= to; i += unit) {
+            if (Arrays.equals(bytes, i, i + unit, lf, 0, unit)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets the index of the first line feed in the specified range of the buffer.
+     * The buffer is scanned in place, so a direct buffer is not copied to the heap.
+     * @param buf the byte buffer to be scanned
+     * @param from the start index, inclusive, on the code unit boundary
+     * @param to the end index, exclusive
+     * @return the index of the first line feed, or {@code -1} if not found
+     */
+    int indexOf(ByteBuffer buf, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long mask = mask((long) BUFFER_LONG.get(buf, i));
+            if (mask != 0) {
+                return i + lane(mask);
+            }
+        }
+        for (; i + unit <= to; i += unit) {
+            if (equals(buf, i, lf)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets the number of line feeds in the specified range.
+     * @param bytes the byte array to be scanned
+     * @param from the start index, inclusive, on the code unit boundary
+     * @param to the end index, exclusive
+     * @return the number of line feeds
+     */
+    int count(byte[] bytes, int from, int to) {
+        int n = 0;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            n += Long.bitCount(mask((long) LONG.get(bytes, i)));
+        }
+        for (; i + unit <= to; i += unit) {
+            if (Arrays.equals(bytes, i, i + unit, lf, 0, unit)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+
+    /**
+     * Gets whether all bytes in the specified range are ASCII, that is less than {@code 0x80}.
+     * @param bytes the byte array to be scanned
+     * @param from the start index, inclusive
+     * @param to the end index, exclusive
+     * @return {@code true}, if all bytes in the range are ASCII
+     */
+    static boolean ascii(byte[] bytes, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            if (((long) LONG.get(bytes, i) & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets whether all bytes in the specified range of the buffer are ASCII, that is less than {@code 0x80}.
+     * @param buf the byte buffer to be scanned
+     * @param from the start index, inclusive
+     * @param to the end index, exclusive
+     * @return {@code true}, if all bytes in the range are ASCII
+     */
+    static boolean ascii(ByteBuffer buf, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            if (((long) BUFFER_LONG.get(buf, i) & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < to; i++) {
+            if (buf.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets whether the code unit at the specified index is a carriage return.
+     * @param bytes the byte array
+     * @param index the index, on the code unit boundary
+     * @return {@code true}, if the code unit is a carriage return
+     */
+    boolean isCr(byte[] bytes, int index) {
+        return index >= 0 && index + unit <= bytes.length &&
+            Arrays.equals(bytes, index, index + unit, cr, 0, unit);
+    }
+
+
+    /**
+     * Gets whether the code unit at the specified index is a carriage return.
+     * @param buf the byte buffer
+     * @param index the index, on the code unit boundary
+     * @return {@code true}, if the code unit is a carriage return
+     */
+    boolean isCr(ByteBuffer buf, int index) {
+        return index >= 0 && index + unit <= buf.limit() && equals(buf, index, cr);
+    }
+
+
+    private boolean equals(ByteBuffer buf, int index, byte[] codeUnit) {
+        for (int k = 0; k < unit; k++) {
+            if (buf.get(index + k) != codeUnit[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the mask which has the high bit set on each line feed lane.
+     * Unlike the well-known {@code (x - 0x01..) & ~x & 0x80..},
+     * no borrow crosses the lanes, so every lane is exact.
+     * @param word the long word
+     * @return the mask
+     */
+    private long mask(long word) {
+        long x = word ^ lfs;
+        long t = (x & low) + low;
+        return ~(t | x | low);
+    }
+
+
+    /**
+     * Gets the byte offset of the first lane set in the mask.
+     * @param mask the mask
+     * @return the byte offset of the lane
+     */
+    private int lane(long mask) {
+        // the high bit of a lane is in the last byte of the lane
+        return (Long.numberOfTrailingZeros(mask) >>> 3) - (unit - 1);
+    }
+
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.PieceTable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * The trigram index of the piece table, which narrows down the blocks to be searched.
+ * <pre>
+ *   bytes   |------ block 0 ------|------ block 1 ------|------ block 2 ------|
+ *   bits 0  |----- trigrams ----------|
+ *                      overlap -> \___/
+ * </pre>
+ * The piece table is divided into blocks of about 1MB, and the trigrams starting in each block,
+ * and in the overlap after it, are hashed into a bitmap of the block.
+ * A match starting in a block has its leading trigrams in the bitmap of the block,
+ * so the blocks missing any of them are skipped.
+ * Hash collisions only add candidates, which are verified by the search.
+ * <p>
+ * The index is built in the background on a snapshot, and the edits made in the meantime
+ * are replayed when it is installed. Edits resize the blocks, and mark the blocks whose
+ * bytes or overlap are changed as dirty. The dirty blocks are indexed again before searches.
+ * This index is not thread-safe, except building in the background.
+ * @author Naotsugu Kobayashi
+ */
+class NgramIndex {
+
+    /** The byte length of a block. */
+    static final int BLOCK_SIZE = 1024 * 1024;
+    /** The byte length of the overlap, whose trigrams are also indexed by the preceding block. */
+    static final int OVERLAP = 64;
+    /** The length of n-gram. */
+    private static final int N = 3;
+    /** The number of bits of a bitmap. */
+    private static final int BITS = 1 << 17;
+
+    /** The blocks, or {@code null} until the index is installed. */
+    private List<Block> blocks;
+    /** The blocks being built in the background. */
+    private CompletableFuture<List<Block>> building;
+    /** The edits made while building, as {position, length}, where the length is negative on deletion. */
+    private final List<long[]> journal = new ArrayList<>();
+
+
+    /**
+     * Constructor.
+     * @param building the blocks being built
+     */
+    private NgramIndex(CompletableFuture<List<Block>> building) {
+        this.building = building;
+    }
+
+
+    /**
+     * Create a new {@link NgramIndex}, which is built in the background.
+     * @param snapshot the snapshot of the piece table, which can be read from another thread
+     * @return a new {@link NgramIndex}
+     */
+    static NgramIndex of(PieceTable snapshot) {
+        return new NgramIndex(CompletableFuture.supplyAsync(() -> build(snapshot),
+            r -> Thread.ofVirtual().name("piecetable-ngram").start(r)));
+    }
+
+
+    /**
+     * Get whether the index is ready to narrow down the blocks, installing it if built.
+     * If building has failed, the index is never ready, and searches read the whole.
+     * @return {@code true}, if the index is ready
+     */
+    boolean ready() {
+        if (blocks == null && building != null && building.isDone()) {
+            if (!building.isCompletedExceptionally()) {
+                blocks = building.join();
+                for (long[] edit : journal) {
+                    if (edit[1] >= 0) {
+                        insert(edit[0], edit[1]);
+                    } else {
+                        delete(edit[0], -edit[1]);
+                    }
+                }
+            }
+            building = null;
+            journal.clear();
+        }
+        return blocks != null;
+    }
+
+
+    /**
+     * Notifies the bytes inserted.
+     * @param pos the position inserted
+     * @param len the byte length inserted
+     */
+    void insert(long pos, long len) {
+        if (blocks == null) {
+            if (building != null) journal.add(new long[] { pos, len });
+            return;
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new Block(0));
+        }
+        long start = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            long end = start + block.length;
+            if (pos <= end + OVERLAP + N - 1) {
+                // the bytes or the overlap of the block are changed
+                block.dirty = true;
+            }
+            if (pos < end || i == blocks.size() - 1) {
+                block.length += len;
+                return;
+            }
+            start = end;
+        }
+    }
+
+
+    /**
+     * Notifies the bytes deleted.
+     * @param pos the position deleted
+     * @param len the byte length deleted
+     */
+    void delete(long pos, long len) {
+        if (blocks == null) {
+            if (building != null) journal.add(new long[] { pos, -len });
+            return;
+        }
+        long start = 0;
+        for (int i = 0; i < blocks.size() && start <= pos + len; ) {
+            Block block = blocks.get(i);
+            long end = start + block.length;
+            if (pos <= end + OVERLAP + N - 1) {
+                block.dirty = true;
+            }
+            block.length -= Math.max(0, Math.min(end, pos + len) - Math.max(start, pos));
+            if (block.length == 0) {
+                blocks.remove(i);
+            } else {
+                i++;
+            }
+            start = end;
+        }
+    }
+
+
+    /**
+     * Gets the ranges of the candidate blocks for the specified pattern.
+     * The dirty blocks are indexed again before.
+     * Adjacent candidates are joined into a range.
+     * @param pt the piece table
+     * @param pattern the byte pattern
+     * @return the start positions and the end positions of the ranges
+     */
+    long[][] candidates(PieceTable pt, byte[] pattern) {
+
+        refresh(pt);
+
+        int[] hashes = new int[Math.max(0, Math.min(pattern.length - N, OVERLAP) + 1)];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(pattern, i);
+        }
+
+        List<Long> starts = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        long start = 0;
+        for (Block block : blocks) {
+            long end = start + block.length;
+            if (block.contains(hashes)) {
+                if (!ends.isEmpty() && ends.getLast() == start) {
+                    ends.set(ends.size() - 1, end);
+                } else {
+                    starts.add(start);
+                    ends.add(end);
+                }
+            }
+            start = end;
+        }
+        return new long[][] {
+            starts.stream().mapToLong(Long::longValue).toArray(),
+            ends.stream().mapToLong(Long::longValue).toArray() };
+    }
+
+
+    /**
+     * Indexes the dirty blocks again, splitting the blocks grown too large.
+     * @param pt the piece table
+     */
+    private void refresh(PieceTable pt) {
+        long start = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (block.dirty) {
+                if (block.length > BLOCK_SIZE * 2L) {
+                    blocks.remove(i);
+                    blocks.addAll(i, build(pt, start, start + block.length));
+                    block = blocks.get(i);
+                } else {
+                    block.index(pt, start);
+                }
+            }
+            start += block.length;
+        }
+    }
+
+
+    /**
+     * Builds the blocks of the whole piece table.
+     * @param pt the piece table
+     * @return the blocks
+     */
+    private static List<Block> build(PieceTable pt) {
+        return build(pt, 0, pt.length());
+    }
+
+
+    /**
+     * Builds the blocks of the specified range.
+     * @param pt the piece table
+     * @param start the start position of the range
+     * @param end the end position of the range
+     * @return the blocks
+     */
+    private static List<Block> build(PieceTable pt, long start, long end) {
+        List<Block> list = new ArrayList<>();
+        for (long pos = start; pos < end; pos += BLOCK_SIZE) {
+            var block = new Block(Math.min(BLOCK_SIZE, end - pos));
+            block.index(pt, pos);
+            list.add(block);
+        }
+        return list;
+    }
+
+
+    /**
+     * Gets the literal which any match of the specified regular expression contains.
+     * Only simple expressions are analyzed, such as literal runs with classes and quantifiers
+     * at the top level, and the others have no literal.
+     * @param pattern the regular expression
+     * @return the literal
+     */
+    static Optional<String> literal(Pattern pattern) {
+
+        String regex = pattern.pattern();
+        if (pattern.flags() == Pattern.LITERAL) {
+            return Optional.of(regex);
+        }
+        if ((pattern.flags() & ~(Pattern.MULTILINE | Pattern.DOTALL | Pattern.UNIX_LINES)) != 0 ||
+                regex.contains("|") || regex.contains("(?") || regex.contains("\\Q")) {
+            return Optional.empty();
+        }
+
+        String longest = "";
+        var run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            if (c == '\\' && i + 1 < regex.length()) {
+                c = regex.charAt(++i);
+                if ("xu0cpPNk".indexOf(c) >= 0) {
+                    // the operand, such as of hex or octal escapes, is not a literal as written
+                    return Optional.empty();
+                }
+                // escaped letters and digits are classes or back references
+                literal = !Character.isLetterOrDigit(c);
+                while (Character.isDigit(c) && i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1))) {
+                    // a back reference of several digits
+                    i++;
+                }
+            } else if (c == '[') {
+                i = classEnd(regex, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '*' || c == '?' || c == '{') {
+                // the preceding may not appear
+                if (!run.isEmpty()) run.setLength(run.length() - Character.charCount(run.codePointBefore(run.length())));
+                if (c == '{') i = regex.indexOf('}', i);
+                if (i < 0) return Optional.empty();
+            } else if (c == '+') {
+                // the preceding appears at least once, but not followed by the next always
+                if (depth == 0 && run.length() > longest.length()) longest = run.toString();
+                run.setLength(0);
+                continue;
+            } else {
+                literal = c != '.' && c != '^' && c != '$';
+            }
+
+            if (literal && depth == 0) {
+                run.append(c);
+            } else if (!literal) {
+                if (run.length() > longest.length()) longest = run.toString();
+                run.setLength(0);
+            }
+        }
+        if (run.length() > longest.length()) longest = run.toString();
+        return longest.isEmpty() ? Optional.empty() : Optional.of(longest);
+    }
+
+
+    private static int classEnd(String regex, int i) {
+        int depth = 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+
+    private static int hash(byte[] bytes, int i) {
+        int trigram = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+        return (trigram * 0x9E3779B1) >>> (32 - 17);
+    }
+
+
+    /**
+     * The block.
+     */
+    private static class Block {
+
+        /** The byte length. */
+        private long length;
+        /** The bitmap of the hashes of the trigrams. */
+        private long[] bits;
+        /** Whether the block is changed since indexed. */
+        private boolean dirty;
+
+        /**
+         * Constructor.
+         * @param length the byte length
+         */
+        Block(long length) {
+            this.length = length;
+            this.bits = new long[0];
+            this.dirty = true;
+        }
+
+        /**
+         * Indexes the trigrams starting in this block and its overlap.
+         * @param pt the piece table
+         * @param start the start position of this block
+         */
+        void index(PieceTable pt, long start) {
+            long end = Math.min(pt.length(), start + length + OVERLAP + N - 1);
+            byte[] bytes = pt.get(start, Math.toIntExact(end - start));
+            long[] bits = new long[BITS / 64];
+            for (int i = 0; i + N <= bytes.length; i++) {
+                int h = hash(bytes, i);
+                bits[h >>> 6] |= 1L << h;
+            }
+            this.bits = bits;
+            this.dirty = false;
+        }
+
+        /**
+         * Gets whether this block may contain all the specified hashes.
+         * @param hashes the hashes of the trigrams
+         * @return {@code true}, if this block may contain them
+         */
+        boolean contains(int[] hashes) {
+            if (dirty) {
+                return true;
+            }
+            for (int h : hashes) {
+                if ((bits[h >>> 6] & (1L << h)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
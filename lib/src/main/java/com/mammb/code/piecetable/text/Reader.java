@@ -16,6 +16,7 @@
 package com.mammb.code.piecetable.text;
 
 import com.mammb.code.piecetable.CharsetMatch;
+import com.mammb.code.piecetable.Progress;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -27,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Reader.
@@ -34,10 +36,15 @@ import java.util.List;
  */
 public class Reader {
 
+    /** The size of chunk to be read at a time. */
+    private static final int CHUNK_SIZE = 1024 * 64;
+    /** The byte length of the head of the file from which the charset is inferred. */
+    private static final int SAMPLE_LIMIT = 1024 * 1024;
+
     /** The row index. */
-    private final RowIndex index;
+    private RowIndex index;
     /** The byte order mark. */
-    private byte[] bom;
+    private byte[] bom = new byte[0];
     /** The charset read. */
     private Charset charset;
     /** The byte length read. */
@@ -45,18 +52,39 @@ public class Reader {
     /** The CharsetMatches. */
     private final List<CharsetMatch> matches = new ArrayList<>();
 
+    /** The sample of the bytes passed to the CharsetMatches. */
+    private byte[] sample;
+
+    /** The channel to be read in the background. */
+    private FileChannel channel;
+    /** The byte length of the file to be read in the background. */
+    private long size;
+    /** The progress listener of reading in the background. */
+    private Consumer<Progress> listener;
+    /** Whether the reading in the background is running. */
+    private boolean running;
+    /** Whether the reading in the background is cancelled. */
+    private volatile boolean cancelled;
+    /** The failure of reading in the background. */
+    private RuntimeException failure;
+
 
     /**
      * Constructor.
-     * @param path the path to be read
      * @param matches the CharsetMatches
      */
-    private Reader(Path path, CharsetMatch... matches) {
+    private Reader(CharsetMatch... matches) {
         this.index = RowIndex.of();
-        this.matches.addAll(Arrays.asList(matches));
-        if (path != null) {
-            readAll(path);
-        }
+        this.matches.addAll(CharsetMatches.combine(Arrays.asList(matches)));
+    }
+
+
+    /**
+     * Constructor.
+     * @param index the row index already read
+     */
+    private Reader(RowIndex index) {
+        this.index = index;
     }
 
 
@@ -66,7 +94,7 @@ public class Reader {
      * @return a new {@link Reader}.
      */
     public static Reader of(Path path) {
-        return new Reader(path, CharsetMatches.utf8(), CharsetMatches.ms932());
+        return of(path, CharsetMatches.defaults());
     }
 
 
@@ -77,7 +105,7 @@ public class Reader {
      * @return a new {@link Reader}.
      */
     public static Reader of(Path path, Charset charset) {
-        return new Reader(path, CharsetMatch.of(charset));
+        return of(path, CharsetMatch.of(charset));
     }
 
 
@@ -88,7 +116,69 @@ public class Reader {
      * @return a new {@link Reader}.
      */
     public static Reader of(Path path, CharsetMatch... matches) {
-        return new Reader(path, matches);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return of(channel, matches);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Create a new {@link Reader}.
+     * The channel is read with positional reads, so it can be shared with others.
+     * @param channel the channel to be read
+     * @return a new {@link Reader}.
+     */
+    public static Reader of(FileChannel channel) {
+        return of(channel, CharsetMatches.defaults());
+    }
+
+
+    /**
+     * Create a new {@link Reader}.
+     * The channel is read with positional reads, so it can be shared with others.
+     * @param channel the channel to be read
+     * @param matches the {@link CharsetMatch} used in reading the target file
+     * @return a new {@link Reader}.
+     */
+    public static Reader of(FileChannel channel, CharsetMatch... matches) {
+        var reader = new Reader(matches);
+        reader.readAll(channel);
+        return reader;
+    }
+
+
+    /**
+     * Create a new {@link Reader} already read.
+     * @param index the row index
+     * @param bom the byte order mark
+     * @param charset the charset
+     * @param length the byte length read
+     * @return a new {@link Reader}.
+     */
+    static Reader of(RowIndex index, byte[] bom, Charset charset, long length) {
+        var reader = new Reader(index);
+        reader.bom = bom;
+        reader.charset = charset;
+        reader.length = reader.size = length;
+        return reader;
+    }
+
+
+    /**
+     * Create a new {@link Reader} which reads the head of the file,
+     * and reads the rest in the background.
+     * The charset is inferred from the head of the file.
+     * The channel must be kept open until the whole file has been read.
+     * @param channel the channel to be read
+     * @param listener the progress listener, called on the background thread(nullable)
+     * @return a new {@link Reader}.
+     */
+    public static Reader ofAsync(FileChannel channel, Consumer<Progress> listener) {
+        var reader = new Reader(CharsetMatches.defaults());
+        reader.readAsync(channel, (listener == null) ? p -> { } : listener);
+        return reader;
     }
 
 
@@ -119,99 +209,221 @@ public class Reader {
     }
 
 
-    private void readAll(Path path) {
-
-        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+    /**
+     * Get whether the whole file has been read.
+     * @return {@code true}, if the whole file has been read
+     */
+    public synchronized boolean completed() {
+        return length >= size;
+    }
 
-            long size = channel.size();
 
-            int cap = 1024 * 64;
-            ByteBuffer buf = (size < cap)
-                ? ByteBuffer.allocate((int) size)
-                : ByteBuffer.allocateDirect(cap);
+    /**
+     * Cancels reading in the background.
+     * The rest of the file is read on demand by {@link #await(int)}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
 
-            byte[] bytes = new byte[buf.capacity()];
 
-            for (;;) {
-                buf.clear();
-                int n = channel.read(buf);
-                if (n < 0) {
-                    break;
+    /**
+     * Waits until the specified row has been read to its end, or the whole file has been read.
+     * If reading in the background has been cancelled, reads the file on the calling thread.
+     * @param row the number of row(zero origin)
+     */
+    public synchronized void await(int row) {
+        while (!completed() && index.rowSize() <= row + 1) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (running) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
                 }
+            } else {
+                readOnDemand(row);
+            }
+        }
+    }
 
-                buf.flip();
 
-                byte[] read = asBytes(buf, n, bytes);
-                if (length == 0) {
-                    bom = checkBom(read);
-                }
-                if (charset == null) {
-                    charset = checkCharset(read);
+    /**
+     * Waits until the whole file has been read.
+     */
+    public void awaitAll() {
+        await(Integer.MAX_VALUE - 1);
+    }
+
+
+    private void readAll(FileChannel channel) {
+        try {
+            size = channel.size();
+            ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.min(size, CHUNK_SIZE));
+            while (read(channel, buf)) { }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private void readAsync(FileChannel channel, Consumer<Progress> listener) {
+
+        this.channel = channel;
+        this.listener = listener;
+
+        try {
+            size = channel.size();
+            // read the head on the calling thread, to be able to show the first screen
+            read(channel, ByteBuffer.allocateDirect((int) Math.min(size, CHUNK_SIZE)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (charset == null) {
+            // fix the charset, as the rows already read are decoded by it
+            charset = StandardCharsets.UTF_8;
+        }
+        if (!completed()) {
+            running = true;
+            Thread.ofVirtual().name("piecetable-reader").start(this::readRest);
+        }
+    }
+
+
+    private void readRest() {
+        try {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            long notified = 0;
+            while (!cancelled && read(channel, buf)) {
+                if (length - notified >= size / 100) {
+                    notified = length;
+                    listener.accept(new Progress(length, size));
                 }
-                length += read.length;
-                index.add(read);
             }
+            if (completed()) {
+                listener.accept(new Progress(length, size));
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                failure = (e instanceof RuntimeException re) ? re : new RuntimeException(e);
+            }
+        } finally {
+            synchronized (this) {
+                running = false;
+                notifyAll();
+            }
+        }
+    }
+
 
+    private void readOnDemand(int row) {
+        try {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            while (index.rowSize() <= row + 1 && read(channel, buf)) { }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
 
-    private byte[] asBytes(ByteBuffer buf, int nRead, byte[] bytes) {
-        if (buf.isDirect()) {
-            if (nRead != bytes.length) {
-                byte[] rest = new byte[nRead];
-                buf.get(rest);
-                return rest;
-            } else {
-                buf.get(bytes);
-                return bytes;
+    /**
+     * Reads the next chunk of the channel into the index.
+     * The chunk is read with a positional read, and is scanned in place.
+     * @param channel the channel to be read
+     * @param buf the buffer used for reading
+     * @return {@code false}, if the end of the channel has been reached
+     * @throws IOException if some other I/O error occurs
+     */
+    private boolean read(FileChannel channel, ByteBuffer buf) throws IOException {
+
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, length + buf.position()) < 0) break;
+        }
+        if (buf.position() == 0) {
+            synchronized (this) {
+                size = length;
+            }
+            return false;
+        }
+
+        buf.flip();
+
+        if (length == 0) {
+            bom = checkBom(buf);
+        }
+        if (charset == null && length < SAMPLE_LIMIT) {
+            // if not decided within the sample, the charset falls back to the default
+            Charset detected = checkCharset(buf);
+            if (length == 0 || detected == null || NewlineScanner.of(detected) == NewlineScanner.BYTE) {
+                // the rows already indexed can not follow a charset of wider code units
+                charset = detected;
             }
-        } else {
-            return Arrays.copyOf(buf.array(), buf.limit());
         }
+        if (length == 0 && charset != null) {
+            // nothing has been indexed yet, so the index can follow the charset
+            index = RowIndex.of(charset);
+        }
+        index.add(buf);
+        synchronized (this) {
+            length += buf.limit();
+            notifyAll();
+        }
+        return true;
     }
 
 
-    private byte[] checkBom(byte[] bytes) {
-        if (bytes == null) {
-            return new byte[0];
-        } else if (bytes.length >= 3 &&
-            (bytes[0] & 0xFF) == 0xef &&
-            (bytes[1] & 0xFF) == 0xbb &&
-            (bytes[2] & 0xFF) == 0xbf) {
+    private byte[] checkBom(ByteBuffer buf) {
+        int n = buf.limit();
+        if (n >= 3 &&
+            (buf.get(0) & 0xFF) == 0xef &&
+            (buf.get(1) & 0xFF) == 0xbb &&
+            (buf.get(2) & 0xFF) == 0xbf) {
             charset = StandardCharsets.UTF_8;
-            return new byte[] { bytes[0], bytes[1], bytes[2] };
-        } else if (bytes.length >= 2 &&
-            (bytes[0] & 0xFF) == 0xfe &&
-            (bytes[1] & 0xFF) == 0xff) {
+            return new byte[] { buf.get(0), buf.get(1), buf.get(2) };
+        } else if (n >= 2 &&
+            (buf.get(0) & 0xFF) == 0xfe &&
+            (buf.get(1) & 0xFF) == 0xff) {
             charset = StandardCharsets.UTF_16BE;
-            return new byte[] { bytes[0], bytes[1] };
-        } else if (bytes.length >= 4 &&
-            (bytes[0] & 0xFF) == 0xff &&
-            (bytes[1] & 0xFF) == 0xfe &&
-            (bytes[2] & 0xFF) == 0x00 &&
-            (bytes[3] & 0xFF) == 0x00) {
+            return new byte[] { buf.get(0), buf.get(1) };
+        } else if (n >= 4 &&
+            (buf.get(0) & 0xFF) == 0xff &&
+            (buf.get(1) & 0xFF) == 0xfe &&
+            (buf.get(2) & 0xFF) == 0x00 &&
+            (buf.get(3) & 0xFF) == 0x00) {
             charset = Charset.forName("UTF_32LE");
-            return new byte[] { bytes[0], bytes[1], bytes[2], bytes[3] };
-        } else if (bytes.length >= 2 &&
-            (bytes[0] & 0xFF) == 0xff &&
-            (bytes[1] & 0xFF) == 0xfe) {
+            return new byte[] { buf.get(0), buf.get(1), buf.get(2), buf.get(3) };
+        } else if (n >= 2 &&
+            (buf.get(0) & 0xFF) == 0xff &&
+            (buf.get(1) & 0xFF) == 0xfe) {
             charset = StandardCharsets.UTF_16LE;
-            return new byte[] { bytes[0], bytes[1] };
-        } else if (bytes.length >= 4 &&
-            (bytes[0] & 0xFF) == 0x00 &&
-            (bytes[1] & 0xFF) == 0x00 &&
-            (bytes[2] & 0xFF) == 0xfe &&
-            (bytes[3] & 0xFF) == 0xff) {
+            return new byte[] { buf.get(0), buf.get(1) };
+        } else if (n >= 4 &&
+            (buf.get(0) & 0xFF) == 0x00 &&
+            (buf.get(1) & 0xFF) == 0x00 &&
+            (buf.get(2) & 0xFF) == 0xfe &&
+            (buf.get(3) & 0xFF) == 0xff) {
             charset = Charset.forName("UTF_32BE");
-            return new byte[] { bytes[0], bytes[1], bytes[2], bytes[3] };
+            return new byte[] { buf.get(0), buf.get(1), buf.get(2), buf.get(3) };
         }
         return new byte[0];
     }
 
 
+    private Charset checkCharset(ByteBuffer buf) {
+        // CharsetMatch takes a byte array, so only the chunks sampled are copied
+        if (sample == null || sample.length != buf.remaining()) {
+            sample = new byte[buf.remaining()];
+        }
+        buf.get(buf.position(), sample);
+        return checkCharset(sample);
+    }
+
+
     private Charset checkCharset(byte[] bytes) {
         return matches.stream().map(m -> m.put(bytes))
             .max(Comparator.naturalOrder())
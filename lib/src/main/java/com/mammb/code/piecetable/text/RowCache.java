@@ -0,0 +1,223 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * The LRU cache of the values of rows, such as the decoded rows, keyed by the number of row.
+ * Edits remove the rows changed, and shift the numbers of the rows after them,
+ * so the rows around the edit stay cached.
+ * This cache is not thread-safe.
+ * @param <V> the type of the value of a row
+ * @author Naotsugu Kobayashi
+ */
+class RowCache<V> {
+
+    /** The max number of rows cached. */
+    private final int capacity;
+    /** Whether a value is to be cached. */
+    private final Predicate<? super V> cacheable;
+    /** The rows cached, in the access order. */
+    private LinkedHashMap<Integer, V> rows;
+    /** The number of the rows found in the cache. */
+    private long hits;
+    /** The number of the rows not found in the cache. */
+    private long misses;
+
+
+    /**
+     * Constructor.
+     * @param capacity the max number of rows cached
+     * @param cacheable whether a value is to be cached
+     */
+    private RowCache(int capacity, Predicate<? super V> cacheable) {
+        this.capacity = capacity;
+        this.cacheable = cacheable;
+        this.rows = newMap();
+    }
+
+
+    /**
+     * Create a new {@link RowCache}.
+     * @param capacity the max number of rows cached
+     * @param <V> the type of the value of a row
+     * @return a new {@link RowCache}
+     */
+    static <V> RowCache<V> of(int capacity) {
+        return new RowCache<>(capacity, v -> true);
+    }
+
+
+    /**
+     * Create a new {@link RowCache}.
+     * @param capacity the max number of rows cached
+     * @param cacheable whether a value is to be cached, such as not too large
+     * @param <V> the type of the value of a row
+     * @return a new {@link RowCache}
+     */
+    static <V> RowCache<V> of(int capacity, Predicate<? super V> cacheable) {
+        return new RowCache<>(capacity, cacheable);
+    }
+
+
+    /**
+     * Get the value of the row, loading it if not cached.
+     * @param row the number of row(zero origin)
+     * @param loader the loader of the value of the row
+     * @return the value of the row
+     */
+    V get(int row, IntFunction<? extends V> loader) {
+        V value = rows.get(row);
+        if (value != null) {
+            hits++;
+            return value;
+        }
+        misses++;
+        value = loader.apply(row);
+        put(row, value);
+        return value;
+    }
+
+
+    /**
+     * Get the value of the row if cached, without loading it nor counting it as a hit or a miss.
+     * @param row the number of row(zero origin)
+     * @return the value of the row, or {@code null} if not cached
+     */
+    V peek(int row) {
+        return rows.get(row);
+    }
+
+
+    /**
+     * Put the value of the row, such as the one updated for an edit.
+     * @param row the number of row(zero origin)
+     * @param value the value of the row
+     */
+    void put(int row, V value) {
+        if (cacheable.test(value)) {
+            rows.put(row, value);
+        }
+    }
+
+
+    /**
+     * Removes the value of the row, such as the one to be updated for an edit.
+     * @param row the number of row(zero origin)
+     * @return the value removed, or {@code null}
+     */
+    V remove(int row) {
+        return rows.remove(row);
+    }
+
+
+    /**
+     * Updates the cache for the insertion into the specified row.
+     * @param row the number of row(zero origin) inserted into
+     * @param added the number of rows added by the insertion
+     */
+    void insert(int row, int added) {
+        rows.remove(row);
+        if (added > 0) {
+            shift(row + 1, row + 1, added);
+        }
+    }
+
+
+    /**
+     * Updates the cache for the deletion from the specified row.
+     * @param row the number of row(zero origin) deleted from
+     * @param removed the number of rows removed by the deletion, that is joined to the row
+     */
+    void delete(int row, int removed) {
+        rows.remove(row);
+        if (removed > 0) {
+            shift(row + 1, row + 1 + removed, -removed);
+        }
+    }
+
+
+    /**
+     * Clears the cache.
+     */
+    void clear() {
+        rows.clear();
+    }
+
+
+    /**
+     * Get the number of the rows found in the cache.
+     * @return the number of the rows found in the cache
+     */
+    long hits() {
+        return hits;
+    }
+
+
+    /**
+     * Get the number of the rows not found in the cache.
+     * @return the number of the rows not found in the cache
+     */
+    long misses() {
+        return misses;
+    }
+
+
+    /**
+     * Get the ratio of the rows found in the cache.
+     * @return the ratio of the rows found in the cache, or {@code 0} if not accessed yet
+     */
+    double hitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+
+    /**
+     * Removes the rows in {@code [from, to)}, and shifts the rows after them.
+     * The access order is kept.
+     * @param from the first row removed
+     * @param to the first row shifted
+     * @param delta the number of rows shifted by
+     */
+    private void shift(int from, int to, int delta) {
+        var shifted = newMap();
+        for (Map.Entry<Integer, V> e : rows.entrySet()) {
+            int row = e.getKey();
+            if (row < from) {
+                shifted.put(row, e.getValue());
+            } else if (row >= to) {
+                shifted.put(row + delta, e.getValue());
+            }
+        }
+        rows = shifted;
+    }
+
+
+    private LinkedHashMap<Integer, V> newMap() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+}
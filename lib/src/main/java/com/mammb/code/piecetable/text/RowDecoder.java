@@ -0,0 +1,200 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.PieceTable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Predicate;
+
+/**
+ * The decoder of rows into a destination.
+ * The bytes are read from the piece table chunk by chunk, and decoded with the buffers reused,
+ * so decoding a row creates neither a byte array nor a string of the row.
+ * <pre>
+ *   pieces --read--> chunk --decode--> out --append--> Appendable
+ *                          --decode------------------> CharBuffer
+ * </pre>
+ * Only a code point split between chunks is carried over in another buffer.
+ * The ASCII rows are widened to chars without a decoder.
+ * Malformed input is replaced as {@link String#String(byte[], Charset)} does.
+ * This decoder is not thread-safe.
+ * @author Naotsugu Kobayashi
+ */
+class RowDecoder {
+
+    /** The size of the buffers. */
+    private static final int BUFFER_SIZE = 1024 * 8;
+
+    /** The decoder of the charset. */
+    private final CharsetDecoder decoder;
+    /** The buffer of the chunk read from the piece table. */
+    private final ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+    /** The buffer of a code point split between chunks. */
+    private final ByteBuffer carry = ByteBuffer.allocate(BUFFER_SIZE);
+    /** The buffer of the chars decoded, for a destination other than {@link CharBuffer}. */
+    private final CharBuffer out = CharBuffer.allocate(BUFFER_SIZE);
+    /** The callback of the chunks, created once. */
+    private final Predicate<ByteBuffer> callback = this::accept;
+
+    /** The decoder of the row being decoded, or {@code null} if the row is ASCII. */
+    private CharsetDecoder dec;
+    /** The buffer into which the row is being decoded. */
+    private CharBuffer cb;
+    /** The destination of the row being decoded. */
+    private Appendable dst;
+    /** The byte length of the row not read yet. */
+    private int remaining;
+
+
+    /**
+     * Constructor.
+     * @param charset the charset
+     */
+    private RowDecoder(Charset charset) {
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+
+    /**
+     * Create a new {@link RowDecoder}.
+     * @param charset the charset
+     * @return a new {@link RowDecoder}
+     */
+    static RowDecoder of(Charset charset) {
+        return new RowDecoder(charset);
+    }
+
+
+    /**
+     * Decodes the specified range of the piece table into the destination.
+     * @param pt the piece table
+     * @param pos the start position of the range
+     * @param len the byte length of the range
+     * @param ascii whether the range consists of only ASCII bytes, and the charset decodes them as is
+     * @param dst the destination
+     */
+    void decode(PieceTable pt, long pos, int len, boolean ascii, Appendable dst) {
+        this.dec = ascii ? null : decoder.reset();
+        this.cb = (dst instanceof CharBuffer buf) ? buf : out.clear();
+        this.dst = dst;
+        this.remaining = len;
+        carry.clear();
+        try {
+            pt.read(pos, len, chunk, callback);
+            if (dec != null) {
+                if (len == 0 || remaining > 0) {
+                    // no chunk has been read as the end of input
+                    decode(carry.flip(), true);
+                }
+                while (dec.flush(cb).isOverflow()) {
+                    drain();
+                }
+            }
+            if (cb == out) {
+                drain();
+            }
+        } finally {
+            this.dst = null;
+        }
+    }
+
+
+    private boolean accept(ByteBuffer bytes) {
+        remaining -= bytes.remaining();
+        if (dec == null) {
+            widen(bytes);
+        } else if (carry.position() == 0) {
+            decode(bytes, remaining == 0);
+            // the head of a code point split, which is few bytes
+            carry.put(bytes);
+        } else {
+            while (bytes.hasRemaining()) {
+                int n = Math.min(carry.remaining(), bytes.remaining());
+                carry.put(carry.position(), bytes, bytes.position(), n).position(carry.position() + n);
+                bytes.position(bytes.position() + n);
+                decode(carry.flip(), remaining == 0 && !bytes.hasRemaining());
+                carry.compact();
+            }
+        }
+        return true;
+    }
+
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        while (dec.decode(bytes, cb, endOfInput).isOverflow()) {
+            drain();
+        }
+    }
+
+
+    /**
+     * Widens the ASCII bytes to chars.
+     * @param bytes the ASCII bytes
+     */
+    private void widen(ByteBuffer bytes) {
+        byte[] src = bytes.array();
+        for (int i = bytes.arrayOffset() + bytes.position(), end = i + bytes.remaining(); i < end; ) {
+            if (!cb.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(end - i, cb.remaining());
+            if (cb.hasArray()) {
+                char[] chars = cb.array();
+                int offset = cb.arrayOffset() + cb.position();
+                for (int k = 0; k < n; k++) {
+                    chars[offset + k] = (char) src[i + k];
+                }
+                cb.position(cb.position() + n);
+            } else {
+                for (int k = 0; k < n; k++) {
+                    cb.put((char) src[i + k]);
+                }
+            }
+            i += n;
+        }
+    }
+
+
+    /**
+     * Appends the chars decoded to the destination, and clears the buffer of them.
+     */
+    private void drain() {
+        if (cb != out) {
+            // the destination buffer itself is full
+            throw new BufferOverflowException();
+        }
+        out.flip();
+        try {
+            if (dst instanceof StringBuilder sb) {
+                sb.append(out.array(), 0, out.limit());
+            } else {
+                dst.append(out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        out.clear();
+    }
+
+}
@@ -15,11 +15,17 @@
  */
 package com.mammb.code.piecetable.text;
 
+import com.mammb.code.piecetable.LineEnding;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 
 /**
  * The RowIndex.
  * Holds the byte length of each row as an index.
+ * The index is thread-safe, as it can be built in the background
+ * while the document is being accessed.
  * <pre>
  *     |0|1|2|3|4|5|
  *  0|  a b $         rowLengths[0] = 3     stCache[0] = 0
@@ -29,14 +35,33 @@ import java.util.Arrays;
  *  4|  1 2 $         rowLengths[4] = 3           |
  *  5|  1 2 3 $       rowLengths[5] = 4     stCache[1] = 17
  * </pre>
+ * Rows are split on line feeds, and a row which ends with CRLF is flagged in {@code flags}.
+ * The index is given only the bytes edited, so a carriage return and a line feed
+ * brought together, or apart, by edits on the boundary are not seen by the index itself.
+ * The document refreshes the flag of the edited rows by {@link #refreshCrlf(int, byte[])}.
+ * <p>
+ * A row which may contain a byte of {@code 0x80} or over is also flagged, while scanning.
+ * The flag is kept conservatively through edits, as the bytes deleted are not seen by the index,
+ * so a row not flagged is surely ASCII, but a row flagged may be ASCII.
  * @author Naotsugu Kobayashi
  */
 public class RowIndex {
 
+    /** The flag of a row which ends with CRLF. */
+    private static final byte CRLF = 1;
+    /** The flag of a row which may contain a non-ASCII byte. */
+    private static final byte NON_ASCII = 2;
+
     /** The row lengths. */
     private int[] rowLengths;
     /** The length of row lengths array. */
     private int length;
+    /** The flags of rows, {@link #CRLF} and {@link #NON_ASCII}, in parallel with the row lengths. */
+    private byte[] flags;
+    /** The number of rows which end with CRLF. */
+    private int crlfCount;
+    /** Whether the bytes added last end with a carriage return. */
+    private boolean pendingCr;
 
     /** The sub-total cache. */
     private long[] stCache;
@@ -45,18 +70,24 @@ public class RowIndex {
     /** The sub-total cache interval. */
     private final int cacheInterval;
 
+    /** The newline scanner for the charset. */
+    private final NewlineScanner scanner;
+
 
     /**
      * Create a new {@code RowIndex}.
      * @param cacheInterval the sub-total cache interval
+     * @param scanner the newline scanner
      */
-    private RowIndex(int cacheInterval) {
+    private RowIndex(int cacheInterval, NewlineScanner scanner) {
         rowLengths = new int[] { 0 };
         length = 1;
+        flags = new byte[] { 0 };
 
         stCache = new long[] { 0 };
         cacheLength = 1;
         this.cacheInterval = cacheInterval;
+        this.scanner = scanner;
     }
 
 
@@ -65,7 +96,18 @@ public class RowIndex {
      * @return a new {@link RowIndex}
      */
     public static RowIndex of() {
-        return new RowIndex(100);
+        return new RowIndex(100, NewlineScanner.BYTE);
+    }
+
+
+    /**
+     * Create a new {@link RowIndex} for the specified charset.
+     * For UTF-16 and UTF-32, line feeds are found on the code unit boundaries.
+     * @param charset the charset of the bytes to be indexed
+     * @return a new {@link RowIndex}
+     */
+    public static RowIndex of(Charset charset) {
+        return new RowIndex(100, NewlineScanner.of(charset));
     }
 
 
@@ -75,7 +117,30 @@ public class RowIndex {
      * @return a new {@link RowIndex}
      */
     static RowIndex of(int cacheInterval) {
-        return new RowIndex(cacheInterval);
+        return new RowIndex(cacheInterval, NewlineScanner.BYTE);
+    }
+
+
+    /**
+     * Create a new {@link RowIndex} from the row lengths.
+     * @param charset the charset of the bytes indexed
+     * @param rowLengths the row lengths
+     * @param flags the flags of rows
+     * @return a new {@link RowIndex}
+     */
+    static RowIndex of(Charset charset, IntBuffer rowLengths, ByteBuffer flags) {
+        var index = new RowIndex(100, NewlineScanner.of(charset));
+        if (rowLengths.hasRemaining()) {
+            index.length = rowLengths.remaining();
+            index.rowLengths = new int[index.length];
+            rowLengths.get(index.rowLengths);
+            index.flags = new byte[index.length];
+            flags.get(index.flags);
+            for (byte flag : index.flags) {
+                index.crlfCount += flag & CRLF;
+            }
+        }
+        return index;
     }
 
 
@@ -84,29 +149,55 @@ public class RowIndex {
      * @param bytes the specified byte array to be added
      */
     public void add(byte[] bytes) {
-
-        int[] rows = rows(bytes);
-        if (rows.length == 0) {
-            return;
+        if (bytes != null) {
+            add(ByteBuffer.wrap(bytes));
         }
+    }
+
 
-        if (length + rows.length > rowLengths.length) {
-            rowLengths = grow(length + rows.length);
+    /**
+     * Adds the remaining bytes of the specified buffer to the index.
+     * The position of the buffer is not changed.
+     * @param buf the specified buffer to be added
+     */
+    public synchronized void add(ByteBuffer buf) {
+
+        if (!buf.hasRemaining()) {
+            return;
         }
 
         if (length == 0) {
             length++;
         }
-        for (int i = 0; i < rows.length; i++) {
-            rowLengths[length - 1] += rows[i];
-            if (rows.length > 1 && i < rows.length - 1) {
-                // rows |0|
-                // rows |0|length++|1|
-                // rows |0|length++|1|length++|2|
-                // rows |0|length++|1|length++|2|length++|3|
-                length++;
+
+        // rows |0|
+        // rows |0|length++|1|
+        // rows |0|length++|1|length++|2|
+        int unit = scanner.unit();
+        int from = buf.position();
+        int to = buf.limit();
+        // rows are checked one by one, only if the whole is not ASCII
+        boolean ascii = NewlineScanner.ascii(buf, from, to);
+        for (int i; (i = scanner.indexOf(buf, from, to)) >= 0; from = i + unit) {
+            rowLengths[length - 1] += i + unit - from;
+            if (!ascii && !NewlineScanner.ascii(buf, from, i)) {
+                flags[length - 1] |= NON_ASCII;
             }
+            if ((i == buf.position()) ? pendingCr : scanner.isCr(buf, i - unit)) {
+                flags[length - 1] |= CRLF;
+                crlfCount++;
+            }
+            if (length == rowLengths.length) {
+                grow(length + 1);
+            }
+            flags[length] = 0;
+            rowLengths[length++] = 0;
+        }
+        rowLengths[length - 1] += to - from;
+        if (!ascii && !NewlineScanner.ascii(buf, from, to)) {
+            flags[length - 1] |= NON_ASCII;
         }
+        pendingCr = scanner.isCr(buf, to - unit);
 
     }
 
@@ -121,13 +212,14 @@ public class RowIndex {
      * @param row the specified row
      * @return the total byte length of the specified row from the head
      */
-    public long get(int row) {
+    public synchronized long get(int row) {
 
         int startRow = 0;
         long startPos = 0;
 
-        int cacheIndex = row / cacheInterval;
-        if (cacheIndex > 0 && cacheIndex < cacheLength) {
+        // starts from the nearest cache, which may not reach the row yet
+        int cacheIndex = Math.min(row / cacheInterval, cacheLength - 1);
+        if (cacheIndex > 0) {
             startRow = cacheIndex * cacheInterval;
             startPos = stCache[cacheIndex];
         }
@@ -147,46 +239,107 @@ public class RowIndex {
     }
 
 
+    /**
+     * Gets the total byte lengths of the specified rows from the head, in a pass.
+     * @param rows the specified rows, in ascending order
+     * @return the total byte lengths of the specified rows from the head
+     */
+    public synchronized long[] get(int[] rows) {
+        long[] ret = new long[rows.length];
+        if (rows.length == 0) {
+            return ret;
+        }
+        int row = rows[0];
+        long pos = get(row);
+        for (int i = 0; i < rows.length; i++) {
+            for (; row < rows[i]; row++) {
+                pos += rowLengths[row];
+            }
+            ret[i] = pos;
+        }
+        return ret;
+    }
+
+
+    /**
+     * Gets the row containing the specified position.
+     * @param pos the position from the head
+     * @return the number of row(zero origin)
+     */
+    public synchronized int row(long pos) {
+        // fills the sub-total cache to the end, which is kept until the next edit
+        get(length);
+        int lo = 0;
+        int hi = cacheLength - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (stCache[mid] <= pos) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int row = lo * cacheInterval;
+        for (long st = stCache[lo]; row < length - 1 && st + rowLengths[row] <= pos; row++) {
+            st += rowLengths[row];
+        }
+        return row;
+    }
+
+
     /**
      * Insert the specified byte array to the index.
      * @param row the specified row
      * @param col the specified position in a row
      * @param bytes the specified byte array to be inserted
      */
-    public void insert(int row, int col, byte[] bytes) {
+    public synchronized void insert(int row, int col, byte[] bytes) {
 
-        int[] rows = rows(bytes);
-        if (rows.length == 0) {
+        if (bytes == null || bytes.length == 0) {
             return;
         }
 
-        if (length + rows.length > rowLengths.length) {
-            rowLengths = grow(length + rows.length);
-        }
         cacheLength = row / cacheInterval;
 
-        if (rows.length == 1) {
-
+        int lines = scanner.count(bytes, 0, bytes.length);
+        if (lines == 0) {
             // insert operation within a single row
-            rowLengths[row] += rows[0];
-
-        } else {
-
-            // insert operation across multiple rows
-            int head = col + rows[0];
-            int tail = (rowLengths[row] - col) + rows[rows.length - 1];
-
-            System.arraycopy(rowLengths, row + 1,
-                rowLengths, row + rows.length,
-                length - (row + 1));
-
-            rowLengths[row] = head;
-            System.arraycopy(rows, 1, rowLengths, row + 1, rows.length - 1 - 1);
-            rowLengths[row + rows.length - 1] = tail;
+            rowLengths[row] += bytes.length;
+            flags[row] |= nonAscii(bytes, 0, bytes.length);
+            return;
+        }
 
+        // insert operation across multiple rows
+        if (length + lines > rowLengths.length) {
+            grow(length + lines);
         }
+        int tail = rowLengths[row] - col;
+        byte tailFlag = flags[row];
+        System.arraycopy(rowLengths, row + 1,
+            rowLengths, row + 1 + lines,
+            length - (row + 1));
+        System.arraycopy(flags, row + 1,
+            flags, row + 1 + lines,
+            length - (row + 1));
+
+        rowLengths[row] = col;
+        // both the head and the tail of the row split take over the non-ASCII flag of the row
+        byte head = (byte) (tailFlag & NON_ASCII);
+        int unit = scanner.unit();
+        int from = 0;
+        for (int i; (i = scanner.indexOf(bytes, from, bytes.length)) >= 0; from = i + unit) {
+            // the row which ends with the line feed at the head is refreshed by the document
+            byte crlf = scanner.isCr(bytes, i - unit) ? CRLF : 0;
+            flags[row] = (byte) (head | crlf | nonAscii(bytes, from, i));
+            crlfCount += crlf;
+            head = 0;
+            rowLengths[row++] += i + unit - from;
+            rowLengths[row] = 0;
+        }
+        rowLengths[row] += (bytes.length - from) + tail;
+        flags[row] = (byte) (tailFlag | nonAscii(bytes, from, bytes.length));
 
-        length += rows.length - 1;
+        length += lines;
     }
 
 
@@ -196,7 +349,7 @@ public class RowIndex {
      * @param col the specified position in a row
      * @param len the specified byte length to be deleted
      */
-    public void delete(int row, int col, int len) {
+    public synchronized void delete(int row, int col, int len) {
 
         if (len <= 0) {
             return;
@@ -230,24 +383,232 @@ public class RowIndex {
             rowLengths[row] += (-len); // merge the rest to the first row
 
             if (lines > 0) {
+                // the first row takes over the line ending of the last row deleted
+                for (int i = row; i < row + lines; i++) {
+                    crlfCount -= flags[i] & CRLF;
+                }
+                flags[row] = (byte) (flags[row + lines] | (flags[row] & NON_ASCII));
                 System.arraycopy(
                     rowLengths, row + 1 + lines,
                     rowLengths, row + 1,
                     length - (row + 1 + lines));
+                System.arraycopy(
+                    flags, row + 1 + lines,
+                    flags, row + 1,
+                    length - (row + 1 + lines));
                 length -= lines;
             }
         }
     }
 
+    /**
+     * Replaces the specified ranges with the byte arrays at once.
+     * The row lengths are rebuilt in a pass, rather than edited range by range.
+     * <pre>
+     *  0 |a|b|$|         replace(            0 |a|x|$|
+     *  1 |c|d|$|   ->      positions = 1,4   1 |$|
+     *  2 |e|f|           lengths = 2,2       2 |x|$|
+     *                    bytes = x$,x$)      3 |f|
+     * </pre>
+     * A line feed just after a range takes over whether the replacement ends with a carriage return.
+     * The rows which end with a line feed at the head of a replacement, or just after an empty one,
+     * are not seen by the index itself, as with {@link #insert(int, int, byte[])}.
+     * @param positions the start positions of the ranges from the head, in ascending order without overlaps
+     * @param lengths the byte lengths of the ranges
+     * @param bytes the byte arrays to replace the ranges, one for each
+     * @param rows the array to receive the rows of the heads of the byte arrays, after the replacement
+     * @param cols the array to receive the positions in the rows of the heads of the byte arrays
+     */
+    public synchronized void replace(long[] positions, int[] lengths, byte[][] bytes, int[] rows, int[] cols) {
+
+        int unit = scanner.unit();
+        int[] newLengths = new int[length + 1];
+        byte[] newFlags = new byte[length + 1];
+        int n = 0;          // the number of rows completed
+        int current = 0;    // the byte length of the row being built
+        int row = 0;        // the current row of the old
+        long rowStart = 0;  // the position of the head of the current row of the old
+        long consumed = 0;  // the position up to which the old has been consumed
+        int tailCr = -1;    // whether the replacement just consumed ends with a carriage return, or unknown
+        int nonAscii = 0;   // the non-ASCII flag of the row being built
+
+        for (int i = 0; i <= positions.length; i++) {
+            long to = (i < positions.length) ? positions[i] : Long.MAX_VALUE;
+            // copies the old rows which end up to the range
+            while (row < length - 1 && rowStart + rowLengths[row] <= to) {
+                current += (int) (rowStart + rowLengths[row] - consumed);
+                if (n + 1 >= newLengths.length) {
+                    newLengths = Arrays.copyOf(newLengths, newLengths.length + (newLengths.length >> 1) + 1);
+                    newFlags = Arrays.copyOf(newFlags, newLengths.length);
+                }
+                int crlf = (tailCr >= 0 && rowStart + rowLengths[row] - unit == consumed)
+                    ? tailCr : flags[row] & CRLF;
+                newFlags[n] = (byte) (crlf | nonAscii | (flags[row] & NON_ASCII));
+                nonAscii = 0;
+                tailCr = -1;
+                newLengths[n++] = current;
+                current = 0;
+                consumed = rowStart += rowLengths[row++];
+            }
+            if (i == positions.length) {
+                current += (int) (rowStart + rowLengths[row] - consumed);
+                nonAscii |= flags[row] & NON_ASCII;
+                break;
+            }
+            if (to != consumed) {
+                tailCr = -1;
+                nonAscii |= flags[row] & NON_ASCII;
+            }
+            current += (int) (to - consumed);
+            rows[i] = n;
+            cols[i] = current;
+
+            // skips the old rows which end in the range
+            long end = to + lengths[i];
+            while (row < length - 1 && rowStart + rowLengths[row] <= end) {
+                rowStart += rowLengths[row++];
+            }
+            consumed = end;
+
+            // adds the rows of the replacement
+            int from = 0;
+            for (int k; (k = scanner.indexOf(bytes[i], from, bytes[i].length)) >= 0; from = k + unit) {
+                if (n + 1 >= newLengths.length) {
+                    newLengths = Arrays.copyOf(newLengths, newLengths.length + (newLengths.length >> 1) + 1);
+                    newFlags = Arrays.copyOf(newFlags, newLengths.length);
+                }
+                newFlags[n] = (byte) ((scanner.isCr(bytes[i], k - unit) ? CRLF : 0)
+                    | nonAscii | nonAscii(bytes[i], from, k));
+                nonAscii = 0;
+                newLengths[n++] = current + k + unit - from;
+                current = 0;
+            }
+            current += bytes[i].length - from;
+            nonAscii |= nonAscii(bytes[i], from, bytes[i].length);
+            if (bytes[i].length > 0) {
+                tailCr = scanner.isCr(bytes[i], bytes[i].length - unit) ? 1 : 0;
+            }
+        }
+        newLengths[n] = current;
+        newFlags[n] = (byte) nonAscii;
+
+        rowLengths = newLengths;
+        flags = newFlags;
+        length = n + 1;
+        crlfCount = 0;
+        for (int i = 0; i < length; i++) {
+            crlfCount += flags[i] & CRLF;
+        }
+        cacheLength = 1;
+    }
+
+
     /**
      * Get the size of rows.
      * @return the size of rows
      */
-    public int rowSize() {
+    public synchronized int rowSize() {
         return length;
     }
 
 
+    /**
+     * Gets the byte length of the specified row, including the line ending.
+     * @param row the specified row
+     * @return the byte length of the specified row, or {@code 0} if the row is beyond the last row
+     */
+    public synchronized int rowLength(int row) {
+        return (row < length) ? rowLengths[row] : 0;
+    }
+
+
+    /**
+     * Gets the byte length of the specified row, excluding the line ending.
+     * @param row the specified row
+     * @return the byte length of the specified row, excluding the line ending
+     */
+    public synchronized int contentLength(int row) {
+        if (row + 1 >= length) {
+            // the last row has no line ending
+            return rowLengths[row];
+        }
+        return rowLengths[row] - scanner.unit() * (1 + (flags[row] & CRLF));
+    }
+
+
+    /**
+     * Gets the line ending of the specified row.
+     * @param row the specified row
+     * @return the line ending of the specified row
+     */
+    public synchronized LineEnding lineEnding(int row) {
+        if (row + 1 >= length) {
+            return LineEnding.NONE;
+        }
+        return ((flags[row] & CRLF) == 0) ? LineEnding.LF : LineEnding.CRLF;
+    }
+
+
+    /**
+     * Gets the line ending of the whole index.
+     * @return {@link LineEnding#MIXED}, if both LF and CRLF are used
+     */
+    public synchronized LineEnding lineEnding() {
+        int lfCount = length - 1 - crlfCount;
+        if (crlfCount == 0) {
+            return (lfCount == 0) ? LineEnding.NONE : LineEnding.LF;
+        }
+        return (lfCount == 0) ? LineEnding.CRLF : LineEnding.MIXED;
+    }
+
+
+    /**
+     * Refreshes whether the specified row ends with CRLF.
+     * @param row the specified row
+     * @param tail the tail bytes of the row, up to two code units
+     */
+    synchronized void refreshCrlf(int row, byte[] tail) {
+        if (row + 1 >= length) {
+            return;
+        }
+        byte crlf = (tail.length == 2 * scanner.unit() && scanner.isCr(tail, 0)) ? CRLF : 0;
+        crlfCount += crlf - (flags[row] & CRLF);
+        flags[row] = (byte) ((flags[row] & ~CRLF) | crlf);
+    }
+
+
+    /**
+     * Gets whether the specified row consists of only ASCII bytes.
+     * A row edited may be reported as not ASCII even if it is, but never the reverse.
+     * @param row the specified row
+     * @return {@code true}, if all bytes of the row are less than {@code 0x80}
+     */
+    public synchronized boolean ascii(int row) {
+        return row >= length || (flags[row] & NON_ASCII) == 0;
+    }
+
+
+    /**
+     * Get the byte length of the code unit of the charset.
+     * @return the byte length of the code unit
+     */
+    int unit() {
+        return scanner.unit();
+    }
+
+
+    /**
+     * Gets the non-ASCII flag of the specified range.
+     * @param bytes the byte array
+     * @param from the start index, inclusive
+     * @param to the end index, exclusive
+     * @return {@link #NON_ASCII}, if the range contains a non-ASCII byte, otherwise {@code 0}
+     */
+    private static byte nonAscii(byte[] bytes, int from, int to) {
+        return NewlineScanner.ascii(bytes, from, to) ? 0 : NON_ASCII;
+    }
+
+
     /**
      * Converts the specified byte array to line-by-line byte length.
      * @param bytes the specified byte array
@@ -259,19 +620,16 @@ public class RowIndex {
             return new int[0];
         }
 
-        IntArray intArray = IntArray.of();
-
+        NewlineScanner scanner = NewlineScanner.BYTE;
+        int[] rows = new int[scanner.count(bytes, 0, bytes.length) + 1];
         int n = 0;
-        for (byte aByte : bytes) {
-            n++;
-            if (aByte == '\n') {
-                intArray.add(n);
-                n = 0;
-            }
+        int from = 0;
+        for (int i; (i = scanner.indexOf(bytes, from, bytes.length)) >= 0; from = i + 1) {
+            rows[n++] = i + 1 - from;
         }
-        intArray.add(n);
+        rows[n] = bytes.length - from;
 
-        return intArray.get();
+        return rows;
     }
 
 
@@ -284,10 +642,12 @@ public class RowIndex {
         int oldCapacity = rowLengths.length;
         if (oldCapacity > 0) {
             int newCapacity = Math.min(
-                Math.max(minCapacity, oldCapacity >> 1),
+                Math.max(minCapacity, oldCapacity + (oldCapacity >> 1)),
                 Integer.MAX_VALUE - 8);
+            flags = Arrays.copyOf(flags, newCapacity);
             return rowLengths = Arrays.copyOf(rowLengths, newCapacity);
         } else {
+            flags = new byte[Math.max(100, minCapacity)];
             return rowLengths = new int[Math.max(100, minCapacity)];
         }
     }
@@ -302,7 +662,7 @@ public class RowIndex {
         int oldCapacity = stCache.length;
         if (oldCapacity > 0) {
             int newCapacity = Math.min(
-                Math.max(minCapacity, oldCapacity >> 2),
+                Math.max(minCapacity, oldCapacity + (oldCapacity >> 1)),
                 Integer.MAX_VALUE - 8);
             return stCache = Arrays.copyOf(stCache, newCapacity);
         } else {
@@ -315,16 +675,38 @@ public class RowIndex {
      * Gets the row lengths array.
      * @return the row lengths array
      */
-    int[] rowLengths() {
+    synchronized int[] rowLengths() {
         return Arrays.copyOf(rowLengths, length);
     }
 
 
+    /**
+     * Gets the flags of rows which end with CRLF.
+     * @return the flags of rows which end with CRLF
+     */
+    synchronized byte[] crlfs() {
+        byte[] crlfs = new byte[length];
+        for (int i = 0; i < length; i++) {
+            crlfs[i] = (byte) (flags[i] & CRLF);
+        }
+        return crlfs;
+    }
+
+
+    /**
+     * Gets the flags of rows.
+     * @return the flags of rows
+     */
+    synchronized byte[] flags() {
+        return Arrays.copyOf(flags, length);
+    }
+
+
     /**
      * Gets the sub-total cache array.
      * @return the sub-total cache array
      */
-    long[] stCache() {
+    synchronized long[] stCache() {
         return Arrays.copyOf(stCache, cacheLength);
     }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+/**
+ * The search engine, which finds a byte pattern in a byte array.
+ * @author Naotsugu Kobayashi
+ */
+interface SearchEngine {
+
+    /**
+     * Gets the index of the first match in the specified range.
+     * @param bytes the byte array to be searched
+     * @param from the start index, inclusive
+     * @param to the end index, exclusive
+     * @return the index of the first match, or {@code -1} if not found
+     */
+    int indexOf(byte[] bytes, int from, int to);
+
+    /**
+     * Get the byte length of the pattern.
+     * @return the byte length of the pattern
+     */
+    int length();
+
+    /**
+     * Create a new {@link SearchEngine} suited to the specified pattern.
+     * Short patterns are found by scanning the first byte,
+     * and the longer are found by Boyer-Moore-Horspool, which skips more as the pattern grows.
+     * @param pattern the byte pattern to be found
+     * @return a new {@link SearchEngine}
+     */
+    static SearchEngine of(byte[] pattern) {
+        return (pattern.length < 4) ? new Memchr(pattern) : new Horspool(pattern);
+    }
+
+}
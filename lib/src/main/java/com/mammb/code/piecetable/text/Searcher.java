@@ -0,0 +1,691 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.FindOption;
+import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.PieceTable;
+import com.mammb.code.piecetable.Progress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongToIntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The searcher, which streams the piece table through a rolling window,
+ * and locates matches on rows by counting line feeds on the way.
+ * <pre>
+ *   chunk            |---------- n ----------|
+ *   window   | m - 1 |---------- n ----------|
+ *                                    \_ m - 1 _/ carried over to the next window
+ * </pre>
+ * Matches can span rows, and do not overlap each other.
+ * Matches are passed to a callback, or streamed lazily, a chunk read at a time.
+ * <p>
+ * A large piece table can also be searched in parallel. It is partitioned into byte ranges,
+ * each of which is read beyond its end by {@code m - 1} bytes, so that a match across
+ * partitions is found by the partition of its head.
+ * <pre>
+ *   partition  |------- 0 -------|------- 1 -------|------- 2 -------|
+ *   read       |------- 0 -------|m-1|
+ *                                |------- 1 -------|m-1|
+ * </pre>
+ * Partitions find all matches including overlapped ones, and count line feeds only in themselves.
+ * Then the results are merged in order, where rows are shifted by the line feeds of the
+ * preceding partitions, and overlapped matches are dropped as the sequential search does.
+ * <p>
+ * With {@link FindOption#WHOLE_WORD}, a match is accepted only if the chars before and after it
+ * are not word chars, which are decoded from the few bytes around the match.
+ * For the charsets which are not decoded correctly from the middle of a char, such as Shift_JIS,
+ * the char before a match is decoded from a char boundary instead, and a match of a pattern of chars
+ * is accepted only if it starts on a char boundary, not on the trailing byte of a char.
+ * @author Naotsugu Kobayashi
+ */
+class Searcher {
+
+    /** The size of chunk to be read at a time. */
+    private static final int CHUNK_SIZE = 1024 * 64;
+    /** The minimum byte length of a partition in parallel searches. */
+    private static final long MIN_PARTITION_SIZE = 1024 * 1024 * 4;
+    /** The char before a match, which starts in the middle of a char. */
+    private static final int MISALIGNED = -2;
+
+    /** The piece table. */
+    private final PieceTable pt;
+    /** The newline scanner. */
+    private final NewlineScanner scanner;
+    /** The byte length of the byte order mark. */
+    private final int bomLength;
+    /** The search engine. */
+    private final SearchEngine engine;
+    /** The charset to decode the chars around matches, or {@code null} if the pattern is of bytes. */
+    private final Charset charset;
+    /** Whether only whole words are matched. */
+    private final boolean wholeWord;
+    /** Whether the charset is decoded correctly from any code unit boundary, such as UTF-8. */
+    private final boolean resynchronizing;
+
+    /** The window. */
+    private byte[] window = new byte[0];
+    /** The position of the head of the window. */
+    private long windowStart;
+    /** The byte length of the window. */
+    private int windowLength;
+
+    /** The current row. */
+    private int row;
+    /** The position of the head of the current row. */
+    private long rowStart;
+    /** The position up to which line feeds have been counted. */
+    private long counted;
+    /** The position from which the next match is searched. */
+    private long next;
+    /** The position before which matches start. */
+    private long to;
+    /** Whether overlapped matches are found. */
+    private boolean overlapping;
+    /** The position to be read next. */
+    private long readPosition;
+    /** The position up to which the piece table is read. */
+    private long readEnd;
+    /** Whether searching has been stopped by the callback. */
+    private boolean stopped;
+    /** The position on a char boundary, from which the char before a match is decoded, or {@code -1} if unknown. */
+    private long wordHead = -1;
+
+
+    /**
+     * Constructor.
+     * @param pt the piece table
+     * @param scanner the newline scanner
+     * @param bomLength the byte length of the byte order mark
+     * @param engine the search engine
+     * @param charset the charset to decode the chars around matches, or {@code null} if the pattern is of bytes
+     * @param wholeWord whether only whole words are matched
+     */
+    private Searcher(PieceTable pt, NewlineScanner scanner, int bomLength, SearchEngine engine,
+            Charset charset, boolean wholeWord) {
+        this.pt = pt;
+        this.scanner = scanner;
+        this.bomLength = bomLength;
+        this.engine = engine;
+        this.charset = charset;
+        this.wholeWord = wholeWord;
+        this.resynchronizing = charset == null || resynchronizing(charset);
+    }
+
+
+    /**
+     * Create a new {@link Searcher}.
+     * @param pt the piece table
+     * @param charset the charset
+     * @param bomLength the byte length of the byte order mark
+     * @param pattern the byte pattern to be found
+     * @return a new {@link Searcher}
+     */
+    static Searcher of(PieceTable pt, Charset charset, int bomLength, byte[] pattern) {
+        return new Searcher(pt, NewlineScanner.of(charset), bomLength, SearchEngine.of(pattern), null, false);
+    }
+
+
+    /**
+     * Create a new {@link Searcher}.
+     * @param pt the piece table
+     * @param charset the charset
+     * @param bomLength the byte length of the byte order mark
+     * @param pattern the pattern to be found, which must not be empty
+     * @param options the options
+     * @return a new {@link Searcher}
+     */
+    static Searcher of(PieceTable pt, Charset charset, int bomLength, CharSequence pattern, FindOption... options) {
+        List<FindOption> opts = Arrays.asList(options);
+        charset = CaseFolding.unmarked(charset);
+        SearchEngine engine = (opts.contains(FindOption.IGNORE_CASE) && CaseFolding.hasCase(pattern.toString()))
+            ? new CaseFolding(pattern.toString(), charset)
+            : SearchEngine.of(pattern.toString().getBytes(charset));
+        return new Searcher(pt, NewlineScanner.of(charset), bomLength, engine,
+            charset, opts.contains(FindOption.WHOLE_WORD));
+    }
+
+
+    /**
+     * Searches the pattern from the specified position to the end.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @param consumer the consumer of the found, returns {@code false} to stop searching
+     */
+    void search(int row, long rowStart, long from, Predicate<Found> consumer) {
+        int m = engine.length();
+        scan(row, rowStart, from, pt.length(), false,
+            (pos, r, rs) -> consumer.test(new Found(r, col(pos, r, rs), m)));
+    }
+
+
+    /**
+     * Searches the pattern from the specified position to the end, in parallel.
+     * The partitions are searched on the {@link ForkJoinPool} of the calling thread,
+     * or on the common pool, and the piece table must be readable from multiple threads,
+     * such as {@link PieceTable#snapshot()}.
+     * The consumer is called on the calling thread, in the order of positions.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @param consumer the consumer of the found, returns {@code false} to stop searching
+     */
+    void searchParallel(int row, long rowStart, long from, Predicate<Found> consumer) {
+
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        int unit = scanner.unit();
+        long length = pt.length();
+        // a few partitions per worker, to balance the load
+        long size = Math.max(MIN_PARTITION_SIZE, (length - rowStart) / (pool.getParallelism() * 4L)) / unit * unit;
+        if (pool.getParallelism() <= 1 || length - rowStart <= size) {
+            search(row, rowStart, from, consumer);
+            return;
+        }
+
+        searchParallel(row, rowStart, from, size, consumer);
+    }
+
+
+    /**
+     * Searches the pattern from the specified position to the end, in parallel.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @param size the byte length of a partition, on the code unit boundary
+     * @param consumer the consumer of the found, returns {@code false} to stop searching
+     */
+    void searchParallel(int row, long rowStart, long from, long size, Predicate<Found> consumer) {
+
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        long length = pt.length();
+        List<Partition> partitions = new ArrayList<>();
+        for (long start = rowStart; start < length; start += size) {
+            partitions.add(new Partition(start, Math.min(start + size, length)));
+        }
+        List<ForkJoinTask<?>> tasks = partitions.stream().<ForkJoinTask<?>>map(ForkJoinTask::adapt).toList();
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+
+        int m = engine.length();
+        long next = from;
+        for (Partition partition : partitions) {
+            for (Hit hit : partition.hits) {
+                if (hit.pos < next) {
+                    continue;
+                }
+                int r = row + hit.row;
+                long rs = (hit.row == 0) ? rowStart : hit.rowStart;
+                if (!consumer.test(new Found(r, col(hit.pos, r, rs), m))) {
+                    return;
+                }
+                next = hit.pos + m;
+            }
+            if (partition.rows > 0) {
+                row += partition.rows;
+                rowStart = partition.rowStart;
+            }
+        }
+    }
+
+
+    /**
+     * Searches the pattern in the specified ranges only, such as the candidates narrowed by an index.
+     * Each range is searched for the matches starting in it, and matches overlapped with
+     * the preceding one are dropped, as the sequential search does.
+     * @param starts the start positions of the ranges, in ascending order
+     * @param ends the end positions of the ranges
+     * @param from the start position
+     * @param rowOf the function to get the row containing a position
+     * @param rowStartOf the function to get the position of the head of a row
+     * @param consumer the consumer of the found, returns {@code false} to stop searching
+     */
+    void search(long[] starts, long[] ends, long from,
+            LongToIntFunction rowOf, IntToLongFunction rowStartOf, Predicate<Found> consumer) {
+        int m = engine.length();
+        int unit = scanner.unit();
+        long[] next = { from };
+        for (int i = 0; i < starts.length && !stopped; i++) {
+            if (ends[i] <= from) {
+                continue;
+            }
+            long start = starts[i] - starts[i] % unit;
+            int row = rowOf.applyAsInt(start);
+            long rowStart = rowStartOf.applyAsLong(row);
+            scan(0, start, start, ends[i], true, (pos, r, rs) -> {
+                if (pos < next[0]) {
+                    return true;
+                }
+                next[0] = pos + m;
+                int foundRow = row + r;
+                long foundRowStart = (r == 0) ? rowStart : rs;
+                return consumer.test(new Found(foundRow, col(pos, foundRow, foundRowStart), m));
+            });
+        }
+    }
+
+
+    /**
+     * Searches the pattern from the specified position to the end, reporting the progress.
+     * The found are passed to the listener in batches, each time about one percent of the bytes is read.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @param listener the listener of the found since the last call, and the progress of the bytes read
+     * @param cancelled whether searching is cancelled, checked for each chunk
+     * @return all the found, up to the cancellation
+     */
+    List<Found> search(int row, long rowStart, long from,
+            BiConsumer<List<Found>, Progress> listener, BooleanSupplier cancelled) {
+        int m = engine.length();
+        List<Found> founds = new ArrayList<>();
+        Match match = (pos, r, rs) -> founds.add(new Found(r, col(pos, r, rs), m));
+        long total = pt.length() - rowStart;
+        long notified = -1;
+        int delivered = 0;
+        start(row, rowStart, from, pt.length(), false);
+        while (!cancelled.getAsBoolean() && (readPosition < readEnd || notified < total)) {
+            step(match);
+            long read = readPosition - rowStart;
+            if (read - notified >= total / 100 || readPosition >= readEnd) {
+                notified = read;
+                listener.accept(List.copyOf(founds.subList(delivered, founds.size())), new Progress(read, total));
+                delivered = founds.size();
+            }
+        }
+        return founds;
+    }
+
+
+    /**
+     * Searches the pattern from the specified position to the end, lazily.
+     * The piece table is read chunk by chunk as the stream is consumed,
+     * so only the matches in a chunk are held at a time.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @return the stream of the found
+     */
+    Stream<Found> stream(int row, long rowStart, long from) {
+        int m = engine.length();
+        Deque<Found> founds = new ArrayDeque<>();
+        Match match = (pos, r, rs) -> founds.add(new Found(r, col(pos, r, rs), m));
+        start(row, rowStart, from, pt.length(), false);
+        var spliterator = new Spliterators.AbstractSpliterator<Found>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Found> action) {
+                while (founds.isEmpty()) {
+                    if (!step(match)) {
+                        return false;
+                    }
+                }
+                action.accept(founds.poll());
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+
+    /**
+     * Scans the pattern in the specified range.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @param to the position before which matches start, and up to which line feeds are counted
+     * @param overlapping whether overlapped matches are found
+     * @param match the callback of matches
+     */
+    private void scan(int row, long rowStart, long from, long to, boolean overlapping, Match match) {
+        start(row, rowStart, from, to, overlapping);
+        while (step(match)) { }
+        if (!stopped && to <= windowStart + windowLength) {
+            locate(to);
+        }
+    }
+
+
+    /**
+     * Starts scanning the pattern in the specified range.
+     * @param row the row of the start position
+     * @param rowStart the position of the head of the row
+     * @param from the start position
+     * @param to the position before which matches start
+     * @param overlapping whether overlapped matches are found
+     */
+    private void start(int row, long rowStart, long from, long to, boolean overlapping) {
+        this.row = row;
+        this.rowStart = rowStart;
+        this.counted = rowStart;
+        this.next = from;
+        this.to = to;
+        this.overlapping = overlapping;
+        this.stopped = false;
+        this.wordHead = -1;
+        this.windowStart = rowStart;
+        this.windowLength = 0;
+        this.readPosition = rowStart;
+        // read ahead by whole code units, so that line feeds are counted on the code unit boundary
+        int unit = scanner.unit();
+        this.readEnd = Math.min(pt.length(), to + (engine.length() - 1 + unit - 1) / unit * unit);
+    }
+
+
+    /**
+     * Reads the next chunk, and scans it.
+     * @param match the callback of matches
+     * @return {@code false}, if the end has been reached or searching has been stopped
+     */
+    private boolean step(Match match) {
+        if (stopped || readPosition >= readEnd) {
+            return false;
+        }
+        pt.read(readPosition, Math.min(CHUNK_SIZE, readEnd - readPosition), chunk -> {
+            readPosition += chunk.remaining();
+            return accept(chunk, match);
+        });
+        return !stopped;
+    }
+
+
+    /**
+     * Accepts the chunk read.
+     * @param chunk the chunk
+     * @param match the callback of matches
+     * @return {@code false}, if searching is stopped
+     */
+    private boolean accept(ByteBuffer chunk, Match match) {
+
+        int n = chunk.remaining();
+        if (windowLength + n > window.length) {
+            window = Arrays.copyOf(window, windowLength + n);
+        }
+        chunk.get(window, windowLength, n);
+        windowLength += n;
+
+        int m = engine.length();
+        int unit = scanner.unit();
+        for (int i = (int) Math.max(0, next - windowStart); ; ) {
+            int k = engine.indexOf(window, i, windowLength);
+            if (k < 0) {
+                break;
+            }
+            long pos = windowStart + k;
+            if (pos >= to) {
+                break;
+            }
+            if (pos % unit != 0) {
+                // a match across code units, such as in UTF-16
+                i = k + 1;
+                continue;
+            }
+            if (!resynchronizing) {
+                // a match may start in the middle of a char, such as on the trailing byte of Shift_JIS
+                int before = charBefore(pos);
+                if (before == MISALIGNED || (wholeWord && (isWordChar(before) || isWordChar(pos + m, false)))) {
+                    i = k + unit;
+                    continue;
+                }
+            } else if (wholeWord && (isWordChar(pos, true) || isWordChar(pos + m, false))) {
+                i = k + unit;
+                continue;
+            }
+            locate(pos);
+            if (!match.accept(pos, row, rowStart)) {
+                stopped = true;
+                return false;
+            }
+            int skip = overlapping ? unit : m;
+            next = pos + skip;
+            i = k + skip;
+        }
+
+        // carries over the tail, which may be the head of a match across chunks
+        int carry = Math.min(windowLength, (m - 1 + unit - 1) / unit * unit);
+        locate(windowStart + windowLength - carry);
+        System.arraycopy(window, windowLength - carry, window, 0, carry);
+        windowStart += windowLength - carry;
+        windowLength = carry;
+        return true;
+    }
+
+
+    /**
+     * Counts line feeds up to the specified position, to locate the row.
+     * @param pos the position in the window, on the code unit boundary
+     */
+    private void locate(long pos) {
+        if (pos <= counted) {
+            return;
+        }
+        int unit = scanner.unit();
+        int to = (int) (pos - windowStart);
+        for (int i; (i = scanner.indexOf(window, (int) (counted - windowStart), to)) >= 0; ) {
+            row++;
+            rowStart = windowStart + i + unit;
+            counted = rowStart;
+        }
+        counted = pos;
+    }
+
+
+    /**
+     * Gets whether the char before or after the specified position is a word char.
+     * The char is decoded from the window if it is there, otherwise from the piece table.
+     * @param pos the position on the code unit boundary
+     * @param before {@code true} for the char before the position, {@code false} for the char after
+     * @return {@code true}, if the char is a letter, a digit, or an underscore
+     */
+    private boolean isWordChar(long pos, boolean before) {
+        // four bytes are enough for a char in any charset
+        long start = before ? Math.max(bomLength, pos - 4) : pos;
+        long end = before ? pos : Math.min(pt.length(), pos + 4);
+        if (start >= end) {
+            return false;
+        }
+        String str = new String(bytes(start, end), charset);
+        if (str.isEmpty()) {
+            return false;
+        }
+        return isWordChar(before ? str.codePointBefore(str.length()) : str.codePointAt(0));
+    }
+
+
+    /**
+     * Gets the char before the specified position, decoded from a char boundary before it,
+     * for the charsets which are not decoded correctly from the middle of a char, such as EUC-JP.
+     * The boundary is the head of the row at first, and advances to the char before the position,
+     * as the positions asked increase.
+     * @param pos the position on the code unit boundary
+     * @return the code point before the position, {@code -1} if none,
+     *     or {@link #MISALIGNED} if the position is in the middle of a char
+     */
+    private int charBefore(long pos) {
+        if (wordHead < 0 || wordHead > pos) {
+            wordHead = rowHead(pos);
+        }
+        byte[] bytes = bytes(wordHead, pos);
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                // a line feed is a char boundary, and resets the shift state of a stateful charset
+                wordHead += i + 1;
+                bytes = Arrays.copyOfRange(bytes, i + 1, bytes.length);
+                break;
+            }
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        CharBuffer out = CharBuffer.allocate(bytes.length + 1);
+        charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(in, out, false);
+        if (in.hasRemaining()) {
+            // the bytes of a char are left undecoded before the position
+            return MISALIGNED;
+        }
+        if (out.position() == 0) {
+            return -1;
+        }
+        int cp = Character.codePointBefore(out.array(), out.position());
+        byte[] last = Character.toString(cp).getBytes(charset);
+        if (cp != 0xFFFD && !ColumnMap.stateful(charset) && last.length <= bytes.length) {
+            wordHead = pos - last.length;
+        }
+        return cp;
+    }
+
+
+    /**
+     * Gets the position of the head of the row containing the specified position.
+     * @param pos the position
+     * @return the position of the head of the row
+     */
+    private long rowHead(long pos) {
+        for (long end = pos; end > bomLength; ) {
+            long start = Math.max(bomLength, end - 4096);
+            byte[] bytes = bytes(start, end);
+            for (int i = bytes.length - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return bomLength;
+    }
+
+
+    /**
+     * Gets the bytes of the specified range, from the window if it is there, otherwise from the piece table.
+     * @param start the start position
+     * @param end the end position
+     * @return the bytes
+     */
+    private byte[] bytes(long start, long end) {
+        return (start >= windowStart && end <= windowStart + windowLength)
+            ? Arrays.copyOfRange(window, (int) (start - windowStart), (int) (end - windowStart))
+            : pt.get(start, Math.toIntExact(end - start));
+    }
+
+
+    private static boolean isWordChar(int cp) {
+        return Character.isLetterOrDigit(cp) || cp == '_';
+    }
+
+
+    /**
+     * Gets whether the charset is decoded correctly from any code unit boundary,
+     * as UTF-8, UTF-16, UTF-32 and the single byte charsets are,
+     * so the char before a match is decoded from a few bytes before it.
+     * @param charset the charset
+     * @return {@code true}, if the charset is decoded correctly from any code unit boundary
+     */
+    private static boolean resynchronizing(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.startsWith("UTF-16") || name.startsWith("UTF-32") ||
+            (charset.canEncode() && charset.newEncoder().maxBytesPerChar() <= 1);
+    }
+
+
+    private int col(long pos, int row, long rowStart) {
+        return Math.toIntExact(pos - rowStart - ((row == 0) ? bomLength : 0));
+    }
+
+
+    /**
+     * The callback of matches.
+     */
+    @FunctionalInterface
+    private interface Match {
+        /**
+         * Accepts the match.
+         * @param pos the position of the match
+         * @param row the row of the match
+         * @param rowStart the position of the head of the row
+         * @return {@code false} to stop searching
+         */
+        boolean accept(long pos, int row, long rowStart);
+    }
+
+
+    /**
+     * The match found in a partition.
+     * @param pos the position of the match
+     * @param row the row of the match, relative to the head of the partition
+     * @param rowStart the position of the head of the row, if the row is not zero
+     */
+    private record Hit(long pos, int row, long rowStart) { }
+
+
+    /**
+     * The partition searched in parallel.
+     */
+    private class Partition implements Runnable {
+
+        /** The start position of the partition. */
+        private final long start;
+        /** The end position of the partition. */
+        private final long end;
+        /** The matches found. */
+        private final List<Hit> hits = new ArrayList<>();
+        /** The number of line feeds in the partition. */
+        private int rows;
+        /** The position of the head of the last row, if there are line feeds. */
+        private long rowStart;
+
+        /**
+         * Constructor.
+         * @param start the start position of the partition
+         * @param end the end position of the partition
+         */
+        Partition(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            var searcher = new Searcher(pt, scanner, 0, engine, charset, wholeWord);
+            searcher.scan(0, start, start, end, true, (pos, r, rs) -> hits.add(new Hit(pos, r, rs)));
+            rows = searcher.row;
+            rowStart = searcher.rowStart;
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.Viewport;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The implementation of {@link Viewport}.
+ * Holds a contiguous range of the decoded rows, which covers the window and the margin around.
+ * The rows are read from the {@link Source}, which resolves the range on the calling thread,
+ * and reads it from a snapshot on a virtual thread, when prefetched.
+ * The range read is tagged with the modification count of the source,
+ * and the rows of an older modification count are dropped.
+ * @author Naotsugu Kobayashi
+ */
+class ViewportImpl implements Viewport {
+
+    /** The source of the rows. */
+    private final Source source;
+    /** The number of rows prefetched above and below the window. */
+    private final int margin;
+    /** The top row of the window. */
+    private int top;
+    /** The number of rows of the window. */
+    private int size;
+
+    /** The first row of the rows read. */
+    private int start;
+    /** The rows read. */
+    private List<String> rows = new ArrayList<>();
+    /** The modification count of the source, when the rows were read. */
+    private long modCount;
+    /** The prefetch last started. */
+    private CompletableFuture<Void> prefetch = CompletableFuture.completedFuture(null);
+
+
+    /**
+     * The source of the rows.
+     */
+    interface Source {
+        /**
+         * Get the number of rows of the source.
+         * @return the number of rows
+         */
+        int rows();
+
+        /**
+         * Get the modification count of the source, which is changed by every edit.
+         * @return the modification count
+         */
+        long modCount();
+
+        /**
+         * Resolves the specified rows on the calling thread, to be read by the returned reader.
+         * The reader can be called from another thread, and reads the rows as of this call.
+         * @param startRow the start row(zero origin), inclusive
+         * @param endRow the end row, exclusive
+         * @param await whether to wait until the rows are indexed, otherwise the rows not indexed yet are cut off
+         * @return the reader of the rows, from the start row
+         */
+        Supplier<List<String>> read(int startRow, int endRow, boolean await);
+    }
+
+
+    /**
+     * Constructor.
+     * @param source the source of the rows
+     * @param size the number of rows of the window
+     * @param margin the number of rows prefetched above and below the window
+     */
+    private ViewportImpl(Source source, int size, int margin) {
+        if (size < 0 || margin < 0) {
+            throw new IllegalArgumentException("size[%d], margin[%d]".formatted(size, margin));
+        }
+        this.source = source;
+        this.size = size;
+        this.margin = margin;
+        this.modCount = source.modCount();
+    }
+
+
+    /**
+     * Create a new {@link ViewportImpl}.
+     * @param source the source of the rows
+     * @param size the number of rows of the window
+     * @param margin the number of rows prefetched above and below the window
+     * @return a new {@link ViewportImpl}
+     */
+    static ViewportImpl of(Source source, int size, int margin) {
+        return new ViewportImpl(source, size, margin);
+    }
+
+
+    @Override
+    public List<String> scrollAt(int top) {
+        this.top = Math.max(0, Math.min(top, source.rows() - 1));
+        List<String> window = rows();
+        prefetch();
+        return window;
+    }
+
+    @Override
+    public List<String> rows() {
+        int end = Math.min(top + size, source.rows());
+        synchronized (this) {
+            validate();
+            if (covers(top, end)) {
+                return List.copyOf(rows.subList(top - start, end - start));
+            }
+        }
+        List<String> window = source.read(top, end, true).get();
+        synchronized (this) {
+            merge(top, window, modCount, true);
+        }
+        return List.copyOf(window);
+    }
+
+    @Override
+    public String getText(int row) {
+        synchronized (this) {
+            validate();
+            if (covers(row, row + 1)) {
+                return rows.get(row - start);
+            }
+        }
+        List<String> list = source.read(row, row + 1, true).get();
+        return list.isEmpty() ? "" : list.getFirst();
+    }
+
+    @Override
+    public int top() {
+        return top;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void resize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size[%d]".formatted(size));
+        }
+        this.size = size;
+    }
+
+
+    /**
+     * Starts to prefetch the rows around the window, which are not read yet.
+     * The rows are prefetched up to the margin, once the rows read are less than half the margin,
+     * rather than on every scroll.
+     */
+    private void prefetch() {
+        int rowSize = source.rows();
+        int from = Math.max(0, top - margin);
+        int to = (int) Math.min(rowSize, (long) top + size + margin);
+        List<Integer> starts = new ArrayList<>(2);
+        List<Supplier<List<String>>> readers = new ArrayList<>(2);
+        long count;
+        synchronized (this) {
+            count = modCount;
+            int end = start + rows.size();
+            if (from < start && start > top - margin / 2) {
+                starts.add(from);
+                readers.add(source.read(from, start, false));
+            }
+            if (end < to && end < (long) top + size + margin / 2) {
+                starts.add(end);
+                readers.add(source.read(end, to, false));
+            }
+        }
+        if (readers.isEmpty()) {
+            return;
+        }
+        var future = new CompletableFuture<Void>();
+        Thread.ofVirtual().name("piecetable-viewport").start(() -> {
+            try {
+                for (int i = 0; i < readers.size(); i++) {
+                    List<String> list = readers.get(i).get();
+                    synchronized (this) {
+                        merge(starts.get(i), list, count, false);
+                    }
+                }
+                future.complete(null);
+            } catch (RuntimeException e) {
+                // the rows are to be read again, when accessed
+                future.completeExceptionally(e);
+            }
+        });
+        prefetch = future;
+    }
+
+
+    /**
+     * Drops the rows read, if the source has been modified since.
+     */
+    private void validate() {
+        long count = source.modCount();
+        if (modCount != count) {
+            modCount = count;
+            start = 0;
+            rows = new ArrayList<>();
+        }
+    }
+
+
+    /**
+     * Gets whether the rows read cover the specified range.
+     * @param from the start row, inclusive
+     * @param to the end row, exclusive
+     * @return {@code true}, if the rows read cover the range
+     */
+    private boolean covers(int from, int to) {
+        return start <= from && to <= start + rows.size();
+    }
+
+
+    /**
+     * Merges the rows into the rows read, and trims the rows far from the window.
+     * @param from the first row of the rows to be merged
+     * @param list the rows to be merged
+     * @param count the modification count of the source, when the rows were resolved
+     * @param replace whether to replace the rows read, if the rows are apart from them
+     */
+    private void merge(int from, List<String> list, long count, boolean replace) {
+        if (count != modCount || list.isEmpty()) {
+            return;
+        }
+        int end = start + rows.size();
+        int to = from + list.size();
+        if (rows.isEmpty() || to < start || end < from) {
+            if (!replace && !rows.isEmpty()) {
+                return;
+            }
+            start = from;
+            rows = new ArrayList<>(list);
+        } else {
+            int newStart = Math.min(start, from);
+            var merged = new ArrayList<String>(Math.max(end, to) - newStart);
+            merged.addAll(rows.subList(0, Math.max(0, Math.min(from, end) - start)));
+            merged.addAll(list);
+            if (end > to) {
+                merged.addAll(rows.subList(to - start, rows.size()));
+            }
+            start = newStart;
+            rows = merged;
+        }
+        // trims to the window and the margin
+        int head = Math.min(rows.size(), Math.max(start, top - margin) - start);
+        int tail = (int) Math.min(rows.size(), Math.max(head, (long) top + size + margin - start));
+        if (head > 0 || tail < rows.size()) {
+            rows = new ArrayList<>(rows.subList(head, tail));
+            start += head;
+        }
+    }
+
+
+    /**
+     * Get the prefetch last started.
+     * @return the prefetch last started
+     */
+    CompletableFuture<Void> prefetching() {
+        return prefetch;
+    }
+
+
+    /**
+     * Get the rows read.
+     * @return the rows read
+     */
+    synchronized List<String> cached() {
+        return Collections.unmodifiableList(rows);
+    }
+
+}
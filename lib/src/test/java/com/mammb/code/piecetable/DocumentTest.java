@@ -22,6 +22,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Flow;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -56,6 +62,184 @@ class DocumentTest {
 
     }
 
+    @Test
+    void utf16Text(@TempDir Path tempDir) throws IOException {
+        var path = tempDir.resolve("test.txt");
+        var bytes = new byte[] { (byte) 0xFF, (byte) 0xFE };
+        Files.write(path, bytes);
+        Files.write(path, "\u0A0Aa\nb".getBytes(StandardCharsets.UTF_16LE), StandardOpenOption.APPEND);
+
+        var doc = Document.of(path);
+        assertEquals(StandardCharsets.UTF_16LE, doc.charset());
+        assertEquals(2, doc.rows());
+        assertEquals("\u0A0Aa\n", doc.getText(0));
+
+        doc.insert(1, 1, "\n\u0A00c");
+        assertEquals(3, doc.rows());
+        assertEquals("b\n", doc.getText(1));
+        assertEquals("\u0A00c", doc.getText(2));
+
+        doc.save(path);
+        assertEquals(3, Document.of(path).rows());
+    }
+
+    @Test
+    void lineEnding(@TempDir Path tempDir) throws IOException {
+        var path = tempDir.resolve("test.txt");
+        Files.writeString(path, "ab\r\ncd\r\nef");
+        var doc = Document.of(path);
+        assertEquals(LineEnding.CRLF, doc.lineEnding());
+        assertEquals(2, doc.rawContentLength(0));
+        assertEquals(LineEnding.NONE, doc.lineEnding(2));
+
+        // CR and LF brought apart
+        doc.insert(0, 3, "x");
+        assertEquals(LineEnding.LF, doc.lineEnding(0));
+        assertEquals(4, doc.rawContentLength(0));
+        assertEquals(LineEnding.MIXED, doc.lineEnding());
+
+        // CR and LF brought together
+        doc.delete(0, 3, "x");
+        assertEquals(LineEnding.CRLF, doc.lineEnding(0));
+        assertEquals(LineEnding.CRLF, doc.lineEnding());
+
+        // LF inserted after CR
+        doc.insert(2, 1, "\r");
+        doc.insert(2, 2, "\n");
+        assertEquals(LineEnding.CRLF, doc.lineEnding(2));
+        assertEquals("e\r\n", doc.getText(2));
+        assertEquals(1, doc.rawContentLength(2));
+    }
+
+    @Test
+    void find() {
+        var doc = Document.of();
+        doc.insert(0, 0, "ab\ncd\nab\ncd");
+        assertEquals(List.of(new Found(0, 1, 3), new Found(2, 1, 3)), doc.findAll("b\nc"));
+        assertEquals(Optional.of(new Found(2, 0, 2)), doc.findNext("ab", 0, 1));
+        assertEquals(Optional.empty(), doc.findNext("ab", 2, 1));
+    }
+
+    @Test
+    void findUnbounded() {
+        var doc = Document.of();
+        doc.insert(0, 0, "a\n".repeat(40_000));
+        assertEquals(40_000, doc.findAll("a").size());
+        assertEquals(40_000, doc.find("a").count());
+        assertEquals(List.of(new Found(0, 0, 1), new Found(1, 0, 1)), doc.find("a").limit(2).toList());
+        assertEquals(0, Document.of().find("").count());
+    }
+
+    @Test
+    void findOptions() {
+        var doc = Document.of();
+        doc.insert(0, 0, "Straße STRASSE\nstraße_ straße");
+        assertEquals(List.of(new Found(0, 0, 7), new Found(1, 0, 7), new Found(1, 9, 7)),
+            doc.findAll("STRAßE", FindOption.IGNORE_CASE));
+        assertEquals(List.of(new Found(0, 0, 7), new Found(1, 9, 7)),
+            doc.findAll("straße", FindOption.IGNORE_CASE, FindOption.WHOLE_WORD));
+        assertEquals(Optional.of(new Found(1, 9, 7)),
+            doc.findNext("straße", 0, 1, FindOption.WHOLE_WORD));
+        assertEquals(2, doc.find("sTrAßE", FindOption.IGNORE_CASE).limit(2).count());
+    }
+
+    @Test
+    void findAllAsync() throws Exception {
+        var doc = Document.of();
+        doc.insert(0, 0, "ab\n".repeat(100_000));
+        List<Found> batches = new ArrayList<>();
+        List<Progress> progress = new ArrayList<>();
+        var future = doc.findAllAsync("b", (founds, p) -> { batches.addAll(founds); progress.add(p); });
+        doc.insert(0, 0, "b"); // after the snapshot
+
+        var founds = future.get();
+        assertEquals(100_000, founds.size());
+        assertEquals(new Found(99_999, 1, 1), founds.getLast());
+        assertEquals(founds, batches);
+        assertTrue(progress.size() > 1);
+        assertTrue(progress.getLast().completed());
+        assertEquals(List.of(), Document.of().findAllAsync("a", null).get());
+    }
+
+    @Test
+    void findAllAsyncCancel() throws Exception {
+        var doc = Document.of();
+        doc.insert(0, 0, "ab\n".repeat(1_000_000));
+        var latch = new java.util.concurrent.CountDownLatch(1);
+        var calls = new java.util.concurrent.atomic.AtomicInteger();
+        var future = doc.findAllAsync("b", (founds, p) -> {
+            calls.incrementAndGet();
+            try { latch.await(); } catch (InterruptedException ignore) { }
+        });
+        future.cancel(true);
+        latch.countDown();
+        Thread.sleep(200);
+        assertTrue(future.isCancelled());
+        assertTrue(calls.get() <= 1);
+    }
+
+    @Test
+    void replaceAll() {
+        var doc = Document.of();
+        doc.insert(0, 0, "ab\r\nxab\nab");
+        assertEquals(List.of(new Found(0, 0, 3), new Found(2, 1, 3), new Found(4, 0, 3)), doc.replaceAll("ab", "a\nb"));
+        assertEquals(List.of("a\n", "b\r\n", "xa\n", "b\n", "a\n", "b"),
+            java.util.stream.IntStream.range(0, doc.rows()).mapToObj(r -> doc.getText(r).toString()).toList());
+        assertEquals(LineEnding.CRLF, doc.lineEnding(1));
+
+        // a carriage return brought together with the line feed
+        doc.replaceAll("\nb", "\r");
+        assertEquals("a\r\r\n", doc.getText(0));
+        assertEquals(LineEnding.CRLF, doc.lineEnding(0));
+        assertEquals(List.of(), doc.replaceAll("zzz", ""));
+    }
+
+    @Test
+    void findAllPattern() {
+        var doc = Document.of();
+        doc.insert(0, 0, "aあb\nab\nxaあ\nb");
+        assertEquals(List.of(new Found(0, 0, 5), new Found(2, 1, 6)), doc.findAll(Pattern.compile("aあ\\s?b?")));
+        assertEquals(List.of(new Found(1, 0, 1), new Found(2, 0, 1)), doc.findAll(Pattern.compile("(?m)^a(?=b)|^x")));
+        assertEquals("ab\nxaあ\n", doc.charSequence(1, 3).toString());
+    }
+
+    @Test
+    void findPublisher() {
+        var doc = Document.of();
+        doc.insert(0, 0, "ab\ncd\nab\ncd\nab");
+        var publisher = doc.findPublisher("ab");
+        doc.insert(0, 0, "ab"); // after the snapshot
+
+        List<Object> signals = new ArrayList<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+            @Override public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+            @Override public void onNext(Found item) {
+                signals.add(item);
+                subscription.request(1);
+            }
+            @Override public void onError(Throwable throwable) { signals.add(throwable); }
+            @Override public void onComplete() { signals.add("complete"); }
+        });
+        assertEquals(List.of(new Found(0, 0, 2), new Found(2, 0, 2), new Found(4, 0, 2), "complete"), signals);
+
+        signals.clear();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(2);
+                subscription.cancel();
+                subscription.request(1);
+            }
+            @Override public void onNext(Found item) { signals.add(item); }
+            @Override public void onError(Throwable throwable) { signals.add(throwable); }
+            @Override public void onComplete() { signals.add("complete"); }
+        });
+        assertEquals(List.of(new Found(0, 0, 2), new Found(2, 0, 2)), signals);
+    }
+
     @Test
     void test() {
 
@@ -73,4 +257,37 @@ class DocumentTest {
 
     }
 
+    @Test
+    void ofAsync(@TempDir Path tempDir) throws IOException {
+        var path = tempDir.resolve("test.txt");
+        var sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) sb.append(i).append('\n');
+        Files.writeString(path, sb.toString());
+
+        var doc = Document.ofAsync(path, null);
+        assertEquals("0\n", doc.getText(0));
+        assertEquals("99999\n", doc.getText(99_999));
+
+        doc.insert(99_999, 0, "a\n");
+        assertEquals("a\n", doc.getText(99_999));
+        assertEquals("99999\n", doc.getText(100_000));
+
+        doc.findAll("x");
+        assertTrue(doc.indexCompleted());
+        assertEquals(100_002, doc.rows());
+    }
+
+    @Test
+    void ofCached(@TempDir Path tempDir) throws IOException {
+        var path = tempDir.resolve("test.txt");
+        Files.writeString(path, "abc\ndef\n");
+        var cacheDir = tempDir.resolve("cache");
+
+        var doc = Document.ofCached(path, cacheDir);
+        assertEquals(3, doc.rows());
+        doc = Document.ofCached(path, cacheDir);
+        assertEquals(3, doc.rows());
+        assertEquals("def\n", doc.getText(1));
+    }
+
 }
@@ -93,6 +93,27 @@ class TextEditTest {
 //
 //    }
 
+    @Test
+    void testReplaceAll() {
+        var te = TextEdit.of();
+        te.insert(0, 0, "Foo foo\nfoo bar");
+        te.flush();
+        assertEquals(List.of(new Found(0, 0, 3), new Found(0, 4, 3), new Found(1, 0, 3)),
+            te.replaceAll("FOO", "baz", FindOption.IGNORE_CASE));
+        assertEquals("baz baz\n", te.getText(0));
+        assertEquals("baz bar", te.getText(1));
+
+        te.undo();
+        assertEquals("Foo foo\n", te.getText(0));
+        assertEquals("foo bar", te.getText(1));
+
+        te.redo();
+        assertEquals("baz baz\n", te.getText(0));
+        assertEquals("baz bar", te.getText(1));
+        te.undo();
+        assertEquals("Foo foo\n", te.getText(0));
+    }
+
     @Test
     void testPos() {
         var pos1 = new TextEdit.Pos(0, 0);
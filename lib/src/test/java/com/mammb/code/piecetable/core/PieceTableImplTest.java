@@ -16,8 +16,14 @@
 package com.mammb.code.piecetable.core;
 
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * The test of {@link PieceTableImplTest}.
@@ -177,4 +183,101 @@ class PieceTableImplTest {
 
     }
 
+    @Test
+    void read() {
+        var pt = PieceTableImpl.of();
+        pt.insert(0, "abcdef".getBytes());
+        pt.insert(3, "123".getBytes());   // abc123def
+
+        var sb = new StringBuilder();
+        pt.read(2, 5, buf -> {
+            while (buf.hasRemaining()) sb.append((char) buf.get());
+            return true;
+        });
+        assertEquals("c123d", sb.toString());
+
+        // small pieces are packed into a chunk
+        sb.setLength(0);
+        pt.read(0, 100, buf -> {
+            while (buf.hasRemaining()) sb.append((char) buf.get());
+            return false;
+        });
+        assertEquals("abc123def", sb.toString());
+    }
+
+    @Test
+    void readWithBuffer() {
+        var pt = PieceTableImpl.of();
+        pt.insert(0, "abcdef".getBytes());
+        pt.insert(3, "123".getBytes());   // abc123def
+
+        // the chunks are as large as the buffer given
+        var buf = java.nio.ByteBuffer.allocate(4);
+        List<String> chunks = new ArrayList<>();
+        pt.read(1, 7, buf, chunk -> {
+            assertSame(buf, chunk);
+            chunks.add(new String(chunk.array(), 0, chunk.limit()));
+            return true;
+        });
+        assertEquals(List.of("bc12", "3de"), chunks);
+    }
+
+    @Test
+    void snapshot() {
+        var pt = PieceTableImpl.of();
+        pt.insert(0, "abcdef".getBytes());
+        pt.insert(3, "123".getBytes());   // abc123def
+
+        var snapshot = pt.snapshot();
+        pt.delete(0, 4);
+        pt.insert(0, "xyz".getBytes());
+        assertEquals("xyz23def", new String(pt.get(0, (int) pt.length())));
+
+        assertEquals(9, snapshot.length());
+        assertEquals("abc123def", new String(snapshot.get(0, 9)));
+        assertEquals("c12", new String(snapshot.get(2, 3)));
+        assertEquals("3de", new String(snapshot.get(5, 3)));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.insert(0, "a".getBytes()));
+    }
+
+    @Test
+    void snapshotWhileAppending() {
+        var pt = PieceTableImpl.of();
+        byte[] bytes = "0123456789".repeat(10_000).getBytes();
+        for (int i = 0; i < 10; i++) {
+            pt.insert(pt.length(), bytes);
+        }
+        var snapshot = pt.snapshot();
+        byte[] expected = snapshot.get(0, (int) snapshot.length());
+
+        // the append buffer grows into new arrays, while the snapshot is read
+        var reader = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 20; i++) {
+                assertArrayEquals(expected, snapshot.get(0, (int) snapshot.length()));
+            }
+        });
+        for (int i = 0; i < 1_000; i++) {
+            pt.insert(i, bytes);
+        }
+        reader.join();
+        assertArrayEquals(expected, snapshot.get(0, (int) snapshot.length()));
+    }
+
+    @Test
+    void replace() {
+        var pt = PieceTableImpl.of();
+        pt.insert(0, "abcdef".getBytes());
+        pt.insert(3, "123".getBytes());   // abc123def
+
+        byte[] x = "x".getBytes();
+        pt.replace(new long[] { 0, 2, 5, 8 }, new int[] { 1, 3, 2, 1 }, new byte[][] { x, "yy".getBytes(), new byte[0], x });
+        assertEquals("xbyyex", new String(pt.get(0, (int) pt.length())));
+        assertEquals(6, pt.length());
+
+        pt.replace(new long[] { 6 }, new int[] { 0 }, new byte[][] { "!".getBytes() });
+        assertEquals("xbyyex!", new String(pt.get(0, (int) pt.length())));
+        assertThrows(IndexOutOfBoundsException.class,
+            () -> pt.replace(new long[] { 2, 1 }, new int[] { 1, 1 }, new byte[][] { x, x }));
+    }
+
 }
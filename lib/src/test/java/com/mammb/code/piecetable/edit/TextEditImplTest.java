@@ -15,6 +15,7 @@
  */
 package com.mammb.code.piecetable.edit;
 
+import com.mammb.code.piecetable.Change;
 import com.mammb.code.piecetable.Document;
 import org.junit.jupiter.api.Test;
 import com.mammb.code.piecetable.edit.Edit.*;
@@ -49,6 +50,108 @@ class TextEditImplTest {
         assertEquals(new Pos(2, 2), pos);
     }
 
+    @Test
+    void testGetTextInto() {
+        var te = new TextEditImpl(Document.of());
+        te.insert(0, 0, "abc\ndef");
+        te.flush();
+        te.insert(1, 1, "x"); // not flushed yet
+
+        var sb = new StringBuilder();
+        te.getText(0, sb);
+        te.getText(1, sb);
+        assertEquals("abc\ndxef", sb.toString());
+    }
+
+    @Test
+    void testTextWindow() {
+        var random = new java.util.Random(1);
+        var model = new StringBuilder("aé😀".repeat(2500));
+        var te = new TextEditImpl(Document.of());
+        te.insert(0, 0, model + "\nabc");
+        te.flush();
+        for (int n = 0; n < 200; n++) {
+            if (n % 50 == 0) te.flush();
+            int col = random.nextInt(model.length() / 4) * 4; // on the boundary of "aé😀"
+            if (random.nextBoolean()) {
+                te.insert(0, col, "xy😀");
+                model.insert(col, "xy😀");
+            } else {
+                te.delete(0, col, 4);
+                model.delete(col, col + 4);
+            }
+            // pending edits are composed on the range, without the dry buffer
+            assertTrue(te.getDryBuffer().isEmpty());
+            assertEquals(model.length() + 1, te.textLength(0));
+            int from = Math.max(0, col - 10);
+            assertEquals(model.substring(from, Math.min(model.length(), from + 30)), te.text(0, from, 30));
+            var rest = model.substring(col);
+            assertEquals(List.of(rest + "\n", "a"), te.textRight(0, col, Texts.chLength(rest) + 2));
+            assertEquals(List.of(Texts.left(model.substring(col), 5)), te.textRight(0, col, 5));
+            assertEquals(List.of(Texts.right(model.substring(0, col), 5)), te.textLeft(0, col, 5));
+            assertEquals(List.of(model.substring(0, col)), te.textLeftByte(0, col, col));
+        }
+        assertEquals(model + "\n", te.getText(0));
+    }
+
+    @Test
+    void testGetTextRows() {
+        var te = new TextEditImpl(Document.of());
+        te.insert(0, 0, "abc\ndef\nghi\njkl");
+        te.flush();
+        te.insert(2, 1, "x"); // not flushed yet
+
+        assertEquals("abc\ndef\ngxhi\njkl", te.getText(0, 4));
+        assertEquals("def\ngxhi\n", te.getText(1, 3));
+        assertEquals("c\ndef\ngxhi\nj", te.getText(new Pos(0, 2), new Pos(3, 1)));
+        assertEquals(List.of("c\n", "def\n", "gxhi\n", "j"), te.getTexts(new Pos(3, 1), new Pos(0, 2)));
+        assertEquals(List.of("xh"), te.getTexts(new Pos(2, 1), new Pos(2, 3)));
+
+        te.getText(2); // applied on the dry buffer
+        assertEquals("def\ngxhi\n", te.getText(1, 3));
+        te.flush();
+        assertEquals("abc\ndef\ngxhi\njkl", te.getText(0, 10));
+    }
+
+    @Test
+    void testViewport() {
+        var te = new TextEditImpl(Document.of());
+        te.insert(0, 0, "abc\ndef\nghi\njkl");
+        te.flush();
+        var vp = te.viewport(2, 1);
+        assertEquals(List.of("def\n", "ghi\n"), vp.scrollAt(1));
+
+        te.insert(2, 1, "x"); // not flushed yet
+        assertEquals(List.of("def\n", "gxhi\n"), vp.rows());
+        assertEquals("gxhi\n", vp.getText(2));
+        te.flush();
+        assertEquals(List.of("def\n", "gxhi\n"), vp.rows());
+        te.undo();
+        assertEquals(List.of("ghi\n", "jkl"), vp.scrollAt(2));
+    }
+
+    @Test
+    void testChangeListener() {
+        var te = new TextEditImpl(Document.of());
+        te.insert(0, 0, "abc\ndef");
+        te.flush();
+        List<List<Change>> batches = new java.util.ArrayList<>();
+        te.addChangeListener(batches::add);
+
+        te.insert(List.of(new Pos(0, 1), new Pos(1, 1)), "*");
+        assertTrue(batches.isEmpty()); // not flushed yet
+        te.flush();
+        assertEquals(List.of(List.of(
+            new Change(1, 0, 1, 0, 0, 0),
+            new Change(6, 0, 1, 1, 1, 0))), batches);
+
+        batches.clear();
+        te.undo();
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.getFirst().size());
+        assertEquals("abc\ndef", te.getText(0, 2));
+    }
+
     @Test
     void testInsertMultiPos() {
         var te = new TextEditImpl(Document.of());
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.PieceTable;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The test of {@link CharSequenceView}.
+ * @author Naotsugu Kobayashi
+ */
+class CharSequenceViewTest {
+
+    @Test
+    void charAt() {
+        // multibyte chars across the blocks
+        var text = "aあ\n🍣".repeat(20_000);
+        var pt = PieceTable.of();
+        pt.insert(0, ("x" + text + "y").getBytes(StandardCharsets.UTF_8));
+
+        var view = CharSequenceView.of(pt, StandardCharsets.UTF_8, 1, pt.length() - 1);
+        assertEquals(text.length(), view.length());
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(text.charAt(i), view.charAt(i));
+        }
+        assertEquals(text.substring(30_000, 90_000), view.subSequence(30_000, 90_000).toString());
+        assertEquals(text, view.toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> view.charAt(text.length()));
+    }
+
+    @Test
+    void position() {
+        var text = "aあ\n🍣".repeat(20_000);
+        var pt = PieceTable.of();
+        pt.insert(0, text.getBytes(StandardCharsets.UTF_8));
+
+        var view = CharSequenceView.of(pt, StandardCharsets.UTF_8, 0, pt.length());
+        var matcher = Pattern.compile("🍣a").matcher(view);
+        int count = 0;
+        while (matcher.find()) {
+            // "aあ\n🍣" is 9 bytes, and "🍣" is at 5
+            assertEquals(count * 9L + 5, view.position(matcher.start()));
+            assertEquals(count * 9L + 10, view.position(matcher.end()));
+            assertEquals(count + 1, view.row(matcher.start()));
+            count++;
+        }
+        assertEquals(19_999, count);
+        assertEquals(pt.length(), view.position(view.length()));
+        assertEquals(0, view.position(0));
+    }
+
+    @Test
+    void malformed() {
+        var pt = PieceTable.of();
+        pt.insert(0, new byte[] { 'a', (byte) 0xE3, (byte) 0x81, 'b', '\n', 'c' });
+
+        var view = CharSequenceView.of(pt, StandardCharsets.UTF_8, 0, pt.length());
+        assertEquals("a�b\nc", view.toString());
+        assertEquals(3, view.position(2));
+        assertEquals(5, view.position(4));
+        assertEquals(1, view.row(4));
+    }
+
+    @Test
+    void empty() {
+        var view = CharSequenceView.of(PieceTable.of(), StandardCharsets.UTF_8, 0, 0);
+        assertEquals(0, view.length());
+        assertEquals(0, view.position(0));
+        assertEquals("", view.toString());
+    }
+
+}
@@ -15,11 +15,13 @@
  */
 package com.mammb.code.piecetable.text;
 
+import com.mammb.code.piecetable.CharsetMatch;
 import org.junit.jupiter.api.Test;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * The test of {@link CharsetMatches}.
@@ -40,4 +42,91 @@ class CharsetMatchesTest {
         var ret = ms932.put("あいうえお".getBytes(Charset.forName("windows-31j")));
         assertEquals(55, ret.confidence());
     }
+
+    @Test
+    void ms932AcrossChunks() {
+        var ms932 = CharsetMatches.ms932();
+        var bytes = "aあいうえお".getBytes(Charset.forName("windows-31j"));
+        ms932.put(java.util.Arrays.copyOfRange(bytes, 0, 2));
+        var ret = ms932.put(java.util.Arrays.copyOfRange(bytes, 2, bytes.length));
+        assertEquals(55, ret.confidence());
+    }
+
+    @Test
+    void defaults() {
+        var ascii = "abcdefgh".repeat(4);
+        var ret = CharsetMatches.defaults().put((ascii + "あいうえお" + ascii).getBytes(Charset.forName("windows-31j")));
+        assertEquals(Charset.forName("windows-31j"), ret.charset());
+        assertEquals(55, ret.confidence());
+
+        ret = CharsetMatches.defaults().put((ascii + "あ".repeat(100)).getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, ret.charset());
+        assertEquals(100, ret.confidence());
+    }
+
+    @Test
+    void invalidBytes() {
+        var bytes = new byte[1024];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) (0xf8 | (i & 0x07));
+        var out = System.out;
+        var captured = new java.io.ByteArrayOutputStream();
+        System.setOut(new java.io.PrintStream(captured));
+        try {
+            var ret = CharsetMatches.utf8().put(bytes);
+            assertTrue(ret.confidence() < 100);
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(0, captured.size());
+    }
+
+
+    @Test
+    void detect() {
+        var ja = "吾輩は猫である。名前はまだ無い。\nどこで生れたかとんと見当がつかぬ。何でも薄暗いじめじめした所で"
+            + "ニャーニャー泣いていた事だけは記憶している。\n";
+        var zh = "现在我们想向你介绍一下这个系统，下面是一些新的信息。\n学习中文很有意思，我们一起学习吧。\n";
+        var fr = "Il était une fois, à côté d'un château, une élève très déçue qui rêvait de crème brûlée.\n";
+        assertDetected("UTF-8", ja.repeat(3));
+        assertDetected("windows-31j", ja.repeat(3));
+        assertDetected("EUC-JP", ja.repeat(3));
+        assertDetected("ISO-2022-JP", ja.repeat(3));
+        assertDetected("GB18030", zh.repeat(3));
+        assertDetected("windows-1252", fr.repeat(6));
+        assertDetected("UTF-16LE", fr.repeat(2));
+        assertDetected("UTF-16BE", fr.repeat(2));
+    }
+
+    @Test
+    void detectUndecided() {
+        var ret = CharsetMatches.defaults().put("abc\n".repeat(1000).getBytes(StandardCharsets.US_ASCII));
+        assertTrue(ret.confidence() < 100);
+        var bytes = new byte[1024];
+        new java.util.Random(1).nextBytes(bytes);
+        assertTrue(CharsetMatches.defaults().put(bytes).confidence() < 100);
+    }
+
+    @Test
+    void of() {
+        var match = CharsetMatches.of(StandardCharsets.UTF_8, Charset.forName("EUC-JP"));
+        var ret = match.put("あいうえお".repeat(20).getBytes(Charset.forName("EUC-JP")));
+        assertEquals(Charset.forName("EUC-JP"), ret.charset());
+        assertEquals(100, ret.confidence());
+        org.junit.jupiter.api.Assertions.assertThrows(IllegalArgumentException.class,
+            () -> CharsetMatches.of(Charset.forName("UTF-32")));
+    }
+
+    private static void assertDetected(String expected, String text) {
+        var charset = Charset.forName(expected);
+        var bytes = text.getBytes(charset);
+        // put in small chunks, to be decided across chunks
+        var match = CharsetMatches.defaults();
+        CharsetMatch.Result ret = null;
+        for (int i = 0; i < bytes.length; i += 7) {
+            ret = match.put(java.util.Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + 7)));
+        }
+        assertEquals(charset, ret.charset(), expected);
+        assertEquals(100, ret.confidence(), expected);
+    }
+
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The test of {@link ColumnMap}.
+ * @author Naotsugu Kobayashi
+ */
+class ColumnMapTest {
+
+    @Test
+    void byteCol() {
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, Charset.forName("windows-31j") }) {
+            var text = (charset.name().startsWith("UTF") ? "aあ😀b" : "aあｱb").repeat(300) + "\n";
+            byte[] bytes = text.getBytes(charset);
+            var map = ColumnMap.of(bytes, charset);
+            for (int col = 0; col < text.length(); col++) {
+                if (Character.isLowSurrogate(text.charAt(col))) continue;
+                assertEquals(text.substring(0, col).getBytes(charset).length,
+                    map.byteCol(col, bytes.length, (c, l) -> Arrays.copyOfRange(bytes, c, c + l), charset),
+                    charset + " " + col);
+            }
+        }
+    }
+
+    @Test
+    void edit() {
+        var charset = StandardCharsets.UTF_8;
+        var text = new StringBuilder("aあé".repeat(500));
+        var map = ColumnMap.of(text.toString().getBytes(charset), charset);
+        var random = new java.util.Random(1);
+        for (int n = 0; n < 500; n++) {
+            int col = random.nextInt(text.length() + 1);
+            boolean narrow;
+            if (random.nextBoolean()) {
+                var str = "aあé".substring(random.nextInt(3));
+                narrow = map.insert(col, str.length(), str.getBytes(charset).length);
+                text.insert(col, str);
+            } else {
+                var str = text.substring(col, Math.min(text.length(), col + random.nextInt(300)));
+                narrow = map.delete(col, str.length(), str.getBytes(charset).length);
+                text.delete(col, col + str.length());
+            }
+            if (!narrow) {
+                map = ColumnMap.of(text.toString().getBytes(charset), charset);
+            }
+            byte[] bytes = text.toString().getBytes(charset);
+            for (int c = 0; c <= text.length(); c += 7) {
+                assertEquals(text.substring(0, c).getBytes(charset).length,
+                    map.byteCol(c, bytes.length, (rc, rl) -> Arrays.copyOfRange(bytes, rc, rc + rl), charset));
+            }
+        }
+    }
+
+    @Test
+    void ofWindows() {
+        // code points are split at the end of the windows
+        var charset = StandardCharsets.UTF_8;
+        var text = "aあ😀".repeat(20_000) + "\n";
+        byte[] bytes = text.getBytes(charset);
+        var map = ColumnMap.of(bytes.length, (c, l) -> Arrays.copyOfRange(bytes, c, c + l), charset);
+        assertEquals(text.length(), map.length());
+        for (int col = 0; col < text.length(); col += 997) {
+            if (Character.isLowSurrogate(text.charAt(col))) continue;
+            assertEquals(text.substring(0, col).getBytes(charset).length,
+                map.byteCol(col, bytes.length, (c, l) -> Arrays.copyOfRange(bytes, c, c + l), charset));
+        }
+    }
+}
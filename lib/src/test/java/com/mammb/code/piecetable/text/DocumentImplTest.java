@@ -15,6 +15,9 @@
  */
 package com.mammb.code.piecetable.text;
 
+import com.mammb.code.piecetable.Change;
+import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.Marker;
 import com.mammb.code.piecetable.PieceTable;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -23,6 +26,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -111,6 +115,153 @@ class DocumentImplTest {
 
 
 
+    @Test
+    void asciiRows(@TempDir Path tempDir) throws IOException {
+
+        var cs = java.nio.charset.Charset.forName("windows-31j");
+        var file = tempDir.resolve("file.txt");
+        Files.write(file, "ab\nあい\n".getBytes(cs));
+
+        var doc = new DocumentImpl(PieceTable.of(file), file, Reader.of(file, cs));
+        assertEquals("ab\n", doc.getText(0));
+        assertEquals("あい\n", doc.getText(1));
+
+        // the ASCII row becomes non-ASCII, and the rest is translated by the charset
+        doc.insert(0, 1, "う");
+        doc.insert(0, 2, "c");
+        assertEquals("aうcb\n", doc.getText(0));
+        doc.insert(1, 1, "d\n");
+        assertEquals("あd\n", doc.getText(1));
+        assertEquals("い\n", doc.getText(2));
+    }
+
+    @Test
+    void getTextInto(@TempDir Path tempDir) throws IOException {
+        String text = "ab\nあい\n\nΩαc";
+        for (var cs : List.of(StandardCharsets.UTF_8, StandardCharsets.UTF_16, java.nio.charset.Charset.forName("EUC-JP"))) {
+            var file = tempDir.resolve(cs.name() + ".txt");
+            Files.write(file, text.getBytes(cs));
+            var doc = new DocumentImpl(PieceTable.of(file), file, Reader.of(file, cs));
+            doc.insert(1, 1, "う");
+            doc.getText(1); // cached
+            long misses = doc.rowCache().misses();
+            var sb = new StringBuilder();
+            for (int row = 0; row < doc.rows(); row++) {
+                doc.getText(row, sb);
+            }
+            assertEquals("ab\nあうい\n\nΩαc", sb.toString(), cs.name());
+            // the rows not cached are not loaded into the cache
+            assertEquals(misses, doc.rowCache().misses(), cs.name());
+        }
+    }
+
+    @Test
+    void getTextRange() {
+        var random = new java.util.Random(1);
+        var longRow = "aé😀あ".repeat(3000) + "\n";
+        var asciiRow = "abc".repeat(3000) + "\n";
+        var text = longRow + "ab\n" + asciiRow + "é";
+        var doc = DocumentImpl.of();
+        doc.insert(0, 0, text.getBytes(StandardCharsets.UTF_8));
+        for (int row = 0; row < doc.rows(); row++) {
+            String expected = doc.getText(row).toString();
+            assertEquals(expected.length(), doc.textLength(row));
+            for (int n = 0; n < 50; n++) {
+                int col = random.nextInt(expected.length() + 10);
+                int len = random.nextInt(300);
+                int from = Math.min(col, expected.length());
+                var range = expected.substring(from, Math.min(expected.length(), from + len));
+                assertEquals(range, doc.getTextRange(row, col, len).toString(), row + " " + col + " " + len);
+            }
+        }
+        assertEquals(longRow, doc.getTextRange(0, 0, Integer.MAX_VALUE).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> doc.getTextRange(0, -1, 1));
+    }
+
+    @Test
+    void getRows(@TempDir Path tempDir) throws IOException {
+        var text = "ab\nあい\r\n\nc";
+        for (var cs : List.of(StandardCharsets.UTF_8, StandardCharsets.UTF_16)) {
+            var file = tempDir.resolve(cs.name() + ".txt");
+            Files.write(file, text.getBytes(cs)); // UTF-16 contains bom
+            var doc = new DocumentImpl(PieceTable.of(file), file, Reader.of(file, cs));
+            doc.insert(1, 1, "う");
+            assertEquals("ab\nあうい\r\n\nc", doc.getText(0, 4).toString());
+            assertEquals("あうい\r\n\n", doc.getText(1, 3).toString());
+            assertEquals("", doc.getText(2, 2).toString());
+            assertEquals("ab\n", new String(doc.get(0, 1), cs == StandardCharsets.UTF_16 ? StandardCharsets.UTF_16BE : cs));
+            assertThrows(IndexOutOfBoundsException.class, () -> doc.get(2, 5));
+            assertThrows(IndexOutOfBoundsException.class, () -> doc.get(2, 1));
+        }
+    }
+
+    @Test
+    void markers() {
+        var doc = DocumentImpl.of();
+        doc.insert(0, 0, "ab\ncd\nef");
+        var markers = doc.markers();
+        var caret = markers.add(1, 1, 0, Marker.Stickiness.NEVER_GROWS);
+        var hit = markers.add(doc.findAll("ef").getFirst(), Marker.Stickiness.NEVER_GROWS);
+
+        doc.insert(1, 1, "x\ny");
+        // ab$ | cx$ | yd$ | ef
+        assertEquals(new Found(2, 1, 0), markers.found(caret));
+        assertEquals(new Found(3, 0, 2), markers.found(hit));
+        assertEquals(List.of(caret), markers.find(2, 3));
+
+        doc.replace(doc.findAll("\n"), List.of("", "", ""));
+        // abcxydef
+        assertEquals(new Found(0, 5, 0), markers.found(caret));
+        assertEquals(new Found(0, 6, 2), markers.found(hit));
+
+        doc.delete(0, 4, 3);
+        // abcxf
+        assertEquals(new Found(0, 4, 0), markers.found(caret));
+        assertEquals(new Found(0, 4, 1), markers.found(hit));
+        assertSame(markers, doc.markers());
+    }
+
+    @Test
+    void changes() {
+        var doc = DocumentImpl.of();
+        doc.insert(0, 0, "ab\ncd\nef");
+        List<List<Change>> batches = new java.util.ArrayList<>();
+        java.util.function.Consumer<List<Change>> listener = batches::add;
+        doc.addChangeListener(listener);
+
+        doc.insert(1, 1, "x\ny");
+        assertEquals(List.of(List.of(new Change(4, 0, 3, 1, 2, 1))), batches);
+        // ab$ | cx$ | yd$ | ef
+
+        batches.clear();
+        doc.delete(1, 1, 3);
+        assertEquals(List.of(List.of(new Change(4, 3, 0, 1, 1, -1))), batches);
+        // ab$ | cd$ | ef
+
+        batches.clear();
+        var founds = doc.findAll("\n");
+        doc.replace(founds, List.of("", "\n\n"));
+        // abcd$ | $ | ef
+        assertEquals(List.of(List.of(
+            new Change(2, 1, 0, 0, 0, -1),
+            new Change(4, 1, 2, 0, 2, 1))), batches);
+
+        batches.clear();
+        doc.batch(() -> {
+            doc.insert(0, 0, "1");
+            doc.batch(() -> doc.insert(2, 0, "2"));
+            assertTrue(batches.isEmpty());
+        });
+        assertEquals(List.of(List.of(
+            new Change(0, 0, 1, 0, 0, 0),
+            new Change(7, 0, 1, 2, 2, 0))), batches);
+
+        batches.clear();
+        doc.removeChangeListener(listener);
+        doc.insert(0, 0, "a");
+        assertTrue(batches.isEmpty());
+    }
+
     @Test
     void utf16(@TempDir Path tempDir) throws IOException {
 
@@ -130,4 +281,106 @@ class DocumentImplTest {
         assertEquals("2def\n", doc.getText(2));
     }
 
+    @Test
+    void replaceRandom() {
+        var random = new java.util.Random(1);
+        String chars = "a\r\n";
+        for (int n = 0; n < 1000; n++) {
+            var text = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) text.append(chars.charAt(random.nextInt(chars.length())));
+            var doc = DocumentImpl.of();
+            doc.insert(0, 0, text.toString().getBytes());
+
+            String pattern = List.of("a", "\r", "\n", "\r\n", "a\r", "\na").get(random.nextInt(6));
+            List<Found> founds = doc.findAll(pattern);
+            String replacement = List.of("", "a", "\r", "\n", "\r\n", "a\r").get(random.nextInt(6));
+            int rows = doc.rows();
+            List<Change> changes = new java.util.ArrayList<>();
+            doc.addChangeListener(changes::addAll);
+            doc.replace(founds, java.util.Collections.nCopies(founds.size(), replacement));
+            assertEquals(doc.rows() - rows, changes.stream().mapToInt(Change::rowDelta).sum(), text.toString());
+
+            var fresh = DocumentImpl.of();
+            fresh.insert(0, 0, text.toString().replace(pattern, replacement).getBytes());
+            assertEquals(fresh.rows(), doc.rows(), text.toString());
+            for (int row = 0; row < fresh.rows(); row++) {
+                assertEquals(fresh.getText(row), doc.getText(row), text.toString());
+                assertEquals(fresh.lineEnding(row), doc.lineEnding(row), text + " " + row);
+            }
+        }
+    }
+
+
+    @Test
+    void editRandomCached() {
+        var random = new java.util.Random(1);
+        String chars = "aあ\r\n";
+        var doc = DocumentImpl.of();
+        var text = new StringBuilder();
+        for (int n = 0; n < 2000; n++) {
+            int row = random.nextInt(doc.rows());
+            String str = doc.getText(row).toString();
+            int col = random.nextInt(str.replaceFirst("\r?\n$", "").length() + 1);
+            int offset = offset(text, row) + col;
+            if (random.nextBoolean()) {
+                var cs = new StringBuilder();
+                for (int i = random.nextInt(4); i > 0; i--) cs.append(chars.charAt(random.nextInt(chars.length())));
+                doc.insert(row, col, cs);
+                text.insert(offset, cs);
+            } else {
+                String cs = text.substring(offset, Math.min(text.length(), offset + random.nextInt(4)));
+                doc.delete(row, col, cs);
+                text.delete(offset, offset + cs.length());
+            }
+            var fresh = DocumentImpl.of();
+            fresh.insert(0, 0, text.toString().getBytes());
+            assertEquals(fresh.rows(), doc.rows(), text.toString());
+            for (int r = 0; r < fresh.rows(); r++) {
+                assertEquals(fresh.getText(r), doc.getText(r), text.toString());
+            }
+        }
+        assertTrue(doc.rowCache().hitRate() > 0.5);
+    }
+
+    @Test
+    void editLongRowRandom() {
+        var random = new java.util.Random(1);
+        String chars = "aéあ";
+        var text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) text.append(chars.charAt(random.nextInt(chars.length())));
+        text.append("\nab\n").append(text);
+        var doc = DocumentImpl.of();
+        doc.insert(0, 0, text.toString().getBytes());
+        for (int n = 0; n < 1000; n++) {
+            int row = random.nextInt(doc.rows());
+            int col = random.nextInt(doc.getText(row).toString().replaceFirst("\n$", "").length() + 1);
+            int offset = offset(text, row) + col;
+            if (random.nextInt(3) > 0) {
+                var cs = (random.nextInt(50) == 0) ? "\n" : chars.substring(random.nextInt(chars.length()));
+                doc.insert(row, col, cs);
+                text.insert(offset, cs);
+            } else {
+                String cs = text.substring(offset, Math.min(text.length(), offset + random.nextInt(300)));
+                doc.delete(row, col, cs);
+                text.delete(offset, offset + cs.length());
+            }
+            if (n % 20 == 0) {
+                var fresh = DocumentImpl.of();
+                fresh.insert(0, 0, text.toString().getBytes());
+                assertEquals(fresh.rows(), doc.rows());
+                for (int r = 0; r < fresh.rows(); r++) {
+                    assertEquals(fresh.getText(r), doc.getText(r));
+                }
+            }
+        }
+    }
+
+    private static int offset(CharSequence text, int row) {
+        int offset = 0;
+        for (int r = 0; r < row; r++) {
+            offset = text.toString().indexOf('\n', offset) + 1;
+        }
+        return offset;
+    }
+
 }
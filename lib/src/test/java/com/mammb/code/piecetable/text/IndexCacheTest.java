@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The test of {@link IndexCache}.
+ * @author Naotsugu Kobayashi
+ */
+class IndexCacheTest {
+
+    @Test
+    void read(@TempDir Path tempDir) throws IOException {
+
+        var file = tempDir.resolve("file.txt");
+        Files.write(file, "a\nbc\ndef".getBytes(StandardCharsets.UTF_16));
+        var cache = IndexCache.of(tempDir.resolve("cache"));
+
+        assertTrue(cache.load(file).isEmpty());
+        var scanned = cache.read(file);
+        var loaded = cache.load(file).orElseThrow();
+
+        assertArrayEquals(scanned.index().rowLengths(), loaded.index().rowLengths());
+        assertArrayEquals(scanned.bom(), loaded.bom());
+        assertEquals(StandardCharsets.UTF_16BE, loaded.charset());
+        assertTrue(loaded.completed());
+    }
+
+    @Test
+    void readModified(@TempDir Path tempDir) throws IOException {
+
+        var file = tempDir.resolve("file.txt");
+        Files.write(file, "a\nbc\ndef".getBytes());
+        var cache = IndexCache.of(tempDir.resolve("cache"));
+        cache.read(file);
+
+        // the same size and possibly the same last modified time
+        Files.write(file, "ab\nc\ndef".getBytes());
+        assertTrue(cache.load(file).isEmpty());
+
+        var reader = cache.read(file);
+        assertArrayEquals(new int[] { 3, 2, 3 }, reader.index().rowLengths());
+        assertArrayEquals(new int[] { 3, 2, 3 }, cache.load(file).orElseThrow().index().rowLengths());
+    }
+
+    @Test
+    void readBroken(@TempDir Path tempDir) throws IOException {
+
+        var file = tempDir.resolve("file.txt");
+        Files.write(file, "a\nbc\ndef".getBytes());
+        var dir = tempDir.resolve("cache");
+        var cache = IndexCache.of(dir);
+        cache.read(file);
+
+        try (var entries = Files.list(dir)) {
+            for (Path entry : entries.toList()) {
+                Files.write(entry, new byte[] { 1, 2, 3 });
+            }
+        }
+        assertTrue(cache.load(file).isEmpty());
+        assertArrayEquals(new int[] { 2, 3, 3 }, cache.read(file).index().rowLengths());
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.Marker;
+import com.mammb.code.piecetable.Marker.Stickiness;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The test of {@link MarkerTree}.
+ * @author Naotsugu Kobayashi
+ */
+class MarkerTreeTest {
+
+    @Test
+    void insert() {
+        var tree = MarkerTree.of(new FixedRows(10));
+        var grows = tree.add(10, 20, Stickiness.GROWS);
+        var never = tree.add(10, 20, Stickiness.NEVER_GROWS);
+        var before = tree.add(10, 20, Stickiness.GROWS_BEFORE);
+        var after = tree.add(10, 20, Stickiness.GROWS_AFTER);
+        var caret = tree.add(20, 20, Stickiness.NEVER_GROWS);
+
+        tree.insert(10, 5);
+        assertRange(10, 25, grows);
+        assertRange(15, 25, never);
+        assertRange(10, 25, before);
+        assertRange(15, 25, after);
+        assertRange(25, 25, caret);
+
+        tree.insert(25, 5);
+        assertRange(10, 30, grows);
+        assertRange(15, 25, never);
+        assertRange(10, 25, before);
+        assertRange(15, 30, after);
+        assertRange(30, 30, caret);
+
+        tree.insert(0, 1);
+        assertRange(11, 31, grows);
+        assertRange(31, 31, caret);
+    }
+
+    @Test
+    void delete() {
+        var tree = MarkerTree.of(new FixedRows(10));
+        var over = tree.add(10, 20, Stickiness.GROWS);
+        var head = tree.add(5, 12, Stickiness.GROWS);
+        var tail = tree.add(15, 25, Stickiness.GROWS);
+        var in = tree.add(12, 14, Stickiness.GROWS);
+        var after = tree.add(30, 30, Stickiness.GROWS);
+
+        tree.delete(11, 5);
+        assertRange(10, 15, over);
+        assertRange(5, 11, head);
+        assertRange(11, 20, tail);
+        assertRange(11, 11, in);
+        assertRange(25, 25, after);
+    }
+
+    @Test
+    void remove() {
+        var tree = MarkerTree.of(new FixedRows(10));
+        var markers = new ArrayList<Marker>();
+        for (int i = 0; i < 100; i++) {
+            markers.add(tree.add(i, i + 1, Stickiness.GROWS));
+        }
+        tree.insert(50, 10);
+        assertTrue(tree.remove(markers.get(70)));
+        assertFalse(tree.remove(markers.get(70)));
+        assertTrue(markers.get(70).removed());
+        assertRange(80, 81, markers.get(70));
+        assertEquals(99, tree.size());
+        assertRange(81, 82, markers.get(71));
+
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertTrue(markers.get(0).removed());
+        assertRange(81, 82, markers.get(71));
+    }
+
+    @Test
+    void find() {
+        // rows of 10 bytes
+        var tree = MarkerTree.of(new FixedRows(10));
+        var a = tree.add(0, 3, 2, Stickiness.GROWS);
+        var b = tree.add(1, 5, 10, Stickiness.GROWS);
+        var c = tree.add(3, 0, 0, Stickiness.GROWS);
+        var d = tree.add(5, 9, 1, Stickiness.GROWS);
+
+        assertEquals(List.of(a), tree.find(0, 1));
+        assertEquals(List.of(b), tree.find(1, 2));
+        assertEquals(List.of(b), tree.find(2, 3));
+        assertEquals(List.of(c), tree.find(3, 4));
+        assertEquals(List.of(b, c), tree.find(2, 5));
+        assertEquals(List.of(d), tree.find(5, 100));
+        assertEquals(new Found(2, 5, 10), tree.found(tree.add(2, 5, 10, Stickiness.GROWS)));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.add(100, 0, 0, Stickiness.GROWS));
+    }
+
+    @Test
+    void random() {
+        var random = new Random(1);
+        var tree = MarkerTree.of(new FixedRows(10));
+        var markers = new ArrayList<Marker>();
+        var expected = new ArrayList<long[]>();
+        long length = 10_000;
+        for (int i = 0; i < 2_000; i++) {
+            long start = random.nextLong(length);
+            long end = Math.min(length, start + random.nextInt(3) * random.nextInt(50));
+            var stickiness = Stickiness.values()[random.nextInt(4)];
+            markers.add(tree.add(start, end, stickiness));
+            expected.add(new long[] { start, end });
+        }
+        for (int i = 0; i < 2_000; i++) {
+            long pos = random.nextLong(length);
+            int len = random.nextInt(30);
+            if (random.nextBoolean()) {
+                tree.insert(pos, len);
+                for (int j = 0; j < markers.size(); j++) {
+                    insert(expected.get(j), markers.get(j).stickiness(), pos, len);
+                }
+                length += len;
+            } else {
+                len = (int) Math.min(len, length - pos);
+                tree.delete(pos, len);
+                for (long[] range : expected) {
+                    delete(range, pos, len);
+                }
+                length -= len;
+            }
+            if (i % 10 == 0) {
+                int r = random.nextInt(markers.size());
+                tree.remove(markers.remove(r));
+                expected.remove(r);
+            }
+        }
+        assertEquals(markers.size(), tree.size());
+        for (int j = 0; j < markers.size(); j++) {
+            assertRange(expected.get(j)[0], expected.get(j)[1], markers.get(j));
+        }
+    }
+
+    private static void insert(long[] range, Stickiness stickiness, long pos, int len) {
+        long start = range[0];
+        long end = range[1];
+        if (start > pos || (start == pos && stickiness.startMoves())) start += len;
+        if (end > pos || (end == pos && stickiness.endMoves())) end += len;
+        range[0] = start;
+        range[1] = Math.max(start, end);
+    }
+
+    private static void delete(long[] range, long pos, int len) {
+        for (int i = 0; i < 2; i++) {
+            if (range[i] >= pos + len) {
+                range[i] -= len;
+            } else if (range[i] > pos) {
+                range[i] = pos;
+            }
+        }
+    }
+
+    private static void assertRange(long start, long end, Marker marker) {
+        assertEquals(start, marker.start(), marker.toString());
+        assertEquals(end, marker.end(), marker.toString());
+    }
+
+    /** The rows of the fixed byte length. */
+    private record FixedRows(int rowLength) implements MarkerTree.Rows {
+        @Override
+        public long start(int row) {
+            return (long) row * rowLength;
+        }
+        @Override
+        public int row(long pos) {
+            return (int) (pos / rowLength);
+        }
+        @Override
+        public int size() {
+            return 100;
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test of {@link NewlineScanner}.
+ * @author Naotsugu Kobayashi
+ */
+class NewlineScannerTest {
+
+    @Test
+    void indexOf() {
+        byte[] bytes = "0123456789abcdef\nghijklmnopqrstu\n\nv".getBytes();
+        assertEquals(16, NewlineScanner.BYTE.indexOf(bytes, 0, bytes.length));
+        assertEquals(32, NewlineScanner.BYTE.indexOf(bytes, 17, bytes.length));
+        assertEquals(33, NewlineScanner.BYTE.indexOf(bytes, 33, bytes.length));
+        assertEquals(-1, NewlineScanner.BYTE.indexOf(bytes, 34, bytes.length));
+        assertEquals(-1, NewlineScanner.BYTE.indexOf(bytes, 0, 16));
+    }
+
+    @Test
+    void indexOfEachLane() {
+        for (int i = 0; i < 20; i++) {
+            byte[] bytes = new byte[20];
+            bytes[i] = '\n';
+            assertEquals(i, NewlineScanner.BYTE.indexOf(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    void indexOfMultibyte() {
+        // no byte of multibyte characters is taken as a line feed
+        byte[] bytes = "あいうえおかきくけこ\nさ".getBytes(StandardCharsets.UTF_8);
+        assertEquals(30, NewlineScanner.BYTE.indexOf(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void count() {
+        byte[] bytes = "\n0123456\n\n89abcdef\n\n".getBytes();
+        assertEquals(5, NewlineScanner.BYTE.count(bytes, 0, bytes.length));
+        assertEquals(4, NewlineScanner.BYTE.count(bytes, 1, bytes.length));
+        assertEquals(2, NewlineScanner.BYTE.count(bytes, 0, 9));
+        assertEquals(0, NewlineScanner.BYTE.count(new byte[0], 0, 0));
+    }
+
+    @Test
+    void indexOfUtf16() {
+        // U+0A0A and U+0A00 contain 0x0A bytes, which are not line feeds
+        String str = "\u0A0A\u0A00a\nb\u0A0Ac\n";
+        for (Charset cs : List.of(StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE)) {
+            byte[] bytes = str.getBytes(cs);
+            var scanner = NewlineScanner.of(cs);
+            assertEquals(2, scanner.unit());
+            assertEquals(6, scanner.indexOf(bytes, 0, bytes.length));
+            assertEquals(14, scanner.indexOf(bytes, 8, bytes.length));
+            assertEquals(6, scanner.indexOf(ByteBuffer.wrap(bytes), 0, bytes.length));
+            assertEquals(2, scanner.count(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    void indexOfUtf32() {
+        String str = "\u0A0Aa\u0A00\nb\n";
+        for (Charset cs : List.of(Charset.forName("UTF-32LE"), Charset.forName("UTF-32BE"))) {
+            byte[] bytes = str.getBytes(cs);
+            var scanner = NewlineScanner.of(cs);
+            assertEquals(4, scanner.unit());
+            assertEquals(12, scanner.indexOf(bytes, 0, bytes.length));
+            assertEquals(20, scanner.indexOf(bytes, 16, bytes.length));
+            assertEquals(2, scanner.count(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    void indexOfEachLaneUtf16() {
+        for (int i = 0; i < 10; i++) {
+            char[] chars = new char[10];
+            Arrays.fill(chars, '\u0A0A');
+            chars[i] = '\n';
+            byte[] bytes = new String(chars).getBytes(StandardCharsets.UTF_16LE);
+            assertEquals(i * 2, NewlineScanner.of(StandardCharsets.UTF_16LE).indexOf(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    void ascii() {
+        for (int i = 0; i < 20; i++) {
+            byte[] bytes = "a".repeat(20).getBytes(StandardCharsets.US_ASCII);
+            assertTrue(NewlineScanner.ascii(bytes, 0, bytes.length));
+            bytes[i] = (byte) 0x80;
+            assertFalse(NewlineScanner.ascii(bytes, 0, bytes.length));
+            assertFalse(NewlineScanner.ascii(ByteBuffer.wrap(bytes), 0, bytes.length));
+            assertTrue(NewlineScanner.ascii(bytes, i + 1, bytes.length));
+            assertTrue(NewlineScanner.ascii(ByteBuffer.wrap(bytes), 0, i));
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.Document;
+import com.mammb.code.piecetable.PieceTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test of {@link NgramIndex}.
+ * @author Naotsugu Kobayashi
+ */
+class NgramIndexTest {
+
+    @Test
+    void candidates() {
+        var pt = PieceTable.of();
+        pt.insert(0, ("abcd\n".repeat(300_000) + "wxyz\n".repeat(100_000)).getBytes());
+        var ngrams = ready(NgramIndex.of(pt.snapshot()));
+
+        // "wxyz" only in the last block
+        long[][] ranges = ngrams.candidates(pt, "wxyz".getBytes());
+        assertArrayEquals(new long[] { NgramIndex.BLOCK_SIZE }, ranges[0]);
+        assertArrayEquals(new long[] { pt.length() }, ranges[1]);
+        assertEquals(0, ngrams.candidates(pt, "qqq".getBytes())[0].length);
+
+        // adjacent candidates are joined
+        ranges = ngrams.candidates(pt, "abcd".getBytes());
+        assertArrayEquals(new long[] { 0 }, ranges[0]);
+        assertArrayEquals(new long[] { pt.length() }, ranges[1]);
+
+        // edits mark the blocks dirty, and the blocks are indexed again
+        pt.insert(10, "qqq".getBytes());
+        ngrams.insert(10, 3);
+        ranges = ngrams.candidates(pt, "qqq".getBytes());
+        assertArrayEquals(new long[] { 0 }, ranges[0]);
+        assertArrayEquals(new long[] { NgramIndex.BLOCK_SIZE + 3 }, ranges[1]);
+
+        pt.delete(10, 3);
+        ngrams.delete(10, 3);
+        assertEquals(0, ngrams.candidates(pt, "qqq".getBytes())[0].length);
+    }
+
+    @Test
+    void editsWhileBuilding() {
+        var pt = PieceTable.of();
+        pt.insert(0, "0123456789".repeat(300_000).getBytes());
+        // "xyz" inserted in the third block, and the first block shrinks
+        var ngrams = NgramIndex.of(pt.snapshot());
+        pt.insert(NgramIndex.BLOCK_SIZE * 2L, "xyz".getBytes());
+        ngrams.insert(NgramIndex.BLOCK_SIZE * 2L, 3);
+        pt.delete(0, 5);
+        ngrams.delete(0, 5);
+
+        ready(ngrams);
+        long[][] ranges = ngrams.candidates(pt, "xyz".getBytes());
+        assertArrayEquals(new long[] { NgramIndex.BLOCK_SIZE - 5 }, ranges[0]);
+        assertArrayEquals(new long[] { pt.length() }, ranges[1]);
+    }
+
+    @Test
+    void searchEdited() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 400_000; i++) sb.append(i).append('\n');
+        var doc = Document.of();
+        doc.insert(0, 0, sb.toString());
+        var expected = Document.of();
+        expected.insert(0, 0, sb.toString());
+        doc.enableSearchIndex();
+
+        var random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            int row = random.nextInt(doc.rows() - 1);
+            if (random.nextBoolean()) {
+                doc.insert(row, 1, "x\n12");
+                expected.insert(row, 1, "x\n12");
+            } else {
+                doc.delete(row, 0, "1");
+                expected.delete(row, 0, "1");
+            }
+            for (String text : new String[] { "x\n1", "3999", "\n12" }) {
+                assertEquals(expected.findAll(text), doc.findAll(text), text);
+            }
+        }
+        assertEquals(expected.findNext("399999", 10, 0), doc.findNext("399999", 10, 0));
+    }
+
+    @Test
+    void literal() {
+        assertEquals(Optional.of(" ERROR:"), NgramIndex.literal(Pattern.compile("^\\d+ ERROR:.*$")));
+        assertEquals(Optional.of("abc"), NgramIndex.literal(Pattern.compile("x?abc+d*[ef]")));
+        assertEquals(Optional.of("a.b"), NgramIndex.literal(Pattern.compile("a.b", Pattern.LITERAL)));
+        assertEquals(Optional.of("cd"), NgramIndex.literal(Pattern.compile("(ab)?cd")));
+        assertEquals(Optional.empty(), NgramIndex.literal(Pattern.compile("abc|def")));
+        assertEquals(Optional.empty(), NgramIndex.literal(Pattern.compile("(?i)abc")));
+        assertEquals(Optional.empty(), NgramIndex.literal(Pattern.compile("abc", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    void literalEscapes() {
+        var text = "hello abcdef world";
+        var pt = PieceTable.of();
+        pt.insert(0, text.getBytes());
+        var ngrams = ready(NgramIndex.of(pt.snapshot()));
+        for (String regex : new String[] { "\\x61bcdef", "\\u0061bcdef", "\\0141bcdef", "a\\x62cdef",
+                "a\\x{62}cdef", "\\p{L}bcdef", "\\cJ?abcdef" }) {
+            var pattern = Pattern.compile(regex);
+            assertTrue(pattern.matcher(text).find(), regex);
+            // the blocks of the match are candidates of the literal, if any
+            assertTrue(NgramIndex.literal(pattern)
+                .map(literal -> ngrams.candidates(pt, literal.getBytes())[0].length > 0)
+                .orElse(true), regex);
+        }
+        assertEquals(Optional.of("cdef"), NgramIndex.literal(Pattern.compile("(a)(b)\\2cdef")));
+        assertEquals(Optional.of("cdef"), NgramIndex.literal(Pattern.compile("(a)\\12cdef")));
+    }
+
+    @Test
+    void literalSupplementary() {
+        // the quantifier is of the whole code point, not of the low surrogate
+        assertEquals(Optional.of("abc"), NgramIndex.literal(Pattern.compile("abc😀?")));
+        assertEquals(Optional.of("abc"), NgramIndex.literal(Pattern.compile("abc😀*")));
+        assertEquals(Optional.of("abc"), NgramIndex.literal(Pattern.compile("abc😀{0,2}")));
+        assertEquals(Optional.of("abc😀"), NgramIndex.literal(Pattern.compile("abc😀+")));
+
+        var pt = PieceTable.of();
+        pt.insert(0, "abc\n".repeat(10).getBytes());
+        var ngrams = ready(NgramIndex.of(pt.snapshot()));
+        String literal = NgramIndex.literal(Pattern.compile("abc😀?")).orElseThrow();
+        assertTrue(ngrams.candidates(pt, literal.getBytes())[0].length > 0);
+    }
+
+    private static NgramIndex ready(NgramIndex ngrams) {
+        while (!ngrams.ready()) Thread.onSpinWait();
+        return ngrams;
+    }
+
+}
@@ -19,9 +19,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,5 +68,71 @@ class ReaderTest {
 
     }
 
+    @Test
+    void readerAsync(@TempDir Path tempDir) throws Exception {
+
+        var file = tempDir.resolve("file.txt");
+        var sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) sb.append(i).append('\n');
+        Files.writeString(file, sb.toString());
+
+        try (var ch = FileChannel.open(file)) {
+            var latch = new CountDownLatch(1);
+            var reader = Reader.ofAsync(ch, p -> { if (p.completed()) latch.countDown(); });
+
+            reader.await(99_999);
+            assertEquals(100_001, reader.index().rowSize());
+            assertEquals(sb.length() - 6, reader.index().get(99_999));
+            assertEquals(StandardCharsets.UTF_8, reader.charset());
+
+            reader.awaitAll();
+            assertTrue(reader.completed());
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void readerAsyncCancel(@TempDir Path tempDir) throws IOException {
+
+        var file = tempDir.resolve("file.txt");
+        var sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) sb.append(i).append('\n');
+        Files.writeString(file, sb.toString());
+
+        try (var ch = FileChannel.open(file)) {
+            var reader = Reader.ofAsync(ch, null);
+            reader.cancel();
+
+            // read on demand
+            reader.await(50_000);
+            assertTrue(reader.index().rowSize() > 50_001);
+            assertEquals(sb.indexOf("50000\n"), reader.index().get(50_000));
+
+            reader.awaitAll();
+            assertTrue(reader.completed());
+            assertEquals(100_001, reader.index().rowSize());
+        }
+    }
+
+    @Test
+    void readerUtf16LeWithoutBom(@TempDir Path tempDir) throws IOException {
+
+        var file = tempDir.resolve("file.txt");
+        Files.write(file, "\u0A0A\n\u0A00b\nc".getBytes(StandardCharsets.UTF_16LE));
+
+        var reader = Reader.of(file, StandardCharsets.UTF_16LE);
+        assertArrayEquals(new int[] { 4, 6, 2 }, reader.index().rowLengths());
+    }
+
+    @Test
+    void readerEmpty(@TempDir Path tempDir) throws IOException {
+
+        var file = tempDir.resolve("file.txt");
+        Files.write(file, new byte[0]);
+
+        var reader = Reader.of(file);
+        assertEquals(1, reader.index().rowSize());
+        assertTrue(reader.completed());
+    }
 
 }
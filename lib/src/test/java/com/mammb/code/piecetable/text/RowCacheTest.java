@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The test of {@link RowCache}.
+ * @author Naotsugu Kobayashi
+ */
+class RowCacheTest {
+
+    @Test
+    void get() {
+        RowCache<String> cache = RowCache.of(2, text -> text.length() < 10);
+        assertEquals("0", cache.get(0, String::valueOf));
+        assertEquals("1", cache.get(1, String::valueOf));
+        assertEquals("0", cache.get(0, r -> "x"));
+        assertEquals("2", cache.get(2, String::valueOf)); // evicts row 1, the least recently used
+        assertEquals("0", cache.get(0, r -> "x"));
+        assertEquals("x", cache.get(1, r -> "x"));
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+        assertEquals(1 / 3.0, cache.hitRate(), 1e-9);
+
+        var longRow = "a".repeat(10);
+        assertEquals(longRow, cache.get(3, r -> longRow));
+        assertEquals("x", cache.get(3, r -> "x"));
+    }
+
+    @Test
+    void insert() {
+        RowCache<String> cache = RowCache.of(10);
+        for (int i = 0; i < 5; i++) cache.get(i, String::valueOf);
+        cache.insert(1, 2);
+        assertEquals("0", cache.get(0, r -> "x"));
+        assertEquals("x", cache.get(1, r -> "x"));
+        assertEquals("x", cache.get(2, r -> "x"));
+        assertEquals("x", cache.get(3, r -> "x"));
+        assertEquals("2", cache.get(4, r -> "x"));
+        assertEquals("4", cache.get(6, r -> "x"));
+    }
+
+    @Test
+    void delete() {
+        RowCache<String> cache = RowCache.of(10);
+        for (int i = 0; i < 6; i++) cache.get(i, String::valueOf);
+        cache.delete(1, 2);
+        assertEquals("0", cache.get(0, r -> "x"));
+        assertEquals("x", cache.get(1, r -> "x"));
+        assertEquals("4", cache.get(2, r -> "x"));
+        assertEquals("5", cache.get(3, r -> "x"));
+        assertEquals("x", cache.get(4, r -> "x"));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.PieceTable;
+import org.junit.jupiter.api.Test;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The test of {@link RowDecoder}.
+ * @author Naotsugu Kobayashi
+ */
+class RowDecoderTest {
+
+    @Test
+    void decode() {
+        // longer than the buffers, and split into pieces in the middle of code points
+        String text = "aあΩ𠀋".repeat(3000);
+        for (Charset cs : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, Charset.forName("EUC-JP") }) {
+            String expected = new String(text.getBytes(cs), cs);
+            byte[] bytes = expected.getBytes(cs);
+            var pt = PieceTable.of();
+            for (int i = 0; i < bytes.length; i += 1001) {
+                pt.insert(i, java.util.Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + 1001)));
+            }
+            var decoder = RowDecoder.of(cs);
+
+            var sb = new StringBuilder("x");
+            decoder.decode(pt, 0, bytes.length, false, sb);
+            assertEquals("x" + expected, sb.toString(), cs.name());
+
+            var writer = new StringWriter();
+            decoder.decode(pt, 0, bytes.length, false, writer);
+            assertEquals(expected, writer.toString(), cs.name());
+
+            var cb = CharBuffer.allocate(expected.length());
+            decoder.decode(pt, 0, bytes.length, false, cb);
+            assertEquals(expected, cb.flip().toString(), cs.name());
+        }
+    }
+
+    @Test
+    void decodeAscii() {
+        var pt = PieceTable.of();
+        pt.insert(0, "abc".getBytes());
+        var sb = new StringBuilder();
+        RowDecoder.of(Charset.forName("windows-31j")).decode(pt, 1, 2, true, sb);
+        assertEquals("bc", sb.toString());
+    }
+
+    @Test
+    void malformed() {
+        byte[] bytes = { 'a', (byte) 0xE3, (byte) 0x81, 'b', (byte) 0xFF };
+        var pt = PieceTable.of();
+        pt.insert(0, bytes);
+        var sb = new StringBuilder();
+        RowDecoder.of(StandardCharsets.UTF_8).decode(pt, 0, bytes.length, false, sb);
+        assertEquals(new String(bytes, StandardCharsets.UTF_8), sb.toString());
+    }
+
+    @Test
+    void overflow() {
+        var pt = PieceTable.of();
+        pt.insert(0, "abcdef".getBytes());
+        var decoder = RowDecoder.of(StandardCharsets.UTF_8);
+        assertThrows(BufferOverflowException.class, () -> decoder.decode(pt, 0, 6, false, CharBuffer.allocate(4)));
+        // the decoder can be used after the failure
+        var cb = CharBuffer.allocate(6);
+        decoder.decode(pt, 0, 6, false, cb);
+        assertEquals("abcdef", cb.flip().toString());
+    }
+
+}
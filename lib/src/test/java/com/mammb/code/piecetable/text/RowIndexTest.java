@@ -15,11 +15,15 @@
  */
 package com.mammb.code.piecetable.text;
 
+import com.mammb.code.piecetable.LineEnding;
 import org.junit.jupiter.api.Test;
 
 import java.nio.charset.StandardCharsets;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * The test of {@link RowIndex}.
@@ -82,6 +86,17 @@ class RowIndexTest {
         assertEquals(12, index.stCache()[1]);
     }
 
+    @Test
+    void getBeyondCache() {
+        var index = RowIndex.of(5);
+        index.add("a\n".repeat(30).getBytes());
+        assertEquals(40, index.get(20));
+        assertEquals(20, index.get(10));
+        assertEquals(58, index.get(29));
+        assertEquals(6, index.stCache().length);
+        assertEquals(50, index.stCache()[5]);
+    }
+
     @Test
     void insert() {
         var index = RowIndex.of(5);
@@ -333,4 +348,158 @@ class RowIndexTest {
         assertEquals(4, ret[1]);
         assertEquals(1, ret[2]);
     }
+    @Test
+    void addCrlf() {
+        var index = RowIndex.of();
+        index.add("ab\r\ncd\r".getBytes());
+        index.add("\nef\ngh".getBytes()); // CR and LF on the boundary of chunks
+
+        assertArrayEquals(new byte[] { 1, 1, 0, 0 }, index.crlfs());
+        assertEquals(LineEnding.CRLF, index.lineEnding(0));
+        assertEquals(LineEnding.CRLF, index.lineEnding(1));
+        assertEquals(LineEnding.LF, index.lineEnding(2));
+        assertEquals(LineEnding.NONE, index.lineEnding(3));
+        assertEquals(LineEnding.MIXED, index.lineEnding());
+
+        assertEquals(2, index.contentLength(0));
+        assertEquals(2, index.contentLength(1));
+        assertEquals(2, index.contentLength(2));
+        assertEquals(2, index.contentLength(3));
+    }
+
+    @Test
+    void insertDeleteCrlf() {
+        var index = RowIndex.of();
+        index.add("ab\r\ncd".getBytes());
+        assertEquals(LineEnding.CRLF, index.lineEnding());
+
+        index.insert(0, 1, "x\r\ny\nz".getBytes());
+        // ax\r\n y\n zb\r\n cd
+        assertArrayEquals(new byte[] { 1, 0, 1, 0 }, index.crlfs());
+        assertEquals(LineEnding.MIXED, index.lineEnding());
+
+        index.delete(0, 1, 6);
+        // a takes over the line ending of the row deleted last
+        assertArrayEquals(new int[] { 4, 2 }, index.rowLengths());
+        assertArrayEquals(new byte[] { 1, 0 }, index.crlfs());
+        assertEquals(LineEnding.CRLF, index.lineEnding());
+    }
+
+    @Test
+    void refreshCrlf() {
+        var index = RowIndex.of();
+        index.add("ab\ncd".getBytes());
+        index.refreshCrlf(0, "\r\n".getBytes());
+        assertEquals(LineEnding.CRLF, index.lineEnding(0));
+        index.refreshCrlf(0, "b\n".getBytes());
+        assertEquals(LineEnding.LF, index.lineEnding());
+        index.refreshCrlf(1, "\r\n".getBytes());
+        assertEquals(LineEnding.NONE, index.lineEnding(1));
+    }
+
+    @Test
+    void addCrlfUtf16() {
+        var index = RowIndex.of(StandardCharsets.UTF_16LE);
+        index.add("a\r\nb\n".getBytes(StandardCharsets.UTF_16LE));
+        assertEquals(LineEnding.CRLF, index.lineEnding(0));
+        assertEquals(LineEnding.LF, index.lineEnding(1));
+        assertEquals(2, index.contentLength(0));
+        assertEquals(2, index.contentLength(1));
+    }
+
+    @Test
+    void ascii() {
+        var index = RowIndex.of();
+        index.add("ab\ncé\n".getBytes(StandardCharsets.UTF_8));
+        index.add("d\né".getBytes(StandardCharsets.UTF_8));
+        assertTrue(index.ascii(0));
+        assertFalse(index.ascii(1));
+        assertTrue(index.ascii(2));
+        assertFalse(index.ascii(3));
+
+        // ab\n  cé\n  d\n  é  ->  aé\n  x\n  b\n  cé\n  d\n  é
+        index.insert(0, 1, "é\nx\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(index.ascii(0));
+        assertTrue(index.ascii(1));
+        assertTrue(index.ascii(2));
+
+        // the rows joined take over the flags of both  ->  aé\n  xcé\n  d\n  é
+        index.delete(1, 1, 3);
+        assertArrayEquals(new int[] { 4, 5, 2, 2 }, index.rowLengths());
+        assertFalse(index.ascii(1));
+        assertTrue(index.ascii(2));
+
+        int[] rows = new int[1];
+        int[] cols = new int[1];
+        index.replace(new long[] { 9 }, new int[] { 2 }, new byte[][] { "y\nz".getBytes() }, rows, cols);
+        // aé\n  xcé\n  y\n  zé
+        assertArrayEquals(new int[] { 4, 5, 2, 3 }, index.rowLengths());
+        assertFalse(index.ascii(0));
+        assertTrue(index.ascii(2));
+        assertFalse(index.ascii(3));
+    }
+
+    @Test
+    void replace() {
+        var index = RowIndex.of(2);
+        index.add("ab\ncd\r\nef\ngh".getBytes());
+
+        int[] rows = new int[3];
+        int[] cols = new int[3];
+        // ab\n|cd\r\n|ef\n|gh  ->  aX\nY|Y\r\nef\nZ
+        index.replace(new long[] { 1, 3, 10 }, new int[] { 1, 2, 2 },
+            new byte[][] { "X".getBytes(), "Y\nY".getBytes(), "Z".getBytes() }, rows, cols);
+        assertArrayEquals(new int[] { 3, 2, 3, 3, 1 }, index.rowLengths());
+        assertArrayEquals(new byte[] { 0, 0, 1, 0, 0 }, index.crlfs());
+        assertArrayEquals(new int[] { 0, 1, 4 }, rows);
+        assertArrayEquals(new int[] { 1, 0, 0 }, cols);
+        assertEquals(8, index.get(3));
+        assertArrayEquals(new long[] { 3, 3, 8, 11 }, index.get(new int[] { 1, 1, 3, 4 }));
+
+        // joins rows, and removes all
+        index.replace(new long[] { 2 }, new int[] { 6 }, new byte[][] { new byte[0] }, rows, cols);
+        assertArrayEquals(new int[] { 5, 1 }, index.rowLengths());
+        index.replace(new long[] { 0 }, new int[] { 6 }, new byte[][] { new byte[0] }, rows, cols);
+        assertArrayEquals(new int[] { 0 }, index.rowLengths());
+        assertEquals(LineEnding.NONE, index.lineEnding());
+    }
+
+    @Test
+    void replaceRandom() {
+        var random = new java.util.Random(1);
+        String chars = "ab\r\n";
+        for (int n = 0; n < 500; n++) {
+            var text = new StringBuilder();
+            for (int i = random.nextInt(30); i > 0; i--) text.append(chars.charAt(random.nextInt(chars.length())));
+            var index = RowIndex.of(3);
+            index.add(text.toString().getBytes());
+
+            int count = random.nextInt(4);
+            long[] positions = new long[count];
+            int[] lengths = new int[count];
+            byte[][] bytes = new byte[count][];
+            var expected = new StringBuilder();
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                positions[i] = pos + random.nextInt(Math.max(1, text.length() - pos + 1));
+                positions[i] = Math.min(positions[i], text.length());
+                lengths[i] = random.nextInt((int) (text.length() - positions[i]) + 1);
+                var str = new StringBuilder();
+                for (int k = random.nextInt(4); k > 0; k--) str.append(chars.charAt(random.nextInt(chars.length())));
+                bytes[i] = str.toString().getBytes();
+                expected.append(text, pos, (int) positions[i]).append(str);
+                pos = (int) positions[i] + lengths[i];
+            }
+            expected.append(text, pos, text.length());
+            index.replace(positions, lengths, bytes, new int[count], new int[count]);
+
+            var fresh = RowIndex.of();
+            fresh.add(expected.toString().getBytes());
+            assertArrayEquals(fresh.rowLengths(), index.rowLengths(), text + " -> " + expected);
+            for (int row = 0; row < fresh.rowSize(); row++) {
+                assertEquals(fresh.get(row), index.get(row));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The test of {@link SearchEngine}.
+ * @author Naotsugu Kobayashi
+ */
+class SearchEngineTest {
+
+    @Test
+    void horspool() {
+        byte[] bytes = "abcxabcdabcd".getBytes();
+        var engine = new Horspool("abcd".getBytes());
+        assertEquals(4, engine.indexOf(bytes, 0, bytes.length));
+        assertEquals(8, engine.indexOf(bytes, 5, bytes.length));
+        assertEquals(-1, engine.indexOf(bytes, 0, 7));
+    }
+
+    @Test
+    void memchr() {
+        byte[] bytes = "0123456789abab".getBytes();
+        var engine = new Memchr("ab".getBytes());
+        assertEquals(10, engine.indexOf(bytes, 0, bytes.length));
+        assertEquals(12, engine.indexOf(bytes, 11, bytes.length));
+        assertEquals(-1, engine.indexOf(bytes, 0, 11));
+    }
+
+    @Test
+    void randomAgainstNaive() {
+        var random = new Random(1);
+        for (int n = 0; n < 2000; n++) {
+            byte[] bytes = new byte[random.nextInt(100)];
+            for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) ('a' + random.nextInt(3));
+            byte[] pattern = new byte[1 + random.nextInt(6)];
+            for (int i = 0; i < pattern.length; i++) pattern[i] = (byte) ('a' + random.nextInt(3));
+            int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            assertEquals(naive(bytes, from, pattern), SearchEngine.of(pattern).indexOf(bytes, from, bytes.length));
+        }
+    }
+
+    @Test
+    void caseFolding() {
+        byte[] bytes = "xAbCd abcD".getBytes();
+        var engine = new CaseFolding("aBcd", StandardCharsets.UTF_8);
+        assertEquals(1, engine.indexOf(bytes, 0, bytes.length));
+        assertEquals(6, engine.indexOf(bytes, 2, bytes.length));
+        assertEquals(-1, engine.indexOf(bytes, 2, 9));
+    }
+
+    @Test
+    void caseFoldingUnicode() {
+        for (Charset cs : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16 }) {
+            Charset unmarked = CaseFolding.unmarked(cs);
+            byte[] bytes = "Σ ΣΊΣΥΦΟΣ Ébène".getBytes(unmarked);
+            assertEquals("Σ ".getBytes(unmarked).length,
+                new CaseFolding("σίσυφος", cs).indexOf(bytes, 0, bytes.length), cs.name());
+            assertEquals(-1, new CaseFolding("σίσυφοσx", cs).indexOf(bytes, 0, bytes.length), cs.name());
+            assertEquals("Σ ΣΊΣΥΦΟΣ ".getBytes(unmarked).length,
+                new CaseFolding("éBÈNE", cs).indexOf(bytes, 0, bytes.length), cs.name());
+        }
+    }
+
+    @Test
+    void caseFoldingVerified() {
+        // 'Σ'(CE A3) and 'σ'(CF 83) differ in two bytes, so 'ϣ'(CF A3) is in the sets, but not a match
+        byte[] bytes = "ϣΣς".getBytes(StandardCharsets.UTF_8);
+        var engine = new CaseFolding("σ", StandardCharsets.UTF_8);
+        assertEquals(2, engine.indexOf(bytes, 0, bytes.length));
+        assertEquals(4, engine.indexOf(bytes, 3, bytes.length));
+        assertEquals(-1, engine.indexOf(bytes, 0, 2));
+    }
+
+    @Test
+    void caseFoldingRandomAgainstNaive() {
+        var random = new Random(1);
+        String letters = "aAbBéÉ";
+        for (int n = 0; n < 2000; n++) {
+            var text = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) text.append(letters.charAt(random.nextInt(letters.length())));
+            var pattern = new StringBuilder();
+            for (int i = 1 + random.nextInt(4); i > 0; i--) pattern.append(letters.charAt(random.nextInt(letters.length())));
+            String lower = text.toString().toLowerCase(Locale.ROOT);
+            int expected = lower.indexOf(pattern.toString().toLowerCase(Locale.ROOT));
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            int actual = new CaseFolding(pattern.toString(), StandardCharsets.UTF_8).indexOf(bytes, 0, bytes.length);
+            assertEquals(expected, (actual < 0) ? -1 : new String(bytes, 0, actual, StandardCharsets.UTF_8).length(),
+                text + " " + pattern);
+        }
+    }
+
+    private static int naive(byte[] bytes, int from, byte[] pattern) {
+        outer:
+        for (int i = from; i + pattern.length <= bytes.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+}
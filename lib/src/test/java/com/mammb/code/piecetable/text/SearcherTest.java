@@ -0,0 +1,280 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import com.mammb.code.piecetable.FindOption;
+import com.mammb.code.piecetable.Found;
+import com.mammb.code.piecetable.PieceTable;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test of {@link Searcher}.
+ * @author Naotsugu Kobayashi
+ */
+class SearcherTest {
+
+    @Test
+    void search() {
+        var pt = PieceTable.of();
+        pt.insert(0, "ab\nxyz\naxyzb".getBytes());
+        pt.insert(3, "xy".getBytes()); // ab\nxyxyz\naxyzb
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "xyz".getBytes()).search(0, 0, 0, founds::add);
+        assertEquals(List.of(new Found(1, 2, 3), new Found(2, 1, 3)), founds);
+    }
+
+    @Test
+    void searchAcrossRows() {
+        var pt = PieceTable.of();
+        pt.insert(0, "ab\ncd\nab\ncd".getBytes());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "b\nc".getBytes()).search(0, 0, 0, founds::add);
+        assertEquals(List.of(new Found(0, 1, 3), new Found(2, 1, 3)), founds);
+    }
+
+    @Test
+    void searchNonOverlapping() {
+        var pt = PieceTable.of();
+        pt.insert(0, "aaaaa".getBytes());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "aa".getBytes()).search(0, 0, 0, founds::add);
+        assertEquals(List.of(new Found(0, 0, 2), new Found(0, 2, 2)), founds);
+    }
+
+    @Test
+    void searchAcrossChunks() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) sb.append(i).append("\n");
+        var pt = PieceTable.of();
+        pt.insert(0, sb.toString().getBytes());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "\n19999\n".getBytes()).search(0, 0, 0, founds::add);
+        assertEquals(List.of(new Found(19_998, 5, 7)), founds);
+
+        founds.clear();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "77".getBytes()).search(0, 0, 0, founds::add);
+        assertEquals(sb.toString().split("77", -1).length - 1, founds.size());
+        assertEquals(new Found(77, 0, 2), founds.getFirst());
+    }
+
+    @Test
+    void searchFrom() {
+        var pt = PieceTable.of();
+        pt.insert(0, "ab\nab\nab".getBytes());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "ab".getBytes()).search(1, 3, 4, found -> {
+            founds.add(found);
+            return false;
+        });
+        assertEquals(List.of(new Found(2, 0, 2)), founds);
+    }
+
+    @Test
+    void searchUtf16() {
+        var pt = PieceTable.of();
+        // U+6161 U+0A00 contains "a" of UTF-16LE across the code units
+        pt.insert(0, new byte[] { (byte) 0xFF, (byte) 0xFE });
+        pt.insert(2, "\u6161\u0A00\na".getBytes(StandardCharsets.UTF_16LE));
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_16LE, 2, "a".getBytes(StandardCharsets.UTF_16LE))
+            .search(0, 0, 2, founds::add);
+        assertEquals(List.of(new Found(1, 0, 2)), founds);
+    }
+
+    @Test
+    void searchParallel() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) sb.append(i).append("\naa");
+        var pt = PieceTable.of();
+        pt.insert(0, sb.toString().getBytes());
+
+        for (String pattern : List.of("aa", "a\n1", "\naa1999", "0\na")) {
+            List<Found> expected = new ArrayList<>();
+            Searcher.of(pt, StandardCharsets.UTF_8, 0, pattern.getBytes()).search(0, 0, 0, expected::add);
+            for (long size : List.of(1L, 7L, 4096L, 1L << 20)) {
+                List<Found> founds = new ArrayList<>();
+                Searcher.of(pt.snapshot(), StandardCharsets.UTF_8, 0, pattern.getBytes())
+                    .searchParallel(0, 0, 0, size, founds::add);
+                assertEquals(expected, founds, pattern + " " + size);
+            }
+        }
+    }
+
+    @Test
+    void searchParallelUtf16() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) sb.append("ab\naab\n");
+        var pt = PieceTable.of();
+        pt.insert(0, sb.toString().getBytes(StandardCharsets.UTF_16LE));
+        byte[] pattern = "aab".getBytes(StandardCharsets.UTF_16LE);
+
+        List<Found> expected = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_16LE, 0, pattern).search(0, 0, 0, expected::add);
+        assertEquals(5_000, expected.size());
+        assertEquals(new Found(4_999 * 2 + 1, 0, 6), expected.getLast());
+        // a line feed right before the boundaries of the partitions of 14 bytes
+        for (long size : List.of(6L, 14L, 4096L)) {
+            List<Found> founds = new ArrayList<>();
+            Searcher.of(pt.snapshot(), StandardCharsets.UTF_16LE, 0, pattern)
+                .searchParallel(0, 0, 0, size, founds::add);
+            assertEquals(expected, founds, String.valueOf(size));
+        }
+    }
+
+    @Test
+    void searchParallelOverlapping() {
+        var pt = PieceTable.of();
+        pt.insert(0, "a\naaaaaaa".getBytes());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt.snapshot(), StandardCharsets.UTF_8, 0, "aaa".getBytes())
+            .searchParallel(0, 0, 0, 3, founds::add);
+        assertEquals(List.of(new Found(1, 0, 3), new Found(1, 3, 3)), founds);
+    }
+
+    @Test
+    void stream() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) sb.append(i).append("\n");
+        var pt = PieceTable.of();
+        pt.insert(0, sb.toString().getBytes());
+
+        long[] read = new long[1];
+        var counting = (PieceTable) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { PieceTable.class }, (proxy, method, args) -> {
+                if (method.getName().equals("read")) read[0] += (long) args[1];
+                return method.invoke(pt, args);
+            });
+
+        var searcher = Searcher.of(counting, StandardCharsets.UTF_8, 0, "77".getBytes());
+        assertEquals(List.of(new Found(77, 0, 2), new Found(177, 1, 2)),
+            searcher.stream(0, 0, 0).limit(2).toList());
+        assertTrue(read[0] < pt.length());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "77".getBytes()).search(0, 0, 0, founds::add);
+        assertEquals(founds, Searcher.of(pt, StandardCharsets.UTF_8, 0, "77".getBytes()).stream(0, 0, 0).toList());
+    }
+
+    @Test
+    void searchWholeWord() {
+        var pt = PieceTable.of();
+        pt.insert(0, "cat catalog\nCat_cat, écat cat".getBytes());
+
+        List<Found> founds = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "cat", FindOption.WHOLE_WORD).search(0, 0, 0, founds::add);
+        assertEquals(List.of(new Found(0, 0, 3), new Found(1, 15, 3)), founds);
+
+        founds.clear();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "cat", FindOption.WHOLE_WORD, FindOption.IGNORE_CASE)
+            .search(0, 0, 0, founds::add);
+        assertEquals(List.of(new Found(0, 0, 3), new Found(1, 15, 3)), founds);
+
+        founds.clear();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "cat", FindOption.IGNORE_CASE).search(0, 0, 0, founds::add);
+        assertEquals(6, founds.size());
+    }
+
+    @Test
+    void searchParallelWholeWord() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) sb.append(i).append(" Ab ab_ xab\n");
+        var pt = PieceTable.of();
+        pt.insert(0, sb.toString().getBytes());
+
+        List<Found> expected = new ArrayList<>();
+        Searcher.of(pt, StandardCharsets.UTF_8, 0, "ab", FindOption.WHOLE_WORD, FindOption.IGNORE_CASE)
+            .search(0, 0, 0, expected::add);
+        assertEquals(5_000, expected.size());
+        for (long size : List.of(1L, 7L, 4096L)) {
+            List<Found> founds = new ArrayList<>();
+            Searcher.of(pt.snapshot(), StandardCharsets.UTF_8, 0, "ab", FindOption.WHOLE_WORD, FindOption.IGNORE_CASE)
+                .searchParallel(0, 0, 0, size, founds::add);
+            assertEquals(expected, founds, String.valueOf(size));
+        }
+    }
+
+    @Test
+    void searchWholeWordEucJp() {
+        var eucJp = Charset.forName("EUC-JP");
+        for (String text : List.of("あÉB y", "ÉÉB y", "ÉB\nあÉB")) {
+            var pt = PieceTable.of();
+            pt.insert(0, text.getBytes(eucJp));
+            List<Found> founds = new ArrayList<>();
+            Searcher.of(pt, eucJp, 0, "B", FindOption.WHOLE_WORD).search(0, 0, 0, founds::add);
+            assertEquals(List.of(), founds, text);
+        }
+
+        var sb = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) sb.append("ÉB ÉÉ B あB\n");
+        var pt = PieceTable.of();
+        pt.insert(0, sb.toString().getBytes(eucJp));
+        List<Found> expected = new ArrayList<>();
+        Searcher.of(pt, eucJp, 0, "B", FindOption.WHOLE_WORD).search(0, 0, 0, expected::add);
+        assertEquals(2_000, expected.size());
+        assertEquals(new Found(0, 12, 1), expected.getFirst());
+        for (long size : List.of(1L, 7L, 4096L)) {
+            List<Found> founds = new ArrayList<>();
+            Searcher.of(pt.snapshot(), eucJp, 0, "B", FindOption.WHOLE_WORD)
+                .searchParallel(0, 0, 0, size, founds::add);
+            assertEquals(expected, founds, String.valueOf(size));
+        }
+    }
+
+    @Test
+    void searchShiftJisTrailingByte() {
+        // the trailing byte of "ア" is 0x41 of "A"
+        for (String name : List.of("Shift_JIS", "windows-31j")) {
+            var cs = Charset.forName(name);
+            var pt = PieceTable.of();
+            pt.insert(0, "アA A\nア".getBytes(cs));
+
+            List<Found> founds = new ArrayList<>();
+            Searcher.of(pt, cs, 0, "A").search(0, 0, 0, founds::add);
+            assertEquals(List.of(new Found(0, 2, 1), new Found(0, 4, 1)), founds, name);
+
+            founds.clear();
+            Searcher.of(pt, cs, 0, "a", FindOption.IGNORE_CASE).search(0, 0, 0, founds::add);
+            assertEquals(List.of(new Found(0, 2, 1), new Found(0, 4, 1)), founds, name);
+
+            founds.clear();
+            Searcher.of(pt, cs, 0, "A", FindOption.WHOLE_WORD).search(0, 0, 0, founds::add);
+            assertEquals(List.of(new Found(0, 4, 1)), founds, name);
+
+            for (long size : List.of(1L, 3L)) {
+                founds.clear();
+                Searcher.of(pt.snapshot(), cs, 0, "A").searchParallel(0, 0, 0, size, founds::add);
+                assertEquals(List.of(new Found(0, 2, 1), new Found(0, 4, 1)), founds, name + " " + size);
+            }
+        }
+    }
+
+}
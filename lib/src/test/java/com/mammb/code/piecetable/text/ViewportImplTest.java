@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022-2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mammb.code.piecetable.text;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The test of {@link ViewportImpl}.
+ * @author Naotsugu Kobayashi
+ */
+class ViewportImplTest {
+
+    @Test
+    void prefetch() {
+        var source = new ListSource(IntStream.range(0, 100).mapToObj(i -> "r" + i + "\n").toList());
+        var vp = ViewportImpl.of(source, 10, 20);
+
+        assertEquals(rows(50, 60), vp.scrollAt(50));
+        assertEquals(1, source.reads);
+        vp.prefetching().join();
+        assertEquals(rows(30, 80), vp.cached());
+
+        // served from the rows prefetched
+        assertEquals("r79\n", vp.getText(79));
+        assertEquals(rows(40, 50), vp.scrollAt(40));
+        vp.prefetching().join();
+        // not prefetched while more than half the margin is read
+        assertEquals(rows(30, 80), vp.cached());
+        assertEquals(rows(62, 72), vp.scrollAt(62));
+        vp.prefetching().join();
+        // trimmed to the margin around the window
+        assertEquals(rows(42, 92), vp.cached());
+        assertEquals(1, source.reads);
+
+        // far from the rows read
+        assertEquals(rows(0, 10), vp.scrollAt(0));
+        assertEquals(2, source.reads);
+        vp.prefetching().join();
+        assertEquals(rows(0, 30), vp.cached());
+
+        // clipped to the rows
+        assertEquals(rows(99, 100), vp.scrollAt(200));
+        assertEquals(99, vp.top());
+    }
+
+    @Test
+    void invalidate() {
+        var source = new ListSource(IntStream.range(0, 100).mapToObj(i -> "r" + i + "\n").toList());
+        var vp = ViewportImpl.of(source, 10, 5);
+        vp.scrollAt(10);
+        vp.prefetching().join();
+
+        source.rows.set(12, "edited\n");
+        source.modCount++;
+        assertEquals("edited\n", vp.rows().get(2));
+        assertEquals("edited\n", vp.getText(12));
+    }
+
+    @Test
+    void document() {
+        var doc = DocumentImpl.of();
+        doc.insert(0, 0, "a\nあ\r\nc\n".repeat(100).getBytes(StandardCharsets.UTF_8));
+        var vp = doc.viewport(4, 8);
+        assertEquals(List.of("c\n", "a\n", "あ\r\n", "c\n"), vp.scrollAt(20));
+        ((ViewportImpl) vp).prefetching().join();
+        for (int row = 12; row < 32; row++) {
+            assertEquals(doc.getText(row).toString(), vp.getText(row));
+        }
+
+        doc.insert(21, 1, "b");
+        assertEquals(List.of("c\n", "ab\n", "あ\r\n", "c\n"), vp.rows());
+        assertEquals(List.of(""), vp.scrollAt(300));
+    }
+
+    private static List<String> rows(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "r" + i + "\n").toList();
+    }
+
+    private static class ListSource implements ViewportImpl.Source {
+        final List<String> rows;
+        long modCount;
+        int reads;
+        ListSource(List<String> rows) { this.rows = new ArrayList<>(rows); }
+        @Override public int rows() { return rows.size(); }
+        @Override public long modCount() { return modCount; }
+        @Override public Supplier<List<String>> read(int startRow, int endRow, boolean await) {
+            if (await) reads++;
+            List<String> list = List.copyOf(rows.subList(startRow, Math.min(endRow, rows.size())));
+            return () -> list;
+        }
+    }
+
+}